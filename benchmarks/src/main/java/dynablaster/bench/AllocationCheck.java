@@ -0,0 +1,158 @@
+package dynablaster.bench;
+
+import dynablaster.GameController;
+import dynablaster.GameSnapshot;
+import dynablaster.Player;
+import dynablaster.PlayerColor;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Sprawdza czy krok gry w stanie ustalonym nie alokuje pamięci. Sprawdzane
+ * są dwa przebiegi:
+ * <ul>
+ * <li>plansza bez bloków, na której bomby są stawiane w środku tak, aby nie
+ * zabiły graczy i gra się nie zakończyła. Co kilka kroków stan gry jest
+ * zapisywany i przywracany;</li>
+ * <li>kolejne gry na zwykłej planszy, w których wszystkimi graczami steruje
+ * komputer: gracze chodzą, bomby niszczą bloki i detonują inne bomby, a
+ * gracze giną. Po zakończeniu gry rozpoczynana jest następna; pamięć
+ * zajęta przy jej rozpoczęciu (nowi gracze) nie jest liczona.</li>
+ * </ul>
+ *
+ * Uruchamianie:
+ *     java -cp benchmarks/target/benchmarks.jar dynablaster.bench.AllocationCheck
+ */
+public final class AllocationCheck {
+
+    private static final int SIZE = 31;
+    private static final int WARMUP_TICKS = 50000;
+    private static final int MEASURED_TICKS = 20000;
+
+    private static final int BATTLE_SIZE = 15;
+    private static final int BATTLE_WARMUP_TICKS = 200000;
+    private static final int BATTLE_MEASURED_TICKS = 100000;
+
+    /**
+     * Najdłuższa gra komputerowych graczy. Dłuższe gry są przerywane.
+     */
+    private static final int BATTLE_MAX_TICKS = 10800;
+
+    private static final GameSnapshot SNAPSHOT = new GameSnapshot();
+
+    private AllocationCheck() {
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        final com.sun.management.ThreadMXBean threads
+                = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long thread = Thread.currentThread().getId();
+
+        final long open = checkOpenBoard(threads, thread);
+        final long battle = checkBattle(threads, thread);
+        if (open != 0 || battle != 0) {
+            System.exit(1);
+        }
+    }
+
+    private static long checkOpenBoard(com.sun.management.ThreadMXBean threads,
+            long thread) {
+        final GameController game = Games.openGame(SIZE, 1);
+        final Player owner = game.players.getPlayer(0);
+        for (int i = 0; i < 64; i++) {
+            owner.addBomb();
+        }
+
+        int cursor = 0;
+        cursor = run(game, owner, WARMUP_TICKS, cursor);
+
+        final long before = threads.getThreadAllocatedBytes(thread);
+        run(game, owner, MEASURED_TICKS, cursor);
+        final long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        if (game.isGameOver()) {
+            System.out.println("FAILED: game ended during the check");
+            System.exit(1);
+        }
+        System.out.println("Open board: allocated " + allocated + " bytes in "
+                + MEASURED_TICKS + " ticks");
+        return allocated;
+    }
+
+    private static long checkBattle(com.sun.management.ThreadMXBean threads,
+            long thread) {
+        final GameController game = new GameController();
+        for (PlayerColor color : PlayerColor.values()) {
+            game.players.setPlayerEnabled(color, true);
+            game.bots.setBot(color, true);
+        }
+        final long[] seed = {1};
+        game.newGame(BATTLE_SIZE, BATTLE_SIZE, seed[0]);
+
+        final long[] result = new long[2];
+        battle(game, BATTLE_WARMUP_TICKS, seed, threads, thread, result);
+        battle(game, BATTLE_MEASURED_TICKS, seed, threads, thread, result);
+        final long allocated = result[0];
+        final long games = result[1];
+
+        if (games == 0) {
+            System.out.println("FAILED: no game ended during the check");
+            System.exit(1);
+        }
+        System.out.println("Battle: allocated " + allocated + " bytes in "
+                + BATTLE_MEASURED_TICKS + " ticks, " + games + " games");
+        return allocated;
+    }
+
+    /**
+     * Wykonuje kroki gier komputerowych graczy, rozpoczynając nową grę z
+     * kolejnym ziarnem gdy poprzednia się zakończy.
+     *
+     * @param result Wynik: pamięć zaalokowana w krokach gier (bez
+     * rozpoczynania nowych gier) i liczba zakończonych gier.
+     */
+    private static void battle(GameController game, int ticks, long[] seed,
+            com.sun.management.ThreadMXBean threads, long thread,
+            long[] result) {
+        long setup = 0;
+        long games = 0;
+        final long before = threads.getThreadAllocatedBytes(thread);
+        for (int tick = 0; tick < ticks; tick++) {
+            if (game.isGameOver() || game.clock.getTick() >= BATTLE_MAX_TICKS) {
+                if (game.isGameOver()) {
+                    games += 1;
+                }
+                seed[0] += 1;
+                final long start = threads.getThreadAllocatedBytes(thread);
+                game.newGame(BATTLE_SIZE, BATTLE_SIZE, seed[0]);
+                setup += threads.getThreadAllocatedBytes(thread) - start;
+            }
+            game.update();
+        }
+        result[0] = threads.getThreadAllocatedBytes(thread) - before - setup;
+        result[1] = games;
+    }
+
+    private static int run(GameController game, Player owner, int ticks,
+            int cursor) {
+        // Bomby stawiane są na nieparzystych polach środkowego kwadratu,
+        // z daleka od graczy w rogach planszy.
+        final int from = 9;
+        final int span = SIZE - 2 * from;
+        for (int tick = 0; tick < ticks; tick++) {
+            if (tick % 5 == 0) {
+                final int x = from + (cursor * 2) % span;
+                final int y = from + (cursor * 6) % span;
+                cursor += 1;
+                game.bombs.placeBomb(owner, x | 1, y | 1);
+            }
+            if (tick % 7 == 0) {
+                SNAPSHOT.capture(game);
+                SNAPSHOT.restore(game);
+            }
+            game.update();
+        }
+        return cursor;
+    }
+}
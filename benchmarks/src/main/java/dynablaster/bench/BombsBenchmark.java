@@ -0,0 +1,70 @@
+package dynablaster.bench;
+
+import dynablaster.GameController;
+import dynablaster.Player;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Krok symulacji bomb przy stałej liczbie bomb na planszy. Bomby które
+ * wybuchły są od razu zastępowane nowymi, więc na planszy jest też
+ * proporcjonalna liczba eksplozji.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BombsBenchmark {
+
+    @Param({"13", "51"})
+    public int size;
+
+    @Param({"1", "16", "64"})
+    public int bombCount;
+
+    private GameController game;
+    private Player owner;
+    private int[] freeTiles;
+    private int cursor = 0;
+
+    @Setup
+    public void setup() {
+        game = Games.openGame(size, 1);
+        freeTiles = Games.freeTiles(game.grid);
+
+        owner = game.players.getPlayer(0);
+        for (int i = 0; i < 3; i++) {
+            owner.increaseRange();
+        }
+        for (int i = 0; i < bombCount; i++) {
+            owner.addBomb();
+        }
+    }
+
+    @Benchmark
+    public int update() {
+        final int width = game.grid.getWidth();
+        for (int attempts = 0; attempts < freeTiles.length
+                && game.bombs.getBombCount() < bombCount; attempts++) {
+            final int pos = freeTiles[cursor];
+            cursor = (cursor + 7) % freeTiles.length;
+            game.bombs.placeBomb(owner, pos % width, pos / width);
+        }
+
+        game.clock.advance();
+        game.bombs.update();
+        return game.bombs.getExplosionCount();
+    }
+}
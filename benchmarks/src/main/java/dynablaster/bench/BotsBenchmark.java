@@ -0,0 +1,84 @@
+package dynablaster.bench;
+
+import dynablaster.GameController;
+import dynablaster.GameRandom;
+import dynablaster.PlayerColor;
+import dynablaster.Tile;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pełny krok gry w której wszystkimi graczami steruje komputer, na planszy z
+ * blokami. Gra jest rozpoczynana od nowa gdy przy życiu zostanie mniej niż
+ * połowa graczy. Czas decyzji graczy można porównać z
+ * {@link PlayersBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BotsBenchmark {
+
+    private static final int SIZE = 51;
+
+    @Param({"4", "32", "256"})
+    public int playerCount;
+
+    private GameController game;
+    private long seed = 1;
+
+    @Setup
+    public void setup() {
+        game = new GameController();
+        for (PlayerColor color : PlayerColor.values()) {
+            game.players.setPlayerEnabled(color, true);
+            game.bots.setBot(color, true);
+        }
+        newGame();
+    }
+
+    private void newGame() {
+        game.newGame(SIZE, SIZE, seed);
+        final GameRandom random = new GameRandom(seed);
+        seed += 1;
+
+        while (game.players.getCount() < playerCount) {
+            final int x = 1 + random.nextInt(SIZE - 2);
+            final int y = 1 + random.nextInt(SIZE - 2);
+            if (game.grid.getTile(x, y) == Tile.INDESTRUCTIBLE) {
+                continue;
+            }
+            game.grid.clearSpawn(x, y);
+            game.players.addPlayer(PlayerColor.values()[game.players.getCount() % 4],
+                    x, y);
+        }
+    }
+
+    @Benchmark
+    public int update() {
+        int alive = 0;
+        for (int id = 0; id < game.players.getCount(); id++) {
+            if (!game.players.getPlayer(id).isDead()) {
+                alive += 1;
+            }
+        }
+        if (alive * 2 < playerCount) {
+            newGame();
+        }
+
+        game.update();
+        return alive;
+    }
+}
@@ -0,0 +1,74 @@
+package dynablaster.bench;
+
+import dynablaster.GameController;
+import dynablaster.Player;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Najgorszy przypadek detonacji: bomba o dużym zasięgu na każdym wolnym polu
+ * planszy. Wszystkie bomby wybuchają w jednym kroku jako jeden łańcuch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChainReactionBenchmark {
+
+    /**
+     * Czas po którym bomba wybucha.
+     */
+    private static final long FUSE = 2000;
+
+    @Param({"13", "51", "101"})
+    public int size;
+
+    private GameController game;
+    private int[] freeTiles;
+
+    @Setup(Level.Trial)
+    public void createGame() {
+        game = Games.openGame(size, 1);
+        freeTiles = Games.freeTiles(game.grid);
+    }
+
+    @Setup(Level.Invocation)
+    public void fillBoard() {
+        game.newGame(size, size, 1);
+        Games.clearDestructible(game.grid);
+
+        final Player owner = game.players.getPlayer(0);
+        for (int i = 0; i < size; i++) {
+            owner.increaseRange();
+        }
+        for (int i = 0; i < freeTiles.length; i++) {
+            owner.addBomb();
+        }
+
+        final int width = game.grid.getWidth();
+        for (int pos : freeTiles) {
+            game.bombs.placeBomb(owner, pos % width, pos / width);
+        }
+
+        Games.advanceClock(game, FUSE);
+    }
+
+    @Benchmark
+    public int detonateAll() {
+        game.bombs.update();
+        return game.bombs.getExplosionCount();
+    }
+}
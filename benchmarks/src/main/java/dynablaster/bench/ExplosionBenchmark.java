@@ -0,0 +1,52 @@
+package dynablaster.bench;
+
+import dynablaster.Explosion;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sprawdzanie zasięgu eksplozji dla wszystkich pól w jej otoczeniu.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExplosionBenchmark {
+
+    private static final int RANGE = 5;
+
+    private Explosion explosion;
+
+    @Setup
+    public void setup() {
+        explosion = new Explosion(50, 50, RANGE, 0);
+        explosion.rangeUp = RANGE;
+        explosion.rangeDown = RANGE - 1;
+        explosion.rangeLeft = 2;
+        explosion.rangeRight = RANGE;
+    }
+
+    @Benchmark
+    public int isInRange() {
+        int hits = 0;
+        for (int y = 50 - RANGE - 1; y <= 50 + RANGE + 1; y++) {
+            for (int x = 50 - RANGE - 1; x <= 50 + RANGE + 1; x++) {
+                if (explosion.isInRange(x, y)) {
+                    hits += 1;
+                }
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,61 @@
+package dynablaster.bench;
+
+import dynablaster.GameController;
+import dynablaster.Grid;
+import dynablaster.Tile;
+
+/**
+ * Przygotowanie gier używanych przez benchmarki.
+ */
+final class Games {
+
+    private Games() {
+    }
+
+    /**
+     * Tworzy grę bez bloków które można zniszczyć.
+     */
+    static GameController openGame(int size, long seed) {
+        final GameController game = new GameController();
+        game.newGame(size, size, seed);
+        clearDestructible(game.grid);
+        return game;
+    }
+
+    static void clearDestructible(Grid grid) {
+        for (int y = 0; y < grid.getHeight(); y++) {
+            for (int x = 0; x < grid.getWidth(); x++) {
+                if (grid.getTile(x, y) != Tile.INDESTRUCTIBLE) {
+                    grid.setTile(x, y, Tile.GRASS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Zwraca pozycje wszystkich pól na które można wejść.
+     */
+    static int[] freeTiles(Grid grid) {
+        int count = 0;
+        final int[] tiles = new int[grid.getWidth() * grid.getHeight()];
+        for (int y = 0; y < grid.getHeight(); y++) {
+            for (int x = 0; x < grid.getWidth(); x++) {
+                if (grid.getTile(x, y) == Tile.GRASS) {
+                    tiles[count++] = x + y * grid.getWidth();
+                }
+            }
+        }
+        return java.util.Arrays.copyOf(tiles, count);
+    }
+
+    /**
+     * Przesuwa czas gry o podaną liczbę milisekund bez wykonywania kroków
+     * symulacji.
+     */
+    static void advanceClock(GameController game, long millis) {
+        final long target = game.clock.now() + millis;
+        while (game.clock.now() < target) {
+            game.clock.advance();
+        }
+    }
+}
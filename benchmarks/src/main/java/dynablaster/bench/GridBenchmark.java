@@ -0,0 +1,59 @@
+package dynablaster.bench;
+
+import dynablaster.BitBoard;
+import dynablaster.GameController;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generowanie planszy oraz zapytania o całą planszę.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GridBenchmark {
+
+    @Param({"13", "101", "1001"})
+    public int size;
+
+    private GameController game;
+    private BitBoard out;
+
+    @Setup
+    public void setup() {
+        game = new GameController();
+        game.newGame(size, size, 1);
+        out = game.grid.createBitBoard();
+    }
+
+    @Benchmark
+    public BitBoard generateGrid() {
+        game.grid.newGame(size, size);
+        return out;
+    }
+
+    @Benchmark
+    public BitBoard passableTiles() {
+        game.grid.getPassableTiles(out);
+        return out;
+    }
+
+    @Benchmark
+    public BitBoard reachableTiles() {
+        game.grid.getReachableTiles(1, 1, out);
+        return out;
+    }
+}
@@ -0,0 +1,69 @@
+package dynablaster.bench;
+
+import dynablaster.Direction;
+import dynablaster.GameController;
+import dynablaster.GameRandom;
+import dynablaster.PlayerColor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Ruch graczy po planszy bez bloków które można zniszczyć.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlayersBenchmark {
+
+    private static final Direction[] DIRECTIONS = {
+        Direction.UP, Direction.DOWN, Direction.LEFT, Direction.RIGHT
+    };
+
+    @Param({"2", "16", "128"})
+    public int playerCount;
+
+    private GameController game;
+    private GameRandom random;
+    private int ticks = 0;
+
+    @Setup
+    public void setup() {
+        game = Games.openGame(51, 1);
+        random = new GameRandom(1);
+
+        final int[] freeTiles = Games.freeTiles(game.grid);
+        final int width = game.grid.getWidth();
+        while (game.players.getCount() < playerCount) {
+            final int pos = freeTiles[random.nextInt(freeTiles.length)];
+            game.players.addPlayer(PlayerColor.values()[game.players.getCount() % 4],
+                    pos % width, pos / width);
+        }
+    }
+
+    @Benchmark
+    public int update() {
+        if (ticks++ % 32 == 0) {
+            for (int id = 0; id < game.players.getCount(); id++) {
+                game.players.setMovementDirection(id,
+                        DIRECTIONS[random.nextInt(DIRECTIONS.length)]);
+            }
+        }
+
+        game.clock.advance();
+        game.players.update();
+        return game.players.getCount();
+    }
+}
@@ -0,0 +1,71 @@
+package dynablaster.bench;
+
+import dynablaster.GameController;
+import dynablaster.Grid;
+import dynablaster.Player;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Rysowanie planszy i bomb do obrazu w pamięci. Wymaga uruchomienia z
+ * głównego katalogu projektu, w którym znajduje się katalog res.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+    private GameController game;
+    private BufferedImage image;
+    private Graphics2D g;
+
+    @Setup
+    public void setup() {
+        game = new GameController();
+        game.newGame(Grid.DEFAULT_WIDTH, Grid.DEFAULT_HEIGHT, 1);
+
+        final Player owner = game.players.getPlayer(0);
+        for (int i = 0; i < 4; i++) {
+            owner.addBomb();
+        }
+        game.bombs.placeBomb(owner, 1, 1);
+        game.bombs.placeBomb(owner, 3, 1);
+        game.bombs.placeBomb(owner, 1, 3);
+
+        image = new BufferedImage(Grid.SIZE.width, Grid.SIZE.height,
+                BufferedImage.TYPE_INT_ARGB);
+        g = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage drawGrid() {
+        game.grid.draw(g, null);
+        return image;
+    }
+
+    @Benchmark
+    public BufferedImage drawBombs() {
+        game.bombs.draw(g, null);
+        return image;
+    }
+}
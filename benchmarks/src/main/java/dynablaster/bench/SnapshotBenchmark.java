@@ -0,0 +1,77 @@
+package dynablaster.bench;
+
+import dynablaster.GameController;
+import dynablaster.GameSnapshot;
+import dynablaster.MatchRunner;
+import dynablaster.PlayerColor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Zapis i przywracanie stanu gry w trakcie rozgrywki, z bombami i
+ * eksplozjami na planszy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmark {
+
+    /**
+     * Liczba kroków rozegranych przed zapisem stanu.
+     */
+    private static final int TICKS = 300;
+
+    @Param({"13", "51", "101"})
+    public int size;
+
+    private GameController game;
+    private final GameSnapshot snapshot = new GameSnapshot();
+
+    @Setup
+    public void setup() {
+        game = new GameController();
+        for (PlayerColor color : PlayerColor.values()) {
+            game.players.setPlayerEnabled(color, true);
+        }
+
+        // Szukaj gry która trwa wystarczająco długo.
+        for (long seed = 1; ; seed++) {
+            game.newGame(size, size, seed);
+            final MatchRunner.RandomDriver driver
+                    = new MatchRunner.RandomDriver(seed);
+            while (!game.isGameOver() && game.clock.getTick() < TICKS) {
+                driver.beforeTick(game);
+                game.update();
+            }
+            if (!game.isGameOver()) {
+                break;
+            }
+        }
+        snapshot.capture(game);
+    }
+
+    @Benchmark
+    public int capture() {
+        snapshot.capture(game);
+        return snapshot.getSize();
+    }
+
+    @Benchmark
+    public long restore() {
+        snapshot.restore(game);
+        return game.clock.getTick();
+    }
+}
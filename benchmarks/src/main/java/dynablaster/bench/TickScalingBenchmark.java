@@ -0,0 +1,63 @@
+package dynablaster.bench;
+
+import dynablaster.GameController;
+import dynablaster.MatchRunner;
+import dynablaster.PlayerColor;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Koszt pełnego kroku gry w zależności od rozmiaru planszy, dla czterech
+ * losowo sterowanych graczy.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickScalingBenchmark {
+
+    @Param({"13", "51", "201", "1001"})
+    public int size;
+
+    private GameController game;
+    private MatchRunner.MatchDriver driver;
+    private long seed = 1;
+
+    @Setup
+    public void setup() {
+        game = new GameController();
+        for (PlayerColor color : PlayerColor.values()) {
+            game.players.setPlayerEnabled(color, true);
+        }
+        newGame();
+    }
+
+    private void newGame() {
+        game.newGame(size, size, seed);
+        driver = new MatchRunner.RandomDriver(seed);
+        seed += 1;
+    }
+
+    @Benchmark
+    public long update() {
+        if (game.isGameOver()) {
+            newGame();
+        }
+
+        driver.beforeTick(game);
+        game.update();
+        return game.clock.getTick();
+    }
+}
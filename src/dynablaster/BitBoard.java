@@ -0,0 +1,224 @@
+package dynablaster;
+
+import java.util.Arrays;
+
+/**
+ * Zbiór pól planszy zapisany jako ciąg bitów. Pole o współrzędnych (x, y)
+ * odpowiada bitowi o indeksie {@code x + y * width}. Operacje na całej planszy
+ * wykonywane są na 64 polach jednocześnie.
+ */
+public class BitBoard {
+
+    private final int width;
+    private final int height;
+    private final int size;
+
+    /**
+     * Maska ostatniego słowa obejmująca tylko bity leżące na planszy.
+     */
+    private final long lastWordMask;
+
+    final long[] words;
+
+    public BitBoard(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.size = width * height;
+
+        words = new long[(size + 63) >>> 6];
+
+        final int rest = size & 63;
+        lastWordMask = rest == 0 ? -1L : (1L << rest) - 1;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean get(int pos) {
+        return (words[pos >>> 6] & (1L << pos)) != 0;
+    }
+
+    public void set(int pos) {
+        words[pos >>> 6] |= 1L << pos;
+    }
+
+    public void clear(int pos) {
+        words[pos >>> 6] &= ~(1L << pos);
+    }
+
+    /**
+     * Usuwa wszystkie pola ze zbioru.
+     */
+    public void clear() {
+        Arrays.fill(words, 0);
+    }
+
+    /**
+     * Dodaje do zbioru wszystkie pola planszy.
+     */
+    public void fill() {
+        Arrays.fill(words, -1L);
+        words[words.length - 1] = lastWordMask;
+    }
+
+    public void copyFrom(BitBoard other) {
+        System.arraycopy(other.words, 0, words, 0, words.length);
+    }
+
+    public void or(BitBoard other) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] |= other.words[i];
+        }
+    }
+
+    public void and(BitBoard other) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= other.words[i];
+        }
+    }
+
+    public void andNot(BitBoard other) {
+        for (int i = 0; i < words.length; i++) {
+            words[i] &= ~other.words[i];
+        }
+    }
+
+    /**
+     * Zamienia zbiór na jego dopełnienie w obrębie planszy.
+     */
+    public void not() {
+        for (int i = 0; i < words.length; i++) {
+            words[i] = ~words[i];
+        }
+        words[words.length - 1] &= lastWordMask;
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Zwraca liczbę pól w zbiorze.
+     *
+     * @return Liczba pól.
+     */
+    public int count() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Zwraca pierwsze pole zbioru o indeksie nie mniejszym od podanego.
+     *
+     * @param from Indeks od którego rozpocząć szukanie.
+     * @return Indeks pola albo {@code -1} jeśli takie pole nie istnieje.
+     */
+    public int nextSetBit(int from) {
+        if (from >= size) {
+            return -1;
+        }
+
+        int i = from >>> 6;
+        long word = words[i] & (-1L << from);
+        while (word == 0) {
+            i += 1;
+            if (i == words.length) {
+                return -1;
+            }
+            word = words[i];
+        }
+        return (i << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * Zapisuje do tego zbioru wszystkie pola sąsiadujące (w pionie lub
+     * poziomie) z polami zbioru {@code src}.
+     *
+     * @param src Zbiór źródłowy. Musi być innym obiektem niż ten zbiór.
+     * @param notFirstColumn Zbiór wszystkich pól poza pierwszą kolumną.
+     * @param notLastColumn Zbiór wszystkich pól poza ostatnią kolumną.
+     */
+    public void setNeighboursOf(BitBoard src, BitBoard notFirstColumn,
+            BitBoard notLastColumn) {
+        assert src != this;
+
+        final long[] s = src.words;
+        final int n = words.length;
+        final int rowWords = width >>> 6;
+        final int rowBits = width & 63;
+
+        for (int i = 0; i < n; i++) {
+            final long prev = i > 0 ? s[i - 1] : 0;
+            final long next = i + 1 < n ? s[i + 1] : 0;
+
+            // Przesunięcie o jedno pole w prawo i w lewo.
+            final long right = (s[i] << 1 | prev >>> 63) & notFirstColumn.words[i];
+            final long left = (s[i] >>> 1 | next << 63) & notLastColumn.words[i];
+
+            // Przesunięcie o jeden wiersz w dół i w górę.
+            final long down = shiftedWord(s, i - rowWords, rowBits, true);
+            final long up = shiftedWord(s, i + rowWords, rowBits, false);
+
+            words[i] = right | left | down | up;
+        }
+        words[n - 1] &= lastWordMask;
+    }
+
+    /**
+     * Zwraca słowo o indeksie {@code i} zbioru przesuniętego o
+     * {@code rowBits} bitów względem słowa źródłowego.
+     */
+    private static long shiftedWord(long[] s, int i, int rowBits,
+            boolean towardsEnd) {
+        if (towardsEnd) {
+            final long low = i >= 0 && i < s.length ? s[i] << rowBits : 0;
+            final long carry = rowBits != 0 && i - 1 >= 0 && i - 1 < s.length
+                    ? s[i - 1] >>> (64 - rowBits) : 0;
+            return low | carry;
+        }
+
+        final long high = i >= 0 && i < s.length ? s[i] >>> rowBits : 0;
+        final long carry = rowBits != 0 && i + 1 >= 0 && i + 1 < s.length
+                ? s[i + 1] << (64 - rowBits) : 0;
+        return high | carry;
+    }
+
+    /**
+     * Dodaje do zbioru wszystkie pola z {@code allowed} osiągalne z pól tego
+     * zbioru poprzez ruchy w pionie lub poziomie.
+     *
+     * @param allowed Pola przez które można przechodzić.
+     * @param notFirstColumn Zbiór wszystkich pól poza pierwszą kolumną.
+     * @param notLastColumn Zbiór wszystkich pól poza ostatnią kolumną.
+     * @param scratch Pomocniczy zbiór tego samego rozmiaru.
+     */
+    public void floodFill(BitBoard allowed, BitBoard notFirstColumn,
+            BitBoard notLastColumn, BitBoard scratch) {
+        boolean changed = true;
+        while (changed) {
+            scratch.setNeighboursOf(this, notFirstColumn, notLastColumn);
+
+            changed = false;
+            for (int i = 0; i < words.length; i++) {
+                final long grown = words[i] | (scratch.words[i] & allowed.words[i]);
+                if (grown != words[i]) {
+                    words[i] = grown;
+                    changed = true;
+                }
+            }
+        }
+    }
+}
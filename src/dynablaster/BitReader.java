@@ -0,0 +1,83 @@
+package dynablaster;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Odczytuje ciąg bitów zapisany przez {@link BitWriter}.
+ */
+final class BitReader {
+
+    private ByteBuffer in;
+    private long bits;
+    private int count;
+
+    /**
+     * Rozpoczyna odczyt od aktualnej pozycji bufora do jego limitu.
+     *
+     * @param in Bufor.
+     */
+    void begin(ByteBuffer in) {
+        this.in = in;
+        bits = 0;
+        count = 0;
+    }
+
+    /**
+     * Odczytuje liczbę zapisaną na podanej liczbie bitów.
+     *
+     * @param n Liczba bitów, co najwyżej 32.
+     * @return Liczba.
+     * @throws IllegalArgumentException Gdy w buforze zabrakło bitów.
+     */
+    long read(int n) {
+        while (count < n) {
+            if (!in.hasRemaining()) {
+                throw new IllegalArgumentException("Truncated bit stream");
+            }
+            bits |= (in.get() & 0xFFL) << count;
+            count += 8;
+        }
+        final long value = bits & (1L << n) - 1;
+        bits >>>= n;
+        count -= n;
+        return value;
+    }
+
+    boolean readBoolean() {
+        return read(1) != 0;
+    }
+
+    long readLong() {
+        return read(32) | read(32) << 32;
+    }
+
+    long readUnsigned() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 4) {
+            final long chunk = read(5);
+            value |= (chunk & 0xF) << shift;
+            if ((chunk & 0x10) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed number");
+    }
+
+    long readSigned() {
+        final long value = readUnsigned();
+        return value >>> 1 ^ -(value & 1);
+    }
+
+    /**
+     * Odczytuje liczbę nieujemną mieszczącą się w {@code int}.
+     *
+     * @throws IllegalArgumentException Gdy liczba jest za duża.
+     */
+    int readSize() {
+        final long value = readUnsigned();
+        if (value < 0 || value > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Size out of range: " + value);
+        }
+        return (int) value;
+    }
+}
@@ -0,0 +1,84 @@
+package dynablaster;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Zapisuje do bufora ciąg bitów, od najmłodszych bitów każdego bajtu.
+ * Liczby nieujemne o zmiennej długości zapisywane są po 4 bity z bitem
+ * kontynuacji, więc liczby mniejsze od 16 zajmują 5 bitów.
+ *
+ * @see BitReader
+ */
+final class BitWriter {
+
+    private ByteBuffer out;
+    private long bits;
+    private int count;
+
+    /**
+     * Rozpoczyna zapis od aktualnej pozycji bufora.
+     *
+     * @param out Bufor.
+     */
+    void begin(ByteBuffer out) {
+        this.out = out;
+        bits = 0;
+        count = 0;
+    }
+
+    /**
+     * Zapisuje najmłodsze bity liczby.
+     *
+     * @param value Liczba.
+     * @param n Liczba bitów, co najwyżej 32.
+     */
+    void write(long value, int n) {
+        bits |= (value & (1L << n) - 1) << count;
+        count += n;
+        while (count >= 8) {
+            out.put((byte) bits);
+            bits >>>= 8;
+            count -= 8;
+        }
+    }
+
+    void writeBoolean(boolean value) {
+        write(value ? 1 : 0, 1);
+    }
+
+    void writeLong(long value) {
+        write(value, 32);
+        write(value >>> 32, 32);
+    }
+
+    /**
+     * Zapisuje liczbę nieujemną o zmiennej długości.
+     */
+    void writeUnsigned(long value) {
+        while ((value & ~0xFL) != 0) {
+            write(value & 0xF | 0x10, 5);
+            value >>>= 4;
+        }
+        write(value, 5);
+    }
+
+    /**
+     * Zapisuje liczbę ze znakiem tak, aby liczby bliskie zeru zajmowały
+     * mało bitów.
+     */
+    void writeSigned(long value) {
+        writeUnsigned(value << 1 ^ value >> 63);
+    }
+
+    /**
+     * Kończy zapis, dopełniając ostatni bajt zerami.
+     */
+    void end() {
+        if (count > 0) {
+            out.put((byte) bits);
+        }
+        out = null;
+        bits = 0;
+        count = 0;
+    }
+}
@@ -0,0 +1,467 @@
+package dynablaster;
+
+import java.util.Arrays;
+
+/**
+ * Przewidywane wybuchy postawionych bomb: dla każdego pola czas pierwszego
+ * wybuchu, który je obejmie, i czas zakończenia ostatniego z nich. Czas
+ * wybuchu bomby uwzględnia reakcje łańcuchowe, a eksplozje zatrzymują się
+ * tak jak w {@link Bombs}: na blokach oraz na bombach, które nie wybuchły
+ * wcześniej.
+ *
+ * Przewidywanie opiera się na aktualnym stanie planszy. Blok zniszczony
+ * przez wcześniejszy wybuch przestaje zatrzymywać eksplozje dopiero gdy
+ * faktycznie zniknie z planszy, i wtedy pola za nim są wyznaczane ponownie.
+ *
+ * {@link Bombs} zgłasza każde postawienie i wybuch bomby oraz zniszczenie
+ * bloku. Zmiany są zbierane i uwzględniane przy pierwszym odczycie:
+ * wyznaczane są na nowo czasy wybuchu bomb połączonych ze zmienionymi polami
+ * i czasy pól w zasięgu tych bomb oraz na liniach przechodzących przez
+ * zmienione pola. Koszt zależy więc od liczby bomb, których dotyczy zmiana,
+ * a nie od liczby wszystkich bomb. Gra w której nikt nie odczytuje
+ * przewidywań nie ponosi tego kosztu.
+ */
+public final class BlastTimeline {
+
+    /**
+     * Czas oznaczający, że pole nie zostanie objęte żadnym wybuchem.
+     */
+    public static final int NEVER = Integer.MAX_VALUE;
+
+    /**
+     * Największa liczba zmian zbieranych przed odczytem. Po jej przekroczeniu
+     * przewidywania są wyznaczane od nowa.
+     */
+    private static final int MAX_CHANGES = 64;
+
+    private static final int ARMS = 4;
+    private static final int[] ARM_DX = {0, 0, -1, 1};
+    private static final int[] ARM_DY = {-1, 1, 0, 0};
+
+    /**
+     * Przewidywany czas wybuchu bomby stojącej na polu.
+     */
+    private int[] detonation = new int[0];
+
+    /**
+     * Czas pierwszego przewidywanego wybuchu obejmującego pole albo
+     * {@link #NEVER} oraz czas zakończenia ostatniego z nich.
+     */
+    private int[] blastStart = new int[0];
+    private int[] blastEnd = new int[0];
+
+    /**
+     * Największy zasięg bomby postawionej od ostatniego wyznaczenia
+     * przewidywań od nowa. Ogranicza odległość na jaką szukane są bomby.
+     */
+    private int maxRange = 0;
+
+    /**
+     * Pola na których postawiono bombę, bomba wybuchła albo zniszczono blok.
+     */
+    private final int[] changes = new int[MAX_CHANGES];
+    private int changeCount = 0;
+    private boolean rebuild = true;
+
+    /**
+     * Bomby, których czas wybuchu jest wyznaczany ponownie, i pola, których
+     * czasy są wyznaczane ponownie. Przynależność oznaczana jest numerem
+     * aktualizacji aby nie czyścić tablic.
+     */
+    private int[] affected = new int[16];
+    private int affectedCount = 0;
+    private int[] affectedStamp = new int[0];
+    private int[] dirty = new int[16];
+    private int dirtyCount = 0;
+    private int[] dirtyStamp = new int[0];
+    private int[] assignedStamp = new int[0];
+    private int[] chain = new int[16];
+    private int stamp = 0;
+
+    private int width;
+    private final GameController controller;
+    private final Bombs bombs;
+
+    BlastTimeline(GameController controller, Bombs bombs) {
+        this.controller = controller;
+        this.bombs = bombs;
+    }
+
+    /**
+     * Usuwa wszystkie przewidywania, np. na początku nowej gry.
+     */
+    void reset(int width, int height) {
+        final int size = width * height;
+        this.width = width;
+        if (detonation.length != size) {
+            detonation = new int[size];
+            blastStart = new int[size];
+            blastEnd = new int[size];
+            affectedStamp = new int[size];
+            dirtyStamp = new int[size];
+            assignedStamp = new int[size];
+            stamp = 0;
+        }
+        changeCount = 0;
+        rebuild = true;
+    }
+
+    /**
+     * Zgłasza zmianę na polu: postawienie bomby, usunięcie bomby po wybuchu
+     * albo zniszczenie bloku.
+     *
+     * @param pos Pozycja pola.
+     */
+    void changed(int pos) {
+        if (rebuild) {
+            return;
+        }
+        if (changeCount == MAX_CHANGES) {
+            rebuild = true;
+            changeCount = 0;
+            return;
+        }
+        changes[changeCount++] = pos;
+    }
+
+    /**
+     * Zwraca czas gry w którym pole zostanie po raz pierwszy objęte
+     * wybuchem postawionej bomby.
+     *
+     * @param x Współrzędna x.
+     * @param y Współrzędna y.
+     * @return Czas wybuchu albo {@link #NEVER}.
+     */
+    public int getBlastStart(int x, int y) {
+        return getBlastStart(x + y * width);
+    }
+
+    /**
+     * Zwraca czas gry w którym skończy się ostatni przewidywany wybuch
+     * obejmujący pole.
+     *
+     * @param x Współrzędna x.
+     * @param y Współrzędna y.
+     * @return Czas zakończenia wybuchu albo 0 jeśli pole nie zostanie objęte
+     * wybuchem.
+     */
+    public int getBlastEnd(int x, int y) {
+        return getBlastEnd(x + y * width);
+    }
+
+    int getBlastStart(int pos) {
+        refresh();
+        return blastStart[pos];
+    }
+
+    int getBlastEnd(int pos) {
+        refresh();
+        return blastEnd[pos];
+    }
+
+    /**
+     * Zwraca przewidywany czas wybuchu bomby stojącej na polu, uwzględniający
+     * reakcje łańcuchowe.
+     *
+     * @param x Współrzędna x bomby.
+     * @param y Współrzędna y bomby.
+     * @return Czas wybuchu albo {@link #NEVER} jeśli na polu nie ma bomby.
+     */
+    public int getDetonationTime(int x, int y) {
+        refresh();
+        final int pos = x + y * width;
+        return bombs.getBombAt(pos) != null ? detonation[pos] : NEVER;
+    }
+
+    /**
+     * Uwzględnia zebrane zmiany.
+     */
+    private void refresh() {
+        if (!rebuild && changeCount == 0) {
+            return;
+        }
+
+        stamp += 1;
+        affectedCount = 0;
+        dirtyCount = 0;
+
+        if (rebuild) {
+            Arrays.fill(blastStart, NEVER);
+            Arrays.fill(blastEnd, 0);
+            maxRange = 0;
+            for (int i = 0; i < bombs.getBombCount(); i++) {
+                final Bomb bomb = bombs.getBomb(i);
+                maxRange = Math.max(maxRange, bomb.range);
+                addAffected(bomb.x + bomb.y * width);
+            }
+            rebuild = false;
+        } else {
+            for (int i = 0; i < changeCount; i++) {
+                final Bomb bomb = bombs.getBombAt(changes[i]);
+                if (bomb != null) {
+                    maxRange = Math.max(maxRange, bomb.range);
+                }
+            }
+            for (int i = 0; i < changeCount; i++) {
+                addChange(changes[i]);
+            }
+            // Bomby połączone z bombami, których dotyczy zmiana, mogą
+            // zostać zdetonowane przez nie albo je zdetonować.
+            for (int i = 0; i < affectedCount; i++) {
+                addConnected(affected[i]);
+            }
+            sortAffected();
+        }
+        changeCount = 0;
+
+        assignDetonations();
+        for (int i = 0; i < affectedCount; i++) {
+            final int pos = affected[i];
+            addCross(pos, bombs.getBombAt(pos).range);
+        }
+        for (int i = 0; i < dirtyCount; i++) {
+            updateTile(dirty[i]);
+        }
+    }
+
+    /**
+     * Oznacza do ponownego wyznaczenia pola na liniach przechodzących przez
+     * zmienione pole, do których mogą sięgać wybuchy, oraz bomby stojące na
+     * nich.
+     */
+    private void addChange(int pos) {
+        addDirty(pos);
+        if (bombs.getBombAt(pos) != null) {
+            addAffected(pos);
+        }
+
+        final Grid grid = controller.grid;
+        final int x = pos % width;
+        final int y = pos / width;
+        for (int arm = 0; arm < ARMS; arm++) {
+            for (int step = 1; step <= maxRange; step++) {
+                final int ax = x + ARM_DX[arm] * step;
+                final int ay = y + ARM_DY[arm] * step;
+                if (!grid.isValidPosition(ax, ay)) {
+                    break;
+                }
+                final int next = ax + ay * width;
+                final Tile tile = grid.getTile(next);
+                if (tile == Tile.INDESTRUCTIBLE) {
+                    break;
+                }
+                addDirty(next);
+                if (tile == Tile.DESTRUCTIBLE) {
+                    break;
+                }
+                if (bombs.getBombAt(next) != null) {
+                    addAffected(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dodaje bomby, które mogą zdetonować bombę na podanym polu albo zostać
+     * przez nią zdetonowane.
+     */
+    private void addConnected(int pos) {
+        final Grid grid = controller.grid;
+        final int range = bombs.getBombAt(pos).range;
+        final int x = pos % width;
+        final int y = pos / width;
+        for (int arm = 0; arm < ARMS; arm++) {
+            for (int step = 1; step <= maxRange; step++) {
+                final int ax = x + ARM_DX[arm] * step;
+                final int ay = y + ARM_DY[arm] * step;
+                if (!grid.isValidPosition(ax, ay)) {
+                    break;
+                }
+                final int next = ax + ay * width;
+                final Tile tile = grid.getTile(next);
+                if (tile == Tile.INDESTRUCTIBLE || tile == Tile.DESTRUCTIBLE) {
+                    break;
+                }
+                final Bomb other = bombs.getBombAt(next);
+                if (other != null && (step <= range || step <= other.range)) {
+                    addAffected(next);
+                }
+            }
+        }
+    }
+
+    private void addAffected(int pos) {
+        if (affectedStamp[pos] == stamp) {
+            return;
+        }
+        affectedStamp[pos] = stamp;
+        if (affectedCount == affected.length) {
+            affected = Arrays.copyOf(affected, affectedCount * 2);
+            chain = Arrays.copyOf(chain, affectedCount * 2);
+        }
+        affected[affectedCount++] = pos;
+    }
+
+    private void addDirty(int pos) {
+        if (dirtyStamp[pos] == stamp) {
+            return;
+        }
+        dirtyStamp[pos] = stamp;
+        if (dirtyCount == dirty.length) {
+            dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+        }
+        dirty[dirtyCount++] = pos;
+    }
+
+    /**
+     * Sortuje bomby według czasu postawienia, czyli czasu wybuchu bez reakcji
+     * łańcuchowych. Przy wyznaczaniu od nowa bomby są już posortowane, bo
+     * {@link Bombs} przechowuje je w kolejności postawienia.
+     */
+    private void sortAffected() {
+        for (int i = 1; i < affectedCount; i++) {
+            final int pos = affected[i];
+            final long when = bombs.getBombAt(pos).when;
+            int j = i - 1;
+            while (j >= 0 && bombs.getBombAt(affected[j]).when > when) {
+                affected[j + 1] = affected[j];
+                j -= 1;
+            }
+            affected[j + 1] = pos;
+        }
+    }
+
+    /**
+     * Wyznacza czasy wybuchu bomb z {@link #affected}. Bomby przeglądane są w
+     * kolejności wybuchu, a bomba trafiona eksplozją wybucha w tym samym
+     * czasie co bomba, która ją trafiła. Eksplozja przechodzi przez pole
+     * bomby, która wybuchła wcześniej, bo ta zniknęła już z planszy.
+     */
+    private void assignDetonations() {
+        final Grid grid = controller.grid;
+        for (int i = 0; i < affectedCount; i++) {
+            final int first = affected[i];
+            if (assignedStamp[first] == stamp) {
+                continue;
+            }
+
+            final int time = Bomb.getDetonationTime(bombs.getBombAt(first).when);
+            assignedStamp[first] = stamp;
+            detonation[first] = time;
+            int depth = 0;
+            chain[depth++] = first;
+
+            while (depth > 0) {
+                final int pos = chain[--depth];
+                final int range = bombs.getBombAt(pos).range;
+                final int x = pos % width;
+                final int y = pos / width;
+                for (int arm = 0; arm < ARMS; arm++) {
+                    for (int step = 1; step <= range; step++) {
+                        final int ax = x + ARM_DX[arm] * step;
+                        final int ay = y + ARM_DY[arm] * step;
+                        if (!grid.isValidPosition(ax, ay)) {
+                            break;
+                        }
+                        final int next = ax + ay * width;
+                        final Tile tile = grid.getTile(next);
+                        if (tile == Tile.INDESTRUCTIBLE || tile == Tile.DESTRUCTIBLE) {
+                            break;
+                        }
+                        if (bombs.getBombAt(next) == null) {
+                            continue;
+                        }
+                        if (assignedStamp[next] != stamp) {
+                            assignedStamp[next] = stamp;
+                            detonation[next] = time;
+                            chain[depth++] = next;
+                            break;
+                        }
+                        if (detonation[next] >= time) {
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Oznacza do ponownego wyznaczenia pola w zasięgu bomby.
+     */
+    private void addCross(int pos, int range) {
+        final Grid grid = controller.grid;
+        addDirty(pos);
+        final int x = pos % width;
+        final int y = pos / width;
+        for (int arm = 0; arm < ARMS; arm++) {
+            for (int step = 1; step <= range; step++) {
+                final int ax = x + ARM_DX[arm] * step;
+                final int ay = y + ARM_DY[arm] * step;
+                if (!grid.isValidPosition(ax, ay)) {
+                    break;
+                }
+                final int next = ax + ay * width;
+                final Tile tile = grid.getTile(next);
+                if (tile == Tile.INDESTRUCTIBLE) {
+                    break;
+                }
+                addDirty(next);
+                if (tile == Tile.DESTRUCTIBLE) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Wyznacza czasy wybuchów obejmujących pole na podstawie bomb na liniach
+     * przechodzących przez nie. Bomba obejmuje pole, jeśli ma wystarczający
+     * zasięg i nie zatrzymują jej bloki ani bomby, które nie wybuchną przed
+     * nią.
+     */
+    private void updateTile(int pos) {
+        final Grid grid = controller.grid;
+        final int duration = grid.getTile(pos) == Tile.DESTRUCTIBLE
+                ? TileExplosion.DURATION : Explosion.DURATION;
+
+        int start = NEVER;
+        int end = 0;
+        if (bombs.getBombAt(pos) != null) {
+            start = detonation[pos];
+            end = Bombs.getClearTime(start, duration);
+        }
+
+        final int x = pos % width;
+        final int y = pos / width;
+        for (int arm = 0; arm < ARMS; arm++) {
+            // Najpóźniejszy wybuch bomby pomiędzy polem a sprawdzaną bombą.
+            int blocking = -1;
+            for (int step = 1; step <= maxRange; step++) {
+                final int ax = x + ARM_DX[arm] * step;
+                final int ay = y + ARM_DY[arm] * step;
+                if (!grid.isValidPosition(ax, ay)) {
+                    break;
+                }
+                final int next = ax + ay * width;
+                final Tile tile = grid.getTile(next);
+                if (tile == Tile.INDESTRUCTIBLE || tile == Tile.DESTRUCTIBLE) {
+                    break;
+                }
+                final Bomb bomb = bombs.getBombAt(next);
+                if (bomb == null) {
+                    continue;
+                }
+                final int time = detonation[next];
+                if (step <= bomb.range && time > blocking) {
+                    start = Math.min(start, time);
+                    end = Math.max(end, Bombs.getClearTime(time, duration));
+                }
+                blocking = Math.max(blocking, time);
+            }
+        }
+
+        blastStart[pos] = start;
+        blastEnd[pos] = end;
+    }
+}
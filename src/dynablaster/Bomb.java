@@ -15,7 +15,7 @@ public class Bomb {
     /**
      * Gracz który postawił tą bombę.
      */
-    private final Player owner;
+    private Player owner;
 
     /**
      * Oznacza czy bomba już eksplodowała.
@@ -23,41 +23,79 @@ public class Bomb {
     private boolean hasExploded = false;
 
     /**
-     * Czas (w millisekundach) kiedy bomba została postawiona.
+     * Czas gry (w millisekundach) kiedy bomba została postawiona.
      */
-    public final long when;
+    long when;
 
     /**
      * Współrzędna x pozycji bomby.
      */
-    public final int x;
+    int x;
 
     /**
      * Współrzędna y pozycji bomby.
      */
-    public final int y;
+    int y;
 
     /**
      * Dystans jaki osiąga eksplozja tej bomby.
      */
-    public final int range;
+    int range;
 
-    public Bomb(Player owner, int x, int y, int range) {
+    public Bomb(Player owner, int x, int y, int range, long when) {
+        reset(owner, x, y, range, when);
+    }
+
+    /**
+     * Przywraca bombę do stanu nowo postawionej bomby. Pozwala na ponowne
+     * użycie obiektu bomby która już eksplodowała.
+     *
+     * @param owner Gracz który postawił bombę.
+     * @param x Współrzędna x pozycji bomby.
+     * @param y Współrzędna y pozycji bomby.
+     * @param range Zasięg eksplozji.
+     * @param when Czas postawienia bomby.
+     */
+    final void reset(Player owner, int x, int y, int range, long when) {
         this.owner = owner;
         this.x = x;
         this.y = y;
         this.range = range;
+        this.when = when;
 
-        when = System.currentTimeMillis();
+        hasExploded = false;
+    }
+
+    /**
+     * Zwraca gracza który postawił tą bombę.
+     *
+     * @return Właściciel bomby.
+     */
+    public Player getOwner() {
+        return owner;
     }
 
     /**
      * Zwraca czy bomba powinna już eksplodować.
      *
+     * @param now Aktualny czas gry.
      * @return {@code true} jeśli bomba powinna eksplodować.
      */
-    public boolean shouldExplode() {
-        return System.currentTimeMillis() - when >= TIME_TO_EXPLOSION;
+    public boolean shouldExplode(long now) {
+        return now - when >= TIME_TO_EXPLOSION;
+    }
+
+    /**
+     * Zwraca czas gry kroku symulacji w którym wybuchnie bomba postawiona w
+     * podanej chwili, jeśli wcześniej nie zdetonuje jej inna eksplozja.
+     *
+     * @param when Czas postawienia bomby.
+     * @return Czas wybuchu.
+     */
+    static int getDetonationTime(long when) {
+        final long time = when + TIME_TO_EXPLOSION;
+        return (int) ((time + GameClock.TICK_DURATION - 1)
+                / GameClock.TICK_DURATION * GameClock.TICK_DURATION);
     }
 
     /**
@@ -1,11 +1,10 @@
 package dynablaster;
 
 import java.awt.Graphics2D;
-import java.awt.Image;
-import java.awt.Toolkit;
 import java.awt.image.ImageObserver;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Klasa odpowiedzialna za zarządzanie wszystkimi bombami.
@@ -22,26 +21,157 @@ public class Bombs {
      */
     private final ArrayList<IExplosion> explosions = new ArrayList<>();
 
+    /**
+     * Obiekty bomb i eksplozji które się zakończyły i mogą zostać użyte
+     * ponownie. Dzięki temu w trakcie gry nie są tworzone nowe obiekty.
+     */
+    private final ArrayList<Bomb> freeBombs = new ArrayList<>();
+    private final ArrayList<Explosion> freeExplosions = new ArrayList<>();
+    private final ArrayList<TileExplosion> freeTileExplosions = new ArrayList<>();
+
+    /**
+     * Bomby indeksowane pozycją pola na którym się znajdują. Pozwala na
+     * sprawdzenie zajętości pola bez przeglądania listy bomb.
+     */
+    private Bomb[] bombAt;
+    private int width;
+
+    /**
+     * Czas gry do którego pole jest objęte działaniem eksplozji (wyłącznie,
+     * patrz {@link #getClearTime(long, int)}). Gracz znajdujący się na takim
+     * polu ginie. Czas zapisany jest jako {@code int} aby zmniejszyć rozmiar
+     * tablicy na dużych planszach.
+     */
+    private int[] lethalUntil;
+
+    /**
+     * Czas gry do którego (wyłącznie) na polu wybucha ściana. Gracz nie może
+     * wejść na takie pole.
+     */
+    private int[] blockedUntil;
+
+    /**
+     * Liczba kierunków rozchodzenia się eksplozji oraz ich przesunięcia w
+     * kolejności: góra, dół, lewo, prawo.
+     */
+    private static final int ARMS = 4;
+    private static final int[] ARM_DX = {0, 0, -1, 1};
+    private static final int[] ARM_DY = {-1, 1, 0, 0};
+
+    /**
+     * Rozmiar w bajtach zapisanego stanu jednej bomby i jednej eksplozji.
+     */
+    private static final int BOMB_STATE_SIZE = 24;
+    private static final int EXPLOSION_STATE_SIZE = 37;
+
+    /**
+     * Stos detonowanych bomb używany przy wyznaczaniu reakcji łańcuchowej.
+     * Łańcuch może objąć każdą bombę na planszy, więc stos jest powiększany
+     * razem z liczbą postawionych bomb.
+     */
+    private Bomb[] chainBombs = new Bomb[16];
+    private Explosion[] chainExplosions = new Explosion[16];
+    private int[] chainArms = new int[16];
+    private int[] chainSteps = new int[16];
+
+    /**
+     * Przewidywane wybuchy postawionych bomb.
+     */
+    private final BlastTimeline timeline;
+
     private final GameController controller;
-    private final Image bombImage;
-    private final Image explosionImage;
-    private final Image tileExplosionImage;
 
     public Bombs(GameController controller) {
         this.controller = controller;
+        this.timeline = new BlastTimeline(controller, this);
 
-        final Toolkit toolkit = Toolkit.getDefaultToolkit();
-        bombImage = toolkit.getImage("res/bomb.png");
-        explosionImage = toolkit.getImage("res/explosion.png");
-        tileExplosionImage = toolkit.getImage("res/explosion-tile.png");
+        resize();
+        timeline.reset(width, controller.grid.getHeight());
     }
 
     /**
      * Czyści wszystkie bomby i eksplozje aby można było rozpocząć nową grę.
      */
     public void newGame() {
+        for (int i = 0; i < bombs.size(); i++) {
+            freeBombs.add(bombs.get(i));
+        }
+        for (int i = 0; i < explosions.size(); i++) {
+            recycleExplosion(explosions.get(i));
+        }
+
         bombs.clear();
         explosions.clear();
+        if (width != controller.grid.getWidth()
+                || bombAt.length != width * controller.grid.getHeight()) {
+            resize();
+        } else {
+            Arrays.fill(bombAt, null);
+            Arrays.fill(lethalUntil, 0);
+            Arrays.fill(blockedUntil, 0);
+        }
+        timeline.reset(width, controller.grid.getHeight());
+    }
+
+    /**
+     * Dopasowuje rozmiar tablic indeksowanych pozycją pola do rozmiaru
+     * planszy.
+     */
+    private void resize() {
+        width = controller.grid.getWidth();
+        bombAt = new Bomb[width * controller.grid.getHeight()];
+        lethalUntil = new int[bombAt.length];
+        blockedUntil = new int[bombAt.length];
+    }
+
+    /**
+     * Zwraca liczbę bomb znajdujących się na planszy.
+     *
+     * @return Liczba bomb.
+     */
+    public int getBombCount() {
+        return bombs.size();
+    }
+
+    /**
+     * Zwraca liczbę trwających eksplozji.
+     *
+     * @return Liczba eksplozji.
+     */
+    public int getExplosionCount() {
+        return explosions.size();
+    }
+
+    /**
+     * Zwraca przewidywane wybuchy postawionych bomb.
+     *
+     * @return Przewidywane wybuchy.
+     */
+    public BlastTimeline getTimeline() {
+        return timeline;
+    }
+
+    /**
+     * Zwraca bombę o podanym numerze. Bomby są numerowane w kolejności
+     * postawienia.
+     */
+    Bomb getBomb(int i) {
+        return bombs.get(i);
+    }
+
+    /**
+     * Zwraca bombę stojącą na polu o podanej pozycji albo {@code null}.
+     */
+    Bomb getBombAt(int pos) {
+        return bombAt[pos];
+    }
+
+    /**
+     * Zwraca czas gry do którego pole o podanej pozycji jest objęte
+     * trwającą eksplozją.
+     */
+    int getLethalUntil(int pos) {
+        return lethalUntil[pos];
     }
 
     /**
@@ -56,39 +186,183 @@ public class Bombs {
             return;
         }
 
-        for (Bomb bomb : bombs) {
-            if (bomb.x == x && bomb.y == y) {
-                return;
+        if (isBombAt(x, y)) {
+            return;
+        }
+
+        if (!player.placeBomb()) {
+            return;
+        }
+
+        final long now = controller.clock.now();
+        final Bomb bomb;
+        if (freeBombs.isEmpty()) {
+            bomb = new Bomb(player, x, y, player.getBombRange(), now);
+        } else {
+            bomb = freeBombs.remove(freeBombs.size() - 1);
+            bomb.reset(player, x, y, player.getBombRange(), now);
+        }
+
+        bombs.add(bomb);
+        bombAt[x + y * width] = bomb;
+        timeline.changed(x + y * width);
+        ensureChainCapacity();
+    }
+
+    private void ensureChainCapacity() {
+        if (bombs.size() > chainBombs.length) {
+            final int capacity = Math.max(bombs.size(), chainBombs.length * 2);
+            chainBombs = Arrays.copyOf(chainBombs, capacity);
+            chainExplosions = Arrays.copyOf(chainExplosions, capacity);
+            chainArms = Arrays.copyOf(chainArms, capacity);
+            chainSteps = Arrays.copyOf(chainSteps, capacity);
+        }
+    }
+
+    /**
+     * Zwraca rozmiar w bajtach stanu bomb zapisywanego przez
+     * {@link #saveState(ByteBuffer)}.
+     *
+     * @return Rozmiar stanu.
+     */
+    int getStateSize() {
+        return 8 + bombs.size() * BOMB_STATE_SIZE
+                + explosions.size() * EXPLOSION_STATE_SIZE;
+    }
+
+    /**
+     * Zapisuje bomby i eksplozje w kolejności w jakiej są przetwarzane. Stan
+     * może być zapisany tylko pomiędzy krokami symulacji, kiedy na planszy
+     * nie ma zdetonowanych bomb.
+     *
+     * @param out Bufor do którego zapisać stan.
+     */
+    void saveState(ByteBuffer out) {
+        out.putInt(bombs.size());
+        for (int i = 0; i < bombs.size(); i++) {
+            final Bomb bomb = bombs.get(i);
+            out.putInt(bomb.getOwner().id);
+            out.putInt(bomb.x);
+            out.putInt(bomb.y);
+            out.putInt(bomb.range);
+            out.putLong(bomb.when);
+        }
+
+        out.putInt(explosions.size());
+        for (int i = 0; i < explosions.size(); i++) {
+            final IExplosion explosion = explosions.get(i);
+            if (explosion instanceof Explosion) {
+                final Explosion e = (Explosion) explosion;
+                out.put((byte) 0);
+                out.putInt(e.x);
+                out.putInt(e.y);
+                out.putLong(e.when);
+                out.putInt(e.maxRange);
+                out.putInt(e.rangeUp);
+                out.putInt(e.rangeDown);
+                out.putInt(e.rangeLeft);
+                out.putInt(e.rangeRight);
+            } else {
+                final TileExplosion e = (TileExplosion) explosion;
+                out.put((byte) 1);
+                out.putInt(e.x);
+                out.putInt(e.y);
+                out.putLong(e.when);
             }
         }
+    }
+
+    /**
+     * Przywraca stan bomb zapisany przez {@link #saveState(ByteBuffer)}.
+     * Gracze i plansza muszą mieć już przywrócony stan. Obiekty bomb i
+     * eksplozji są brane z puli, a indeks bomb na polach oraz czasy działania
+     * eksplozji na polach są wyznaczane na nowo.
+     *
+     * @param in Bufor z którego odczytać stan.
+     */
+    void restoreState(ByteBuffer in) {
+        newGame();
+
+        final int bombCount = in.getInt();
+        for (int i = 0; i < bombCount; i++) {
+            final Player owner = controller.players.getPlayer(in.getInt());
+            final int x = in.getInt();
+            final int y = in.getInt();
+            final int range = in.getInt();
+            final long when = in.getLong();
+
+            final Bomb bomb;
+            if (freeBombs.isEmpty()) {
+                bomb = new Bomb(owner, x, y, range, when);
+            } else {
+                bomb = freeBombs.remove(freeBombs.size() - 1);
+                bomb.reset(owner, x, y, range, when);
+            }
+            bombs.add(bomb);
+            bombAt[x + y * width] = bomb;
+        }
+        ensureChainCapacity();
+
+        final int explosionCount = in.getInt();
+        for (int i = 0; i < explosionCount; i++) {
+            final boolean tile = in.get() != 0;
+            final int x = in.getInt();
+            final int y = in.getInt();
+            final long when = in.getLong();
+
+            if (tile) {
+                final TileExplosion explosion;
+                if (freeTileExplosions.isEmpty()) {
+                    explosion = new TileExplosion(x, y, when);
+                } else {
+                    explosion = freeTileExplosions.remove(freeTileExplosions.size() - 1);
+                    explosion.reset(x, y, when);
+                }
+                explosions.add(explosion);
+
+                final int pos = x + y * width;
+                final int until = getClearTime(when, TileExplosion.DURATION);
+                markLethal(pos, until);
+                if (blockedUntil[pos] < until) {
+                    blockedUntil[pos] = until;
+                }
+                continue;
+            }
+
+            final int maxRange = in.getInt();
+            final Explosion explosion;
+            if (freeExplosions.isEmpty()) {
+                explosion = new Explosion(x, y, maxRange, when);
+            } else {
+                explosion = freeExplosions.remove(freeExplosions.size() - 1);
+                explosion.reset(x, y, maxRange, when);
+            }
+            explosion.rangeUp = in.getInt();
+            explosion.rangeDown = in.getInt();
+            explosion.rangeLeft = in.getInt();
+            explosion.rangeRight = in.getInt();
+            explosions.add(explosion);
 
-        bombs.add(player.placeBomb(x, y));
+            markExplosion(explosion, getClearTime(when, Explosion.DURATION));
+        }
     }
 
     public void draw(Graphics2D g, ImageObserver observer) {
-        final int width = 16;
-        final int height = 16;
+        final long now = controller.clock.now();
 
-        for (Bomb bomb : bombs) {
-            long lifeTime = (System.currentTimeMillis() - bomb.when) / 200;
+        for (int i = 0; i < bombs.size(); i++) {
+            final Bomb bomb = bombs.get(i);
+            long lifeTime = (now - bomb.when) / 200;
             int frame = (int) (lifeTime % 3);
-            int offsetX = frame * width;
 
-            g.drawImage(bombImage,
+            g.drawImage(Sprites.BOMB[frame],
                     bomb.x * Grid.TILE_SIZE,
                     bomb.y * Grid.TILE_SIZE,
-                    bomb.x * Grid.TILE_SIZE + width * Grid.SCALE,
-                    bomb.y * Grid.TILE_SIZE + height * Grid.SCALE,
-                    offsetX,
-                    0,
-                    offsetX + width,
-                    height,
                     observer);
         }
 
-        for (IExplosion explosion : explosions) {
-            explosion.draw(g, observer,
-                    explosion instanceof Explosion ? explosionImage : tileExplosionImage);
+        for (int i = 0; i < explosions.size(); i++) {
+            explosions.get(i).draw(g, observer, now);
         }
     }
 
@@ -109,15 +383,8 @@ public class Bombs {
             return false;
         }
 
-        for (IExplosion explosion : explosions) {
-            // Gracz nie może wchodzić na wybuchające ściany.
-            if (explosion instanceof TileExplosion
-                    && explosion.isInRange(x, y)) {
-                return false;
-            }
-        }
-
-        return true;
+        // Gracz nie może wchodzić na wybuchające ściany.
+        return blockedUntil[x + y * width] <= controller.clock.now();
     }
 
     /**
@@ -128,24 +395,39 @@ public class Bombs {
      * @return {@code true} jeśli gracz znajduje się w zasięgu eksplozji.
      */
     public boolean hasEnteredExplosion(Player player) {
-        for (IExplosion explosion : explosions) {
-            if (explosion.isInRange(player.getX(), player.getY())) {
-                return true;
-            }
-        }
-        return false;
+        final int pos = player.getX() + player.getY() * width;
+        return lethalUntil[pos] > controller.clock.now();
     }
 
     /**
-     * Detonuje wszystkie bomby.
+     * Detonuje wszystkie bomby którym skończył się czas do wybuchu.
      */
     private void detonateAllBombs() {
-        List<Bomb> currentBombs = (List<Bomb>) bombs.clone();
-        for (Bomb bomb : currentBombs) {
-            if (bomb.shouldExplode()) {
-                detonateBomb(bomb, currentBombs);
+        final long now = controller.clock.now();
+        final int count = bombs.size();
+        for (int i = 0; i < count; i++) {
+            final Bomb bomb = bombs.get(i);
+            if (!bomb.hasExploded() && bomb.shouldExplode(now)) {
+                detonateChain(bomb, now);
             }
         }
+
+        // Zdetonowane bomby pozostają w indeksie do końca detonacji aby
+        // zatrzymywały eksplozje innych bomb wybuchających w tym samym czasie.
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            final Bomb bomb = bombs.get(i);
+            if (bomb.hasExploded()) {
+                bombAt[bomb.x + bomb.y * width] = null;
+                timeline.changed(bomb.x + bomb.y * width);
+                freeBombs.add(bomb);
+            } else {
+                bombs.set(kept++, bomb);
+            }
+        }
+        for (int i = count - 1; i >= kept; i--) {
+            bombs.remove(i);
+        }
     }
 
     /**
@@ -155,73 +437,191 @@ public class Bombs {
      * @param y Współrzędna y bomby.
      */
     private boolean isBombAt(int x, int y) {
-        for (Bomb bomb : bombs) {
-            if (bomb.x == x && bomb.y == y) {
-                return true;
-            }
-        }
-
-        return false;
+        return bombAt[x + y * width] != null;
     }
 
     /**
      * Usuwa zakończone eksplozje.
      */
     private void removeTimedOutExplosions() {
-        List<IExplosion> explosionsClone = (List<IExplosion>) explosions.clone();
-        for (IExplosion explosion : explosionsClone) {
-            if (explosion.hasTimedOut()) {
-                explosions.remove(explosion);
+        final long now = controller.clock.now();
+        final int count = explosions.size();
+
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            final IExplosion explosion = explosions.get(i);
+            if (explosion.hasTimedOut(now)) {
+                recycleExplosion(explosion);
+            } else {
+                explosions.set(kept++, explosion);
             }
         }
+        for (int i = count - 1; i >= kept; i--) {
+            explosions.remove(i);
+        }
+    }
+
+    private void recycleExplosion(IExplosion explosion) {
+        if (explosion instanceof Explosion) {
+            freeExplosions.add((Explosion) explosion);
+        } else {
+            freeTileExplosions.add((TileExplosion) explosion);
+        }
     }
 
     /**
      * Detonuje wskazaną bombę powodując wysadzenie wszystkiego co jest w
-     * zasięgu jej eksplozji.
+     * zasięgu jej eksplozji, łącznie z innymi bombami.
+     *
+     * Bomby trafione przez eksplozję są detonowane natychmiast, zanim
+     * eksplozja rozejdzie się w kolejnych kierunkach. Zamiast rekurencji
+     * używany jest jawny stos, dzięki czemu długie łańcuchy wybuchów nie mogą
+     * przepełnić stosu wywołań.
      *
      * @param bomb Bomba do zdetonowania.
-     * @param currentBombs Lista bomb jakie znajdowały się planszy w przed
-     * detonacją.
+     * @param now Aktualny czas gry.
      */
-    private void detonateBomb(Bomb bomb, List<Bomb> currentBombs) {
-        if (bomb.hasExploded()) {
-            return;
+    private void detonateChain(Bomb bomb, long now) {
+        int depth = 0;
+        chainBombs[depth] = bomb;
+        chainExplosions[depth] = startExplosion(bomb, now);
+        chainArms[depth] = 0;
+        chainSteps[depth] = 0;
+        depth += 1;
+
+        while (depth > 0) {
+            final int top = depth - 1;
+            final Bomb current = chainBombs[top];
+            final Explosion explosion = chainExplosions[top];
+            final int arm = chainArms[top];
+
+            if (arm == ARMS) {
+                markExplosion(explosion, getClearTime(now, Explosion.DURATION));
+                chainBombs[top] = null;
+                chainExplosions[top] = null;
+                depth -= 1;
+                continue;
+            }
+
+            final int step = chainSteps[top] + 1;
+            if (step > current.range) {
+                chainArms[top] = arm + 1;
+                chainSteps[top] = 0;
+                continue;
+            }
+            chainSteps[top] = step;
+
+            final int x = current.x + ARM_DX[arm] * step;
+            final int y = current.y + ARM_DY[arm] * step;
+
+            if (!destroyAt(x, y, now)) {
+                extendArm(explosion, arm);
+                continue;
+            }
+
+            // Eksplozja zatrzymała się na tym polu.
+            chainArms[top] = arm + 1;
+            chainSteps[top] = 0;
+
+            if (!controller.grid.isValidPosition(x, y)) {
+                continue;
+            }
+
+            final Bomb otherBomb = bombAt[x + y * width];
+            if (otherBomb != null && !otherBomb.hasExploded()) {
+                chainBombs[depth] = otherBomb;
+                chainExplosions[depth] = startExplosion(otherBomb, now);
+                chainArms[depth] = 0;
+                chainSteps[depth] = 0;
+                depth += 1;
+            }
         }
+    }
 
+    /**
+     * Tworzy eksplozję bomby i zabija graczy stojących na bombie.
+     *
+     * @param bomb Wybuchająca bomba.
+     * @param now Aktualny czas gry.
+     * @return Eksplozja o zerowym zasięgu.
+     */
+    private Explosion startExplosion(Bomb bomb, long now) {
         // Stwórz eksplozję która zabije graczy którzy na nią wejdą w czasie
         // działania wybuchu.
-        long now = System.currentTimeMillis();
-        Explosion explosion = new Explosion(bomb.x, bomb.y, bomb.range, now);
+        final Explosion explosion;
+        if (freeExplosions.isEmpty()) {
+            explosion = new Explosion(bomb.x, bomb.y, bomb.range, now);
+        } else {
+            explosion = freeExplosions.remove(freeExplosions.size() - 1);
+            explosion.reset(bomb.x, bomb.y, bomb.range, now);
+        }
         explosions.add(explosion);
 
         bomb.setAsExploded();
-        bombs.remove(bomb);
         controller.players.killAt(bomb.x, bomb.y);
+        return explosion;
+    }
 
-        for (int i = 1; i <= bomb.range; i++) {
-            if (destroyAt(bomb.x, bomb.y - i, now, currentBombs)) {
+    private static void extendArm(Explosion explosion, int arm) {
+        switch (arm) {
+            case 0:
+                explosion.rangeUp += 1;
                 break;
-            }
-            explosion.rangeUp += 1;
-        }
-        for (int i = 1; i <= bomb.range; i++) {
-            if (destroyAt(bomb.x, bomb.y + i, now, currentBombs)) {
+            case 1:
+                explosion.rangeDown += 1;
                 break;
-            }
-            explosion.rangeDown += 1;
-        }
-        for (int i = 1; i <= bomb.range; i++) {
-            if (destroyAt(bomb.x - i, bomb.y, now, currentBombs)) {
+            case 2:
+                explosion.rangeLeft += 1;
                 break;
-            }
-            explosion.rangeLeft += 1;
-        }
-        for (int i = 1; i <= bomb.range; i++) {
-            if (destroyAt(bomb.x + i, bomb.y, now, currentBombs)) {
+            default:
+                explosion.rangeRight += 1;
                 break;
-            }
-            explosion.rangeRight += 1;
+        }
+    }
+
+    /**
+     * Oznacza pola objęte eksplozją jako śmiertelne do podanego czasu.
+     *
+     * @param explosion Eksplozja z wyznaczonym zasięgiem.
+     * @param until Czas zakończenia eksplozji.
+     */
+    private void markExplosion(Explosion explosion, int until) {
+        final int center = explosion.x + explosion.y * width;
+        markLethal(center, until);
+
+        for (int i = 1; i <= explosion.rangeUp; i++) {
+            markLethal(center - i * width, until);
+        }
+        for (int i = 1; i <= explosion.rangeDown; i++) {
+            markLethal(center + i * width, until);
+        }
+        for (int i = 1; i <= explosion.rangeLeft; i++) {
+            markLethal(center - i, until);
+        }
+        for (int i = 1; i <= explosion.rangeRight; i++) {
+            markLethal(center + i, until);
+        }
+    }
+
+    /**
+     * Zwraca czas gry od którego eksplozja rozpoczęta w podanej chwili
+     * przestaje działać. Eksplozja jest usuwana w pierwszym kroku po upływie
+     * czasu jej trwania, ale gracze poruszają się w tym kroku przed jej
+     * usunięciem, więc działa ona jeszcze przez cały ten krok.
+     *
+     * @param when Czas rozpoczęcia eksplozji.
+     * @param duration Czas trwania eksplozji.
+     * @return Czas pierwszego kroku w którym eksplozja już nie działa.
+     */
+    static int getClearTime(long when, int duration) {
+        final long removed = (when + duration + GameClock.TICK_DURATION - 1)
+                / GameClock.TICK_DURATION * GameClock.TICK_DURATION;
+        return (int) removed + GameClock.TICK_DURATION;
+    }
+
+    private void markLethal(int pos, int until) {
+        if (lethalUntil[pos] < until) {
+            lethalUntil[pos] = until;
         }
     }
 
@@ -230,13 +630,31 @@ public class Bombs {
      *
      * @param x Współrzędna x.
      * @param y Współrzędna y.
-     * @return {@code true} jeśli coś zostało zniszczone.
+     * @return {@code true} jeśli eksplozja zatrzymała się na tym polu.
      */
-    private boolean destroyAt(int x, int y, long time,
-            List<Bomb> currentBombs) {
+    private boolean destroyAt(int x, int y, long time) {
+        if (!controller.grid.isValidPosition(x, y)) {
+            return true;
+        }
+
         Tile affectedTile = controller.grid.destroyTile(x, y);
         if (affectedTile == Tile.DESTRUCTIBLE) {
-            explosions.add(new TileExplosion(x, y, time));
+            final TileExplosion tileExplosion;
+            if (freeTileExplosions.isEmpty()) {
+                tileExplosion = new TileExplosion(x, y, time);
+            } else {
+                tileExplosion = freeTileExplosions.remove(freeTileExplosions.size() - 1);
+                tileExplosion.reset(x, y, time);
+            }
+            explosions.add(tileExplosion);
+
+            final int pos = x + y * width;
+            final int until = getClearTime(time, TileExplosion.DURATION);
+            markLethal(pos, until);
+            if (blockedUntil[pos] < until) {
+                blockedUntil[pos] = until;
+            }
+            timeline.changed(pos);
             return true;
         }
 
@@ -246,13 +664,6 @@ public class Bombs {
 
         controller.players.killAt(x, y);
 
-        for (Bomb otherBomb : currentBombs) {
-            if (otherBomb.x == x && otherBomb.y == y) {
-                detonateBomb(otherBomb, currentBombs);
-                return true;
-            }
-        }
-
-        return false;
+        return bombAt[x + y * width] != null;
     }
 }
@@ -0,0 +1,446 @@
+package dynablaster;
+
+/**
+ * Gracze sterowani przez komputer. Decyzje podejmowane są na początku kroku
+ * symulacji, przed ruchem graczy, i wydawane przez {@link PlayerCommands}
+ * tak samo jak polecenia z klawiatury, więc trafiają do zapisu gry.
+ *
+ * Sterowanie nie ma własnego stanu: decyzja zależy tylko od stanu gry, więc
+ * gra cofnięta do zapisanego stanu przebiega tak samo. Gracz podejmuje
+ * decyzję gdy stoi na środku pola i wtedy:
+ * <ul>
+ * <li>jeśli jego pole zostanie objęte wybuchem, idzie na najbliższe pole,
+ * którego nie obejmie żaden przewidywany wybuch;</li>
+ * <li>jeśli wybuch jego bomby zniszczy blok albo trafi przeciwnika, a po
+ * postawieniu bomby zdąży dojść w bezpieczne miejsce, stawia ją i
+ * ucieka;</li>
+ * <li>w przeciwnym razie idzie na najbliższe bezpieczne pole obok bloku,
+ * bonusu albo przeciwnika.</li>
+ * </ul>
+ *
+ * Drogi wyznaczane są przeszukiwaniem wszerz ograniczonym do
+ * {@link #MAX_DEPTH} pól, na tablicach używanych ponownie w każdym kroku.
+ * Pole jest pomijane, jeśli gracz znalazłby się na nim w czasie trwania
+ * eksplozji albo wybuchu przewidywanego przez {@link BlastTimeline}.
+ */
+public class Bots {
+
+    /**
+     * Czas przejścia gracza o jedno pole w milisekundach.
+     */
+    private static final int TILE_TIME = Grid.TILE_SIZE / Grid.SCALE
+            * GameClock.TICK_DURATION;
+
+    /**
+     * Największa odległość w polach do której gracz szuka celu.
+     */
+    private static final int MAX_DEPTH = 12;
+
+    private static final int NEVER = BlastTimeline.NEVER;
+
+    /**
+     * Kierunki kroków w kolejności: góra, dół, lewo, prawo.
+     */
+    private static final Direction[] STEPS = {
+        Direction.UP, Direction.DOWN, Direction.LEFT, Direction.RIGHT
+    };
+    private static final int[] STEP_DX = {0, 0, -1, 1};
+    private static final int[] STEP_DY = {-1, 1, 0, 0};
+
+    /**
+     * Czy gracze danego koloru są sterowani przez komputer, indeksowane
+     * kolorem.
+     */
+    private final boolean[] controlled = new boolean[PlayerColor.values().length];
+    private int controlledCount = 0;
+
+    /**
+     * Stan przeszukiwania: kolejka pól, odległość i kierunek pierwszego
+     * kroku do odwiedzonych pól oraz pola objęte wybuchem rozważanej bomby.
+     */
+    private int[] queue = new int[0];
+    private int[] distance = new int[0];
+    private int[] firstStep = new int[0];
+    private int[] visitStamp = new int[0];
+    private int searchStamp = 0;
+    private int[] crossStamp = new int[0];
+    private int crossCount = 0;
+
+    /**
+     * Pola obok bloków oraz pola bez bloków osiągalne z pola ostatnio
+     * rozważanego gracza, razem z licznikiem zmian planszy z chwili ich
+     * wyznaczenia. Zależą tylko od planszy, więc są wyznaczane ponownie
+     * dopiero gdy plansza się zmieni.
+     */
+    private BitBoard nextToBlock;
+    private int nextToBlockChange = -1;
+    private BitBoard reachable;
+    private int reachableChange = -1;
+
+    private int width;
+    private final GameController controller;
+
+    public Bots(GameController controller) {
+        this.controller = controller;
+    }
+
+    /**
+     * Ustawia czy gracze danego koloru są sterowani przez komputer.
+     *
+     * @param color Kolor graczy.
+     * @param bot {@code true} aby graczami sterował komputer.
+     */
+    public void setBot(PlayerColor color, boolean bot) {
+        if (controlled[color.ordinal()] != bot) {
+            controlled[color.ordinal()] = bot;
+            controlledCount += bot ? 1 : -1;
+        }
+    }
+
+    public boolean isBot(PlayerColor color) {
+        return controlled[color.ordinal()];
+    }
+
+    /**
+     * Wydaje polecenia wszystkim żyjącym graczom sterowanym przez komputer.
+     * Wywoływane na początku kroku symulacji.
+     */
+    public void update() {
+        if (controlledCount == 0) {
+            return;
+        }
+
+        final Players players = controller.players;
+        final Grid grid = controller.grid;
+        if (width != grid.getWidth()
+                || queue.length != grid.getWidth() * grid.getHeight()) {
+            resize(grid.getWidth(), grid.getHeight());
+        }
+
+        for (int id = 0; id < players.getCount(); id++) {
+            final Player player = players.getPlayer(id);
+            if (players.dead[id] || !controlled[player.color.ordinal()]) {
+                continue;
+            }
+
+            final boolean centered = players.drawX[id] % Grid.TILE_SIZE == 0
+                    && players.drawY[id] % Grid.TILE_SIZE == 0;
+            if (centered || players.movementDirection[id] == Direction.NONE) {
+                decide(players, id, player.getX(), player.getY());
+            }
+        }
+    }
+
+    private void resize(int width, int height) {
+        final int size = width * height;
+        this.width = width;
+
+        queue = new int[size];
+        distance = new int[size];
+        firstStep = new int[size];
+        visitStamp = new int[size];
+        crossStamp = new int[size];
+        nextToBlock = controller.grid.createBitBoard();
+        reachable = controller.grid.createBitBoard();
+        nextToBlockChange = -1;
+        reachableChange = -1;
+    }
+
+    /**
+     * Podejmuje decyzję dla gracza stojącego na podanym polu.
+     */
+    private void decide(Players players, int id, int x, int y) {
+        final int now = (int) controller.clock.now();
+        final int start = x + y * width;
+        // Kolejność kierunków zależy od gracza i kroku, aby gracze stojący
+        // razem nie wybierali tych samych dróg.
+        final int rotation = (int) GameRandom.mix(controller.getSeed()
+                + controller.clock.getTick() * STEPS.length + id) & 3;
+        final int visited = search(start, now, rotation);
+
+        if (isLethal(start, now, NEVER)) {
+            final int escape = findSafeTile(visited, now, false, NEVER);
+            players.setMovementDirection(id, directionTo(escape, start));
+            return;
+        }
+
+        final boolean hasBomb = players.bombs[id] > 0
+                && controller.bombs.getBombAt(start) == null;
+        boolean includeStart = true;
+        if (hasBomb && markCross(id, x, y, players.bombRange[id])) {
+            final int fuse = Bomb.getDetonationTime(now) - now;
+            final int escape = findSafeTile(visited, now, true,
+                    fuse - TILE_TIME);
+            if (escape != -1) {
+                players.placeBomb(id);
+                players.setMovementDirection(id, directionTo(escape, start));
+                return;
+            }
+            // Z tego pola nie da się uciec przed własną bombą, więc gracz
+            // szuka innego.
+            includeStart = false;
+        }
+
+        final int target = findTarget(players, id, visited, now,
+                includeStart);
+        players.setMovementDirection(id, directionTo(target, start));
+    }
+
+    private Direction directionTo(int target, int start) {
+        if (target == -1 || target == start) {
+            return Direction.NONE;
+        }
+        return STEPS[firstStep[target]];
+    }
+
+    /**
+     * Przeszukuje wszerz pola do których gracz może bezpiecznie dojść.
+     *
+     * @param start Pole gracza.
+     * @param now Aktualny czas gry.
+     * @param rotation Numer kierunku od którego zaczyna się przeglądanie
+     * sąsiednich pól.
+     * @return Liczba odwiedzonych pól, zapisanych w {@link #queue} w
+     * kolejności rosnącej odległości.
+     */
+    private int search(int start, int now, int rotation) {
+        final Grid grid = controller.grid;
+        searchStamp += 1;
+
+        visitStamp[start] = searchStamp;
+        distance[start] = 0;
+        queue[0] = start;
+        int head = 0;
+        int tail = 1;
+
+        while (head < tail) {
+            final int pos = queue[head++];
+            final int depth = distance[pos];
+            if (depth == MAX_DEPTH) {
+                continue;
+            }
+
+            final int x = pos % width;
+            final int y = pos / width;
+            final int arrival = now + (depth + 1) * TILE_TIME;
+            for (int i = 0; i < STEPS.length; i++) {
+                final int step = (i + rotation) & 3;
+                final int nx = x + STEP_DX[step];
+                final int ny = y + STEP_DY[step];
+                final int next = nx + ny * width;
+                if (!grid.canMoveTo(nx, ny) || visitStamp[next] == searchStamp) {
+                    continue;
+                }
+                // Gracz jest na polu od połowy drogi do niego do połowy
+                // drogi do następnego.
+                if (isLethal(next, arrival - TILE_TIME / 2,
+                        arrival + TILE_TIME / 2)) {
+                    continue;
+                }
+
+                visitStamp[next] = searchStamp;
+                distance[next] = depth + 1;
+                firstStep[next] = depth == 0 ? step : firstStep[pos];
+                queue[tail++] = next;
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Zwraca najbliższe odwiedzone pole, na którym gracz może pozostać.
+     *
+     * @param outsideCross Czy pole musi być poza zasięgiem rozważanej bomby.
+     * @param maxTime Czas w jakim gracz musi dojść do pola.
+     * @return Pole albo -1.
+     */
+    private int findSafeTile(int visited, int now, boolean outsideCross,
+            int maxTime) {
+        for (int i = 0; i < visited; i++) {
+            final int pos = queue[i];
+            final int time = distance[pos] * TILE_TIME;
+            if (time > maxTime) {
+                return -1;
+            }
+            if (outsideCross && crossStamp[pos] == crossCount) {
+                continue;
+            }
+            if (!isLethal(pos, now + time - TILE_TIME / 2, NEVER)) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Zwraca najbliższe bezpieczne pole obok bloku, bonusu albo przeciwnika.
+     * Jeśli takiego pola nie ma, zwraca bezpieczne pole najbliżej
+     * najbliższego przeciwnika, w pierwszej kolejności takiego do którego
+     * da się dojść omijając bloki.
+     *
+     * @param includeStart Czy pole gracza może być celem.
+     * @return Pole albo -1.
+     */
+    private int findTarget(Players players, int id, int visited, int now,
+            boolean includeStart) {
+        final Grid grid = controller.grid;
+        if (nextToBlockChange != grid.getChangeCount()) {
+            grid.getTilesNextToDestructible(nextToBlock);
+            nextToBlockChange = grid.getChangeCount();
+        }
+        for (int i = includeStart ? 0 : 1; i < visited; i++) {
+            final int pos = queue[i];
+            final int x = pos % width;
+            final int y = pos / width;
+            if (!isInteresting(grid, players, id, x, y)) {
+                continue;
+            }
+            if (!isLethal(pos, now + distance[pos] * TILE_TIME - TILE_TIME / 2,
+                    NEVER)) {
+                return pos;
+            }
+        }
+
+        // Pole gracza jest pierwsze w kolejce.
+        final int start = queue[0];
+        if (reachableChange != grid.getChangeCount()
+                || !reachable.get(start)) {
+            grid.getReachableTiles(start % width, start / width, reachable);
+            reachableChange = grid.getChangeCount();
+        }
+        int opponent = findNearestOpponent(players, id, true);
+        if (opponent == -1) {
+            opponent = findNearestOpponent(players, id, false);
+        }
+        if (opponent == -1) {
+            return -1;
+        }
+        final int ox = Player.toTile(players.drawX[opponent]);
+        final int oy = Player.toTile(players.drawY[opponent]);
+
+        int best = -1;
+        int bestDistance = NEVER;
+        for (int i = 0; i < visited; i++) {
+            final int pos = queue[i];
+            final int d = Math.abs(pos % width - ox) + Math.abs(pos / width - oy);
+            if (d < bestDistance && !isLethal(pos,
+                    now + distance[pos] * TILE_TIME - TILE_TIME / 2, NEVER)) {
+                best = pos;
+                bestDistance = d;
+            }
+        }
+        return best;
+    }
+
+    private boolean isInteresting(Grid grid, Players players, int id,
+            int x, int y) {
+        final Tile tile = grid.getTile(x, y);
+        if (tile == Tile.POWERUP_BOMB || tile == Tile.POWERUP_RANGE) {
+            return true;
+        }
+        if (nextToBlock.get(x + y * width) || hasOpponent(players, id, x, y)) {
+            return true;
+        }
+        for (int step = 0; step < STEPS.length; step++) {
+            final int nx = x + STEP_DX[step];
+            final int ny = y + STEP_DY[step];
+            if (hasOpponent(players, id, nx, ny)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasOpponent(Players players, int id, int x, int y) {
+        for (int other = players.firstPlayerAt(x, y); other != -1;
+                other = players.nextPlayerOnTile(other)) {
+            if (other != id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Zwraca najbliższego żyjącego przeciwnika.
+     *
+     * @param reachableOnly Czy pomijać przeciwników na polach spoza
+     * {@link #reachable}.
+     * @return Numer przeciwnika albo -1.
+     */
+    private int findNearestOpponent(Players players, int id,
+            boolean reachableOnly) {
+        final int x = players.drawX[id];
+        final int y = players.drawY[id];
+        int best = -1;
+        int bestDistance = NEVER;
+        for (int other = 0; other < players.getCount(); other++) {
+            if (other == id || players.dead[other]) {
+                continue;
+            }
+            if (reachableOnly && !reachable.get(
+                    Player.toTile(players.drawX[other])
+                    + Player.toTile(players.drawY[other]) * width)) {
+                continue;
+            }
+            final int d = Math.abs(players.drawX[other] - x)
+                    + Math.abs(players.drawY[other] - y);
+            if (d < bestDistance) {
+                best = other;
+                bestDistance = d;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Oznacza pola które obejmie wybuch bomby postawionej przez gracza na
+     * podanym polu.
+     *
+     * @return {@code true} jeśli wybuch zniszczy blok albo trafi przeciwnika.
+     */
+    private boolean markCross(int id, int x, int y, int range) {
+        final Grid grid = controller.grid;
+        final Players players = controller.players;
+        crossCount += 1;
+        crossStamp[x + y * width] = crossCount;
+
+        boolean useful = hasOpponent(players, id, x, y);
+        for (int arm = 0; arm < STEPS.length; arm++) {
+            for (int step = 1; step <= range; step++) {
+                final int ax = x + STEP_DX[arm] * step;
+                final int ay = y + STEP_DY[arm] * step;
+                final Tile tile = grid.getTile(ax, ay);
+                if (tile == Tile.INDESTRUCTIBLE) {
+                    break;
+                }
+                final int pos = ax + ay * width;
+                crossStamp[pos] = crossCount;
+                if (tile == Tile.DESTRUCTIBLE) {
+                    useful = true;
+                    break;
+                }
+                if (hasOpponent(players, id, ax, ay)) {
+                    useful = true;
+                }
+                if (controller.bombs.getBombAt(pos) != null) {
+                    break;
+                }
+            }
+        }
+        return useful;
+    }
+
+    /**
+     * Sprawdza czy gracz przebywający na polu w podanym przedziale czasu
+     * zginie w trwającej eksplozji albo w przewidywanym wybuchu.
+     */
+    private boolean isLethal(int pos, int from, int to) {
+        final Bombs bombs = controller.bombs;
+        if (bombs.getLethalUntil(pos) > from) {
+            return true;
+        }
+        final BlastTimeline timeline = bombs.getTimeline();
+        return timeline.getBlastStart(pos) < to && timeline.getBlastEnd(pos) > from;
+    }
+}
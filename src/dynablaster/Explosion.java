@@ -1,18 +1,17 @@
 package dynablaster;
 
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.image.ImageObserver;
 
 public class Explosion implements IExplosion {
     
     public static final int DURATION = 400;
     
-    private final int maxRange;
+    int maxRange;
 
-    public final int x;
-    public final int y;
-    public final long when;
+    public int x;
+    public int y;
+    public long when;
 
     public int rangeUp = 0;
     public int rangeDown = 0;
@@ -20,70 +19,66 @@ public class Explosion implements IExplosion {
     public int rangeRight = 0;
 
     public Explosion(int x, int y, int maxRange, long placementTime) {
+        reset(x, y, maxRange, placementTime);
+    }
+
+    /**
+     * Przywraca eksplozję do stanu początkowego aby można było użyć jej
+     * ponownie.
+     */
+    final void reset(int x, int y, int maxRange, long placementTime) {
         this.y = y;
         this.x = x;
         this.maxRange = maxRange;
         this.when = placementTime;
+
+        rangeUp = 0;
+        rangeDown = 0;
+        rangeLeft = 0;
+        rangeRight = 0;
     }
     
     @Override
-    public boolean hasTimedOut() {
-        return System.currentTimeMillis() - when >= DURATION;
+    public boolean hasTimedOut(long now) {
+        return now - when >= DURATION;
     }
     
     @Override
     public boolean isInRange(int x, int y) {
-        if (this.x != x && this.y != y) {
-            return false;
-        }
-        
-        if (this.x == x && this.y == y) {
-            return true;
-        }
-        
-        for (int i = 1; i <= rangeUp; i++) {
-            if (this.x == x && this.y - i == y) {
-                return true;
-            }
-        }
-        for (int i = 1; i <= rangeDown; i++) {
-            if (this.x == x && this.y + i == y) {
-                return true;
-            }
+        if (this.y == y) {
+            final int dx = x - this.x;
+            return dx >= -rangeLeft && dx <= rangeRight;
         }
-        for (int i = 1; i <= rangeLeft; i++) {
-            if (this.x - i == x && this.y == y) {
-                return true;
-            }
-        }
-        for (int i = 1; i <= rangeRight; i++) {
-            if (this.x + i == x && this.y == y) {
-                return true;
-            }
+
+        if (this.x == x) {
+            final int dy = y - this.y;
+            return dy >= -rangeUp && dy <= rangeDown;
         }
-        
+
         return false;
     }
 
     @Override
-    public void draw(Graphics2D g, ImageObserver observer, Image image) {
-        drawPart(g, observer, image, Direction.NONE, false, 0, 0);
+    public void draw(Graphics2D g, ImageObserver observer, long now) {
+        int frame = (int) (((now - when) * 4) / DURATION);
+
+        drawPart(g, observer, frame, Direction.NONE, false, 0, 0);
 
         for (int i = 1; i <= rangeUp; i++) {
-            drawPart(g, observer, image, Direction.UP, i == maxRange, 0, -i);
+            drawPart(g, observer, frame, Direction.UP, i == maxRange, 0, -i);
         }
         for (int i = 1; i <= rangeDown; i++) {
-            drawPart(g, observer, image, Direction.DOWN, i == maxRange, 0, i);
+            drawPart(g, observer, frame, Direction.DOWN, i == maxRange, 0, i);
         }
         for (int i = 1; i <= rangeLeft; i++) {
-            drawPart(g, observer, image, Direction.LEFT, i == maxRange, -i, 0);
+            drawPart(g, observer, frame, Direction.LEFT, i == maxRange, -i, 0);
         }
         for (int i = 1; i <= rangeRight; i++) {
-            drawPart(g, observer, image, Direction.RIGHT, i == maxRange, i, 0);
+            drawPart(g, observer, frame, Direction.RIGHT, i == maxRange, i, 0);
         }
     }
 
-    private void drawPart(Graphics2D g, ImageObserver observer, Image image,
+    private void drawPart(Graphics2D g, ImageObserver observer, int frame,
             Direction dir, boolean isEnd, int x2, int y2) {
         int offset = 0;
         if (!isEnd && dir != Direction.NONE) {
@@ -114,30 +109,11 @@ public class Explosion implements IExplosion {
             }
         }
         
-        long life = (System.currentTimeMillis() - when);
-        int frame = (int) ((life * 4) / DURATION);
         offset += frame;
         
-        int targetX = (x + x2) * Grid.TILE_SIZE;
-        int targetY = (y + y2) * Grid.TILE_SIZE;
-        int eWidth = 16;
-        int eHeight = 16;
-
-        int offsetX = offset % 20;
-        int offsetY = offset / 20;
-
-        int sourceX = offsetX * eWidth;
-        int sourceY = offsetY * eHeight;
-
-        g.drawImage(image,
-                targetX,
-                targetY,
-                targetX + eWidth * Grid.SCALE,
-                targetY + eHeight * Grid.SCALE,
-                sourceX,
-                sourceY,
-                sourceX + eWidth,
-                sourceY + eHeight,
+        g.drawImage(Sprites.EXPLOSION[offset],
+                (x + x2) * Grid.TILE_SIZE,
+                (y + y2) * Grid.TILE_SIZE,
                 observer);
     }
 }
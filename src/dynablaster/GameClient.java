@@ -0,0 +1,306 @@
+package dynablaster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Klient {@link GameServer}. Nie blokuje: wiadomości są wysyłane i odbierane
+ * w {@link #poll()}, które należy wywoływać regularnie, np. co krok gry.
+ * Jeśli ustawiono grę przez {@link #setGame(GameController)}, każdy
+ * otrzymany stan gry jest do niej przywracany, więc można ją rysować jak
+ * lokalną grę.
+ *
+ * Stany gry przychodzą jako różnice względem stanów wcześniej potwierdzonych
+ * przez klienta, więc klient pamięta ostatnie odtworzone stany i potwierdza
+ * każdy z nich.
+ */
+public class GameClient implements PlayerCommands, Closeable {
+
+    private final SocketChannel channel;
+    private ByteBuffer in = ByteBuffer.allocate(4096);
+    private final ByteBuffer out = ByteBuffer.allocate(1024);
+
+    private GameController game;
+
+    private int playerId = -1;
+    private int playerCount = 0;
+    private long seed;
+    private long tick = -1;
+    private int result = -1;
+    private long states = 0;
+    private long stateBytes = 0;
+
+    private byte generation;
+    private boolean spectating = false;
+    private final NetState[] history = new NetState[ServerProtocol.STATE_HISTORY];
+    private NetState decoded = new NetState();
+    private final BitReader bits = new BitReader();
+    private ByteBuffer restored = ByteBuffer.allocate(1024);
+
+    private GameClient(SocketChannel channel) {
+        this.channel = channel;
+        for (int i = 0; i < history.length; i++) {
+            history[i] = new NetState();
+        }
+    }
+
+    /**
+     * Łączy się z serwerem.
+     *
+     * @param address Adres serwera.
+     * @return Klient.
+     * @throws IOException Gdy nie można połączyć się z serwerem.
+     */
+    public static GameClient connect(InetSocketAddress address)
+            throws IOException {
+        final SocketChannel channel = SocketChannel.open(address);
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        return new GameClient(channel);
+    }
+
+    /**
+     * @param game Gra do której przywracany jest stan otrzymany od serwera
+     * albo {@code null}.
+     */
+    public void setGame(GameController game) {
+        this.game = game;
+    }
+
+    /**
+     * Zgłasza dołączenie do kolejnej gry. Serwer rozpocznie ją gdy zbierze
+     * się wystarczająco wielu graczy.
+     */
+    public void join() {
+        playerId = -1;
+        result = -1;
+        final int start = ServerProtocol.begin(out, ServerProtocol.JOIN);
+        ServerProtocol.end(out, start);
+    }
+
+    /**
+     * Zgłasza oglądanie gier pokoju. Klient otrzymuje stany gry jak gracz,
+     * ale nie może wysyłać poleceń ani dołączać do gier.
+     *
+     * @param room Numer pokoju serwera.
+     */
+    public void spectate(int room) {
+        spectating = true;
+        playerId = -1;
+        result = -1;
+        final int start = ServerProtocol.begin(out, ServerProtocol.SPECTATE);
+        out.putInt(room);
+        ServerProtocol.end(out, start);
+    }
+
+    /**
+     * Wysyła polecenie ruchu gracza klienta. Identyfikator gracza jest
+     * pomijany, bo klient steruje tylko swoim graczem.
+     */
+    @Override
+    public void setMovementDirection(int id, Direction direction) {
+        command(direction.ordinal());
+    }
+
+    /**
+     * Wysyła polecenie postawienia bomby przez gracza klienta.
+     * Identyfikator gracza jest pomijany.
+     */
+    @Override
+    public void placeBomb(int id) {
+        command(Replay.BOMB);
+    }
+
+    private void command(int code) {
+        if (playerId == -1 || out.remaining() < ServerProtocol.HEADER_SIZE + 1) {
+            return;
+        }
+        final int start = ServerProtocol.begin(out, ServerProtocol.COMMAND);
+        out.put((byte) code);
+        ServerProtocol.end(out, start);
+    }
+
+    /**
+     * Wysyła oczekujące polecenia i przetwarza otrzymane wiadomości.
+     *
+     * @return Liczba otrzymanych stanów gry.
+     * @throws IOException Gdy połączenie zostało zerwane.
+     */
+    public int poll() throws IOException {
+        if (out.position() > 0) {
+            out.flip();
+            channel.write(out);
+            out.compact();
+        }
+
+        int received = 0;
+        while (true) {
+            if (!in.hasRemaining()) {
+                final ByteBuffer larger = ByteBuffer.allocate(
+                        Math.min(in.capacity() * 2, ServerProtocol.MAX_MESSAGE_SIZE));
+                in.flip();
+                in = larger.put(in);
+            }
+            final int read = channel.read(in);
+            if (read < 0) {
+                throw new IOException("Connection closed");
+            }
+
+            in.flip();
+            int length;
+            while ((length = ServerProtocol.available(in)) > 0) {
+                final int start = in.position();
+                final int limit = in.limit();
+                in.limit(start + length);
+                if (handle(in.get(start + 2), start + ServerProtocol.HEADER_SIZE)) {
+                    received += 1;
+                }
+                in.limit(limit);
+                in.position(start + length);
+            }
+            in.compact();
+
+            if (read == 0) {
+                return received;
+            }
+        }
+    }
+
+    /**
+     * Przetwarza wiadomość kończącą się na limicie bufora.
+     *
+     * @return {@code true} jeśli otrzymano stan gry.
+     */
+    private boolean handle(int type, int offset) throws IOException {
+        switch (type) {
+            case ServerProtocol.START:
+                playerId = in.get(offset);
+                playerCount = in.get(offset + 1);
+                seed = in.getLong(offset + 4);
+                generation = in.get(offset + 12);
+                tick = 0;
+                for (NetState state : history) {
+                    state.clear();
+                }
+                return false;
+            case ServerProtocol.STATE:
+                stateBytes += in.limit() - offset + ServerProtocol.HEADER_SIZE;
+                return decodeState(offset);
+            case ServerProtocol.END:
+                result = in.get(offset);
+                playerId = -1;
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private boolean decodeState(int offset) throws IOException {
+        in.position(offset);
+        final long baseTick = Varint.get(in);
+        NetState base = null;
+        if (baseTick != 0) {
+            base = history[(int) (baseTick % history.length)];
+            if (base.tick != baseTick) {
+                // Stan bazowy nie jest już pamiętany. Serwer wyśle pełny
+                // stan gdy potwierdzenie będzie zbyt stare.
+                return false;
+            }
+        }
+
+        bits.begin(in);
+        try {
+            StateDelta.decode(base, bits, decoded);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed state", e);
+        }
+        final int slot = (int) (decoded.tick % history.length);
+        final NetState state = decoded;
+        decoded = history[slot];
+        history[slot] = state;
+        tick = state.tick;
+
+        if (!spectating && out.remaining() >= ServerProtocol.HEADER_SIZE + 5) {
+            final int start = ServerProtocol.begin(out, ServerProtocol.ACK);
+            out.put(generation);
+            out.putInt((int) tick);
+            ServerProtocol.end(out, start);
+        }
+
+        if (game != null) {
+            final int size = state.getSize();
+            if (size > restored.capacity()) {
+                restored = ByteBuffer.allocate(Math.max(size, restored.capacity() * 2));
+            }
+            restored.clear();
+            state.write(restored);
+            restored.flip();
+            game.restoreState(restored);
+        }
+        states += 1;
+        return true;
+    }
+
+    /**
+     * Zwraca identyfikator gracza klienta w trwającej grze.
+     *
+     * @return Identyfikator albo {@code -1} jeśli klient nie bierze udziału
+     * w grze.
+     */
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Zwraca numer kroku ostatniego otrzymanego stanu gry.
+     *
+     * @return Numer kroku albo {@code -1}.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Zwraca wynik ostatniej zakończonej gry.
+     *
+     * @return Wynik jak w {@link Replay#resultOf(GameController)} albo
+     * {@code -1} jeśli gra jeszcze się nie zakończyła.
+     */
+    public int getResult() {
+        return result;
+    }
+
+    /**
+     * Zwraca liczbę wszystkich otrzymanych stanów gry.
+     *
+     * @return Liczba stanów.
+     */
+    public long getStates() {
+        return states;
+    }
+
+    /**
+     * Zwraca łączny rozmiar wszystkich otrzymanych wiadomości ze stanem gry.
+     *
+     * @return Liczba bajtów.
+     */
+    public long getStateBytes() {
+        return stateBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,61 @@
+package dynablaster;
+
+/**
+ * Zegar symulacji. Czas gry płynie w stałych krokach (tickach) niezależnie od
+ * czasu rzeczywistego, dzięki czemu rozgrywka może być symulowana szybciej niż
+ * w czasie rzeczywistym.
+ */
+public class GameClock {
+
+    /**
+     * Czas (w milisekundach) jaki upływa w grze w trakcie jednego kroku.
+     */
+    public static final int TICK_DURATION = 17;
+
+    /**
+     * Numer aktualnego kroku symulacji.
+     */
+    private long tick = 0;
+
+    /**
+     * Zwraca numer aktualnego kroku symulacji.
+     *
+     * @return Numer kroku.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Zwraca aktualny czas gry w milisekundach.
+     *
+     * @return Czas jaki upłynął od rozpoczęcia gry.
+     */
+    public long now() {
+        return tick * TICK_DURATION;
+    }
+
+    /**
+     * Przesuwa zegar o jeden krok.
+     */
+    public void advance() {
+        tick += 1;
+    }
+
+    /**
+     * Ustawia numer aktualnego kroku, np. przy przywracaniu zapisanego stanu
+     * gry.
+     *
+     * @param tick Numer kroku.
+     */
+    public void setTick(long tick) {
+        this.tick = tick;
+    }
+
+    /**
+     * Cofa zegar do początku gry.
+     */
+    public void reset() {
+        tick = 0;
+    }
+}
@@ -1,63 +1,503 @@
 package dynablaster;
 
+import java.awt.Component;
 import java.awt.Graphics2D;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
 import java.awt.image.ImageObserver;
-import javax.swing.JPanel;
+import java.nio.ByteBuffer;
 
+/**
+ * Stan gry może być odczytywany i zmieniany z kilku wątków: wątku pętli gry i
+ * wątku interfejsu. Dostęp do stanu gry odbywa się więc zawsze przy
+ * zablokowanym monitorze tego obiektu. Wyjątkiem są zdarzenia klawiatury,
+ * które trafiają do kolejki {@link #input} bez blokowania i są przetwarzane na
+ * początku kroku symulacji.
+ */
 public class GameController {
 
+    /**
+     * Pojemność kolejki zdarzeń klawiatury.
+     */
+    private static final int INPUT_CAPACITY = 256;
+
+    /**
+     * Źródło poleceń dla graczy spoza tej gry, np. od graczy sieciowych.
+     * Ponieważ źródło może cofać grę do wcześniejszego stanu i powtarzać
+     * kroki, zakończenie gry jest zgłaszane odbiorcy zdarzeń dopiero po
+     * wywołaniu {@link GameController#confirmGameEnd()}.
+     */
+    public interface CommandSource {
+
+        /**
+         * Wywoływane po rozpoczęciu każdej nowej gry.
+         *
+         * @param game Gra.
+         */
+        void gameStarted(GameController game);
+
+        /**
+         * Wydaje graczom polecenia na początku kroku, po poleceniach z
+         * klawiatury.
+         *
+         * @param players Gracze.
+         * @param tick Numer wykonywanego kroku.
+         */
+        void apply(Players players, long tick);
+
+        /**
+         * Wywoływane gdy gracz sterowany przez komputer ({@link Bots}) wyda
+         * polecenie w trakcie kroku. Takie polecenia nie pochodzą ze źródła,
+         * ale należą do zapisu gry.
+         *
+         * @param tick Numer wykonywanego kroku.
+         * @param command Polecenie w postaci (id &lt;&lt; 3 | kod) jak w
+         * {@link Replay}.
+         */
+        void botCommand(long tick, int command);
+    }
+
     private boolean gameOver = false;
-    private final MainFrame frame;
+    private Player winner = null;
+    private long seed;
+    private final GameListener listener;
 
+    /**
+     * Zapis aktualnej gry albo {@code null} jeśli gra nie jest zapisywana.
+     */
+    private ReplayRecorder recorder;
+
+    /**
+     * Odtwarzany zapis gry albo {@code null}. W trakcie odtwarzania zdarzenia
+     * klawiatury są pomijane.
+     */
+    private Replay.Playback playback;
+
+    /**
+     * Źródło poleceń graczy albo {@code null}. W przeciwieństwie do
+     * odtwarzanego zapisu pozostaje ustawione w kolejnych grach.
+     */
+    private CommandSource commandSource;
+
+    /**
+     * Czy wykonywany jest krok symulacji. Polecenia wydane graczom w trakcie
+     * kroku i pomiędzy krokami są zapisywane jako wydane w różnych chwilach.
+     */
+    private boolean inTick = false;
+
+    /**
+     * Czy polecenia wydają gracze sterowani przez komputer.
+     */
+    private boolean botsRunning = false;
+
+    public final GameClock clock;
+    public final GameRandom random;
     public final Grid grid;
     public final Bombs bombs;
     public final Players players;
+    public final Bots bots;
+    public final Timings timings = new Timings();
+    public final InputRing input = new InputRing(INPUT_CAPACITY);
+
+    /**
+     * Tworzy grę bez interfejsu graficznego.
+     */
+    public GameController() {
+        this(GameListener.NONE);
+    }
+
+    public GameController(GameListener listener) {
+        this(listener, new GameClock());
+    }
+
+    public GameController(GameListener listener, GameClock clock) {
+        this.listener = listener;
+        this.clock = clock;
+
+        seed = System.nanoTime();
+        random = new GameRandom(seed);
 
-    public GameController(MainFrame frame) {
-        this.frame = frame;
         grid = new Grid(this);
         bombs = new Bombs(this);
         players = new Players(this);
+        bots = new Bots(this);
     }
 
-    public final void newGame() {
-        grid.newGame();
+    public final synchronized void newGame() {
+        newGame(grid.getWidth(), grid.getHeight());
+    }
+
+    /**
+     * Rozpoczyna nową grę na planszy o podanym rozmiarze.
+     *
+     * @param width Szerokość planszy. Musi być nieparzysta.
+     * @param height Wysokość planszy. Musi być nieparzysta.
+     */
+    public final synchronized void newGame(int width, int height) {
+        newGame(width, height, random.nextLong());
+    }
+
+    /**
+     * Rozpoczyna nową grę na planszy o podanym rozmiarze. Gry rozpoczęte z
+     * tym samym ziarnem i sterowane w ten sam sposób przebiegają identycznie.
+     *
+     * @param width Szerokość planszy. Musi być nieparzysta.
+     * @param height Wysokość planszy. Musi być nieparzysta.
+     * @param seed Ziarno generatora liczb losowych gry.
+     */
+    public final synchronized void newGame(int width, int height,
+            long seed) {
+        this.seed = seed;
+        random.setSeed(seed);
+
+        clock.reset();
+        input.clear();
+        grid.newGame(width, height);
         bombs.newGame();
         players.resetPlayers();
 
         gameOver = false;
-        frame.showGamePanel();
+        winner = null;
+        playback = null;
+        if (recorder != null) {
+            recorder.start(this);
+        }
+        if (commandSource != null) {
+            commandSource.gameStarted(this);
+        }
+        listener.gameStarted();
+    }
+
+    /**
+     * Rozpoczyna odtwarzanie zapisu gry. Gra przebiega tak jak zapisana,
+     * a zdarzenia klawiatury są pomijane do rozpoczęcia nowej gry.
+     *
+     * @param replay Zapis gry.
+     */
+    public synchronized void play(Replay replay) {
+        for (PlayerColor color : PlayerColor.values()) {
+            players.setPlayerEnabled(color, replay.isPlayerEnabled(color));
+        }
+        newGame(replay.width, replay.height, replay.seed);
+        playback = new Replay.Playback(replay);
+    }
+
+    /**
+     * Zwraca czy odtwarzany jest zapis gry.
+     *
+     * @return {@code true} w trakcie odtwarzania zapisu gry.
+     */
+    public synchronized boolean isReplaying() {
+        return playback != null;
+    }
+
+    /**
+     * Ustawia źródło poleceń graczy, np. sesję gry sieciowej. Polecenia
+     * wydawane przez źródło nie są zapisywane, więc źródło samo powinno
+     * przekazać je do {@link #getRecorder()} gdy są już ostateczne.
+     *
+     * @param source Źródło poleceń albo {@code null}.
+     */
+    public synchronized void setCommandSource(CommandSource source) {
+        this.commandSource = source;
+    }
+
+    /**
+     * Ustawia obiekt zapisujący kolejne gry. Zapis rozpoczyna się od
+     * następnej gry.
+     *
+     * @param recorder Obiekt zapisujący albo {@code null} aby nie zapisywać
+     * gier.
+     */
+    public synchronized void setRecorder(ReplayRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public synchronized ReplayRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Zapisuje zmianę kierunku ruchu gracza jeśli gra jest zapisywana. W grze
+     * ze źródłem poleceń zapisem zajmuje się źródło, któremu przekazywane są
+     * polecenia graczy sterowanych przez komputer.
+     */
+    void movementDirectionChanged(int id, Direction direction) {
+        if (commandSource != null) {
+            if (botsRunning) {
+                commandSource.botCommand(clock.getTick(),
+                        id << Replay.COMMAND_BITS | direction.ordinal());
+            }
+        } else if (recorder != null && playback == null) {
+            recorder.movementDirectionChanged(getCommandTime(), id, direction);
+        }
+    }
+
+    /**
+     * Zapisuje postawienie bomby przez gracza jeśli gra jest zapisywana.
+     */
+    void bombPlaced(int id) {
+        if (commandSource != null) {
+            if (botsRunning) {
+                commandSource.botCommand(clock.getTick(),
+                        id << Replay.COMMAND_BITS | Replay.BOMB);
+            }
+        } else if (recorder != null && playback == null) {
+            recorder.bombPlaced(getCommandTime(), id);
+        }
+    }
+
+    /**
+     * Zwraca aktualną chwilę gry w postaci opisanej w {@link Replay}.
+     */
+    private long getCommandTime() {
+        return clock.getTick() * 2 + (inTick ? 0 : 1);
+    }
+
+    /**
+     * Zwraca rozmiar w bajtach aktualnego stanu gry zapisywanego przez
+     * {@link #saveState(ByteBuffer)}.
+     *
+     * @return Rozmiar stanu.
+     */
+    public synchronized int getStateSize() {
+        return 29 + grid.getStateSize() + players.getStateSize()
+                + bombs.getStateSize();
     }
-    
+
+    /**
+     * Zapisuje pełny stan gry: zegar, generator liczb losowych, planszę,
+     * graczy, bomby i eksplozje. Zdarzenia klawiatury oczekujące w kolejce
+     * oraz zapis i odtwarzanie gry nie są częścią stanu.
+     *
+     * @param out Bufor do którego zapisać stan. Musi mieć co najmniej
+     * {@link #getStateSize()} wolnych bajtów.
+     */
+    public synchronized void saveState(ByteBuffer out) {
+        out.putLong(seed);
+        out.putLong(clock.getTick());
+        out.putLong(random.getState());
+        out.put((byte) (gameOver ? 1 : 0));
+        out.putInt(winner == null ? -1 : winner.id);
+
+        grid.saveState(out);
+        players.saveState(out);
+        bombs.saveState(out);
+    }
+
+    /**
+     * Przywraca stan gry zapisany przez {@link #saveState(ByteBuffer)}. Gra
+     * toczy się dalej tak samo jak gra z której zapisano stan, a odbiorca
+     * zdarzeń gry nie jest powiadamiany.
+     *
+     * @param in Bufor z którego odczytać stan.
+     */
+    public synchronized void restoreState(ByteBuffer in) {
+        seed = in.getLong();
+        clock.setTick(in.getLong());
+        random.setState(in.getLong());
+        gameOver = in.get() != 0;
+        final int winnerId = in.getInt();
+
+        grid.restoreState(in);
+        players.restoreState(in);
+        bombs.restoreState(in);
+
+        winner = winnerId == -1 ? null : players.getPlayer(winnerId);
+        inTick = false;
+    }
+
     public void selectPlayers() {
-        frame.showPlayerSelectionPanel();
+        listener.playerSelectionRequested();
     }
 
-    public void registerKeyListener(JPanel panel) {
-        panel.addKeyListener(KeyListenerWrapper.init(players, false));
+    /**
+     * Przekazuje zdarzenia klawiatury komponentu do kolejki {@link #input}.
+     * Zdarzenia muszą pochodzić z jednego wątku, np. wątku interfejsu.
+     *
+     * @param component Komponent.
+     */
+    public void registerKeyListener(Component component) {
+        component.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                input.offer(e.getWhen(), e.getKeyCode(), true);
+            }
+
+            @Override
+            public void keyReleased(KeyEvent e) {
+                input.offer(e.getWhen(), e.getKeyCode(), false);
+            }
+        });
     }
 
     public void announceWinner(Player player) {
         gameOver = true;
-        frame.showEndPanel(player);
+        winner = player;
+        if (commandSource == null) {
+            listener.gameEnded(player);
+        }
+    }
+
+    /**
+     * Zgłasza odbiorcy zdarzeń zakończenie gry sterowanej przez
+     * {@link CommandSource}, gdy jej wynik nie może się już zmienić.
+     */
+    public synchronized void confirmGameEnd() {
+        if (gameOver) {
+            listener.gameEnded(winner);
+        }
+    }
+
+    /**
+     * Zwraca ziarno generatora liczb losowych z jakim rozpoczęto aktualną grę.
+     *
+     * @return Ziarno gry.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Zwraca czy gra się zakończyła.
+     *
+     * @return {@code true} jeśli gra się zakończyła.
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Zwraca zwycięzcę zakończonej gry.
+     *
+     * @return Zwycięzca albo {@code null} jeśli gra trwa lub zakończyła się
+     * remisem.
+     */
+    public Player getWinner() {
+        return winner;
+    }
+
+    /**
+     * Wykonuje podaną liczbę kroków symulacji.
+     *
+     * @param ticks Liczba kroków do wykonania.
+     * @return Liczba faktycznie wykonanych kroków. Może być mniejsza od
+     * podanej jeśli gra zakończyła się wcześniej.
+     */
+    public synchronized int step(int ticks) {
+        for (int i = 0; i < ticks; i++) {
+            if (gameOver) {
+                return i;
+            }
+            update();
+        }
+        return ticks;
     }
 
-    public void update() {
+    /**
+     * Wykonuje jeden krok symulacji.
+     */
+    public synchronized void update() {
         if (gameOver) {
             return;
         }
 
+        if (playback != null) {
+            playback.apply(players, getCommandTime());
+        }
+
+        clock.advance();
+        inTick = true;
+        tick();
+        inTick = false;
+    }
+
+    private void tick() {
+        if (playback != null) {
+            input.clear();
+            playback.apply(players, getCommandTime());
+        } else if (!input.isEmpty()) {
+            input.drain(players, System.currentTimeMillis());
+        }
+        if (commandSource != null) {
+            commandSource.apply(players, clock.getTick());
+        }
+
+        // Polecenia graczy sterowanych przez komputer są częścią
+        // odtwarzanego zapisu.
+        final boolean botsEnabled = playback == null;
+
+        if (!timings.isEnabled()) {
+            if (botsEnabled) {
+                updateBots();
+            }
+            players.update();
+            players.checkWinner();
+            bombs.update();
+            return;
+        }
+
+        final long start = System.nanoTime();
+        if (botsEnabled) {
+            updateBots();
+        }
+        final long botsEnd = System.nanoTime();
         players.update();
+        final long playersEnd = System.nanoTime();
+        players.checkWinner();
+        final long winnerEnd = System.nanoTime();
         bombs.update();
+        final long end = System.nanoTime();
+
+        timings.record(Timings.Phase.TICK_BOTS, botsEnd - start);
+        timings.record(Timings.Phase.TICK_PLAYERS, playersEnd - botsEnd);
+        timings.record(Timings.Phase.TICK_WINNER, winnerEnd - playersEnd);
+        timings.record(Timings.Phase.TICK_BOMBS, end - winnerEnd);
+        timings.record(Timings.Phase.TICK, end - start);
+    }
+
+    private void updateBots() {
+        botsRunning = true;
+        bots.update();
+        botsRunning = false;
     }
 
     public void draw(Graphics2D g, ImageObserver observer) {
+        draw(g, observer, 1);
+    }
+
+    /**
+     * Rysuje grę w chwili pomiędzy dwoma krokami symulacji.
+     *
+     * @param g Obiekt na którym rysować.
+     * @param observer Obserwator wczytywania obrazów.
+     * @param alpha Część czasu kroku symulacji jaka upłynęła od ostatniego
+     * kroku, od 0 do 1.
+     */
+    public synchronized void draw(Graphics2D g, ImageObserver observer,
+            float alpha) {
         if (gameOver) {
             return;
         }
 
+        if (!timings.isEnabled()) {
+            grid.draw(g, observer);
+            bombs.draw(g, observer);
+            players.draw(g, observer, alpha);
+            return;
+        }
+
+        final long start = System.nanoTime();
         grid.draw(g, observer);
+        final long gridEnd = System.nanoTime();
         bombs.draw(g, observer);
-        players.draw(g, observer);
+        final long bombsEnd = System.nanoTime();
+        players.draw(g, observer, alpha);
+        final long end = System.nanoTime();
+
+        timings.record(Timings.Phase.DRAW_GRID, gridEnd - start);
+        timings.record(Timings.Phase.DRAW_BOMBS, bombsEnd - gridEnd);
+        timings.record(Timings.Phase.DRAW_PLAYERS, end - bombsEnd);
+        timings.record(Timings.Phase.FRAME, end - start);
     }
 }
@@ -0,0 +1,43 @@
+package dynablaster;
+
+/**
+ * Odbiorca zdarzeń zmieniających stan rozgrywki. Pozwala na uruchomienie gry
+ * zarówno z interfejsem graficznym jak i bez niego.
+ */
+public interface GameListener {
+
+    /**
+     * Odbiorca ignorujący wszystkie zdarzenia, np. dla symulacji bez
+     * interfejsu graficznego.
+     */
+    GameListener NONE = new GameListener() {
+        @Override
+        public void gameStarted() {
+        }
+
+        @Override
+        public void gameEnded(Player winner) {
+        }
+
+        @Override
+        public void playerSelectionRequested() {
+        }
+    };
+
+    /**
+     * Wywoływane po rozpoczęciu nowej gry.
+     */
+    void gameStarted();
+
+    /**
+     * Wywoływane po zakończeniu gry.
+     *
+     * @param winner Zwycięzca albo {@code null} w przypadku remisu.
+     */
+    void gameEnded(Player winner);
+
+    /**
+     * Wywoływane gdy gracz chce zmienić listę uczestników gry.
+     */
+    void playerSelectionRequested();
+}
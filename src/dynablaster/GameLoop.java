@@ -0,0 +1,256 @@
+package dynablaster;
+
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pętla gry działająca we własnym wątku. Symulacja wykonywana jest ze stałą
+ * częstotliwością, co {@link GameClock#TICK_DURATION} milisekund, niezależnie
+ * od tego jak często rysowana jest gra. Klatki rysowane są bezpośrednio na
+ * płótnie przy pomocy {@link BufferStrategy}, a pozycje graczy są
+ * interpolowane pomiędzy krokami symulacji.
+ */
+public class GameLoop implements Runnable {
+
+    private static final long TICK_NANOS = GameClock.TICK_DURATION * 1000000L;
+
+    /**
+     * Największa liczba kroków symulacji wykonywanych przed narysowaniem
+     * klatki. Jeśli gra nie nadąża z symulacją, pozostałe kroki są pomijane
+     * zamiast zatrzymywać rysowanie.
+     */
+    private static final int MAX_TICKS_PER_FRAME = 5;
+
+    /**
+     * Długość okna pomiarowego czasów wyświetlanych na ekranie.
+     */
+    private static final long HUD_WINDOW_NANOS = 500000000L;
+
+    private static final Font HUD_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color HUD_BACKGROUND = new Color(0, 0, 0, 160);
+
+    private final GameController controller;
+    private final Canvas canvas;
+
+    /**
+     * Najkrótszy czas pomiędzy klatkami albo 0 jeśli liczba klatek nie jest
+     * ograniczona.
+     */
+    private final long frameNanos;
+
+    /**
+     * Sesja gry sieciowej wykonująca kroki gry albo {@code null}.
+     */
+    private volatile RollbackSession session;
+
+    private BufferStrategy strategy;
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * Czy wyświetlać czasy poszczególnych etapów gry. Wiersze tekstu są
+     * tworzone raz na okno pomiarowe, a nie w każdej klatce.
+     */
+    private volatile boolean hudVisible = false;
+    private String[] hudLines = new String[0];
+    private long hudWindowEnd;
+
+    /**
+     * @param controller Gra.
+     * @param canvas Płótno na którym rysować grę.
+     * @param maxFps Największa liczba klatek na sekundę albo 0 aby rysować
+     * tak często jak to możliwe.
+     */
+    public GameLoop(GameController controller, Canvas canvas, int maxFps) {
+        this.controller = controller;
+        this.canvas = canvas;
+        this.frameNanos = maxFps > 0 ? 1000000000L / maxFps : 0;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+
+        running = true;
+        thread = new Thread(this, "Game loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        thread = null;
+    }
+
+    /**
+     * Ustawia sesję gry sieciowej, która wykonuje kroki gry zamiast
+     * {@link GameController#update()}.
+     *
+     * @param session Sesja albo {@code null}.
+     */
+    public void setSession(RollbackSession session) {
+        this.session = session;
+    }
+
+    /**
+     * Włącza lub wyłącza wyświetlanie czasów poszczególnych etapów gry. Pomiar
+     * czasu działa tylko gdy są one wyświetlane.
+     */
+    public void toggleHud() {
+        synchronized (controller) {
+            hudVisible = !hudVisible;
+            controller.timings.setEnabled(hudVisible);
+            controller.timings.clear();
+            hudLines = new String[]{"Pomiar..."};
+            hudWindowEnd = System.nanoTime() + HUD_WINDOW_NANOS;
+        }
+    }
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long lag = 0;
+        long nextFrame = previous;
+
+        while (running) {
+            final long now = System.nanoTime();
+            lag += now - previous;
+            previous = now;
+
+            for (int ticks = 0; lag >= TICK_NANOS
+                    && ticks < MAX_TICKS_PER_FRAME; ticks++) {
+                final RollbackSession current = session;
+                if (current != null) {
+                    current.update();
+                } else {
+                    controller.update();
+                }
+                lag -= TICK_NANOS;
+            }
+            if (lag >= TICK_NANOS) {
+                lag %= TICK_NANOS;
+            }
+
+            boolean rendered = false;
+            if (now >= nextFrame) {
+                rendered = render((float) lag / TICK_NANOS);
+                nextFrame = Math.max(nextFrame + frameNanos, now);
+            }
+
+            if (rendered && frameNanos == 0) {
+                Thread.yield();
+                continue;
+            }
+
+            // Czekaj do następnego kroku symulacji albo następnej klatki.
+            long wakeUp = now + TICK_NANOS - lag;
+            if (rendered) {
+                wakeUp = Math.min(wakeUp, nextFrame);
+            }
+            LockSupport.parkNanos(wakeUp - System.nanoTime());
+        }
+    }
+
+    /**
+     * Rysuje klatkę gry.
+     *
+     * @param alpha Część czasu kroku symulacji jaka upłynęła od ostatniego
+     * kroku.
+     * @return {@code false} jeśli płótno nie jest widoczne.
+     */
+    private boolean render(float alpha) {
+        if (!canvas.isShowing()) {
+            return false;
+        }
+
+        if (strategy == null) {
+            canvas.createBufferStrategy(2);
+            strategy = canvas.getBufferStrategy();
+        }
+
+        do {
+            do {
+                final Graphics2D g = (Graphics2D) strategy.getDrawGraphics();
+                try {
+                    g.setColor(canvas.getBackground());
+                    g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+                    controller.draw(g, canvas, alpha);
+                    if (hudVisible) {
+                        drawHud(g);
+                    }
+                } finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+
+            strategy.show();
+        } while (strategy.contentsLost());
+
+        Toolkit.getDefaultToolkit().sync();
+        return true;
+    }
+
+    private void drawHud(Graphics2D g) {
+        final String[] lines;
+        synchronized (controller) {
+            final long now = System.nanoTime();
+            if (now >= hudWindowEnd) {
+                controller.timings.rotate();
+                hudLines = createHudLines(controller.timings,
+                        now - hudWindowEnd + HUD_WINDOW_NANOS);
+                hudWindowEnd = now + HUD_WINDOW_NANOS;
+            }
+            lines = hudLines;
+        }
+
+        g.setFont(HUD_FONT);
+        final int lineHeight = g.getFontMetrics().getHeight();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, g.getFontMetrics().stringWidth(line));
+        }
+
+        g.setColor(HUD_BACKGROUND);
+        g.fillRect(0, 0, width + 8, lines.length * lineHeight + 8);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], 4, 4 + g.getFontMetrics().getAscent()
+                    + i * lineHeight);
+        }
+    }
+
+    private static String[] createHudLines(Timings timings, long windowNanos) {
+        final Timings.Phase[] phases = Timings.Phase.values();
+        int measured = 0;
+        for (Timings.Phase phase : phases) {
+            if (timings.getSamples(phase) > 0) {
+                measured += 1;
+            }
+        }
+        final String[] lines = new String[measured + 2];
+
+        final double seconds = windowNanos / 1e9;
+        lines[0] = String.format(Locale.ROOT, "%.0f fps  %.0f tps",
+                timings.getSamples(Timings.Phase.FRAME) / seconds,
+                timings.getSamples(Timings.Phase.TICK) / seconds);
+        lines[1] = String.format(Locale.ROOT, "%-13s %8s %8s %8s",
+                "us", "p50", "p99", "max");
+        int line = 2;
+        for (Timings.Phase phase : phases) {
+            if (timings.getSamples(phase) == 0) {
+                continue;
+            }
+            lines[line++] = String.format(Locale.ROOT, "%-13s %8.1f %8.1f %8.1f",
+                    phase.label, timings.getP50(phase) / 1e3,
+                    timings.getP99(phase) / 1e3, timings.getMax(phase) / 1e3);
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,69 @@
+package dynablaster;
+
+/**
+ * Generator liczb losowych używany przez pojedynczą grę (algorytm SplitMix64).
+ * Każda gra posiada własny generator, dzięki czemu wiele gier może być
+ * symulowanych równolegle, a przebieg gry zależy wyłącznie od jej ziarna.
+ */
+public class GameRandom {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private long state;
+
+    public GameRandom(long seed) {
+        state = seed;
+    }
+
+    /**
+     * Ustawia ziarno generatora.
+     *
+     * @param seed Nowe ziarno.
+     */
+    public void setSeed(long seed) {
+        state = seed;
+    }
+
+    /**
+     * Zwraca wewnętrzny stan generatora. Generator z przywróconym stanem
+     * zwraca dalej te same liczby.
+     *
+     * @return Stan generatora.
+     */
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix(state);
+    }
+
+    /**
+     * Zwraca losową liczbę z przedziału od 0 (włącznie) do {@code bound}
+     * (wyłącznie).
+     *
+     * @param bound Górna granica. Musi być dodatnia.
+     * @return Losowa liczba.
+     */
+    public int nextInt(int bound) {
+        return (int) ((nextLong() >>> 33) % bound);
+    }
+
+    /**
+     * Miesza bity podanej liczby. Pozwala na wyznaczenie niezależnych ziaren
+     * dla kolejnych gier na podstawie jednego ziarna.
+     *
+     * @param z Liczba do wymieszania.
+     * @return Wymieszana liczba.
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,350 @@
+package dynablaster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * Serwer gry bez interfejsu graficznego, który prowadzi wiele gier naraz.
+ * Klienci łączą się przez TCP, dołączają do gry i wysyłają polecenia dla
+ * swoich graczy, a serwer po każdym kroku wysyła im stan gry (format w
+ * {@link ServerProtocol}). Gra toczy się tylko na serwerze, więc klienci nie
+ * mogą wpłynąć na nią inaczej niż poleceniami.
+ *
+ * Połączenia i pokoje są rozdzielone pomiędzy kilka wątków, z których każdy
+ * obsługuje swoje połączenia przez jeden {@link java.nio.channels.Selector} i
+ * wykonuje kroki swoich gier. Gracze dołączający w jednym wątku trafiają do
+ * wspólnego pokoju, który rozpoczyna grę gdy się zapełni albo gdy po pewnym
+ * czasie jest w nim wystarczająco wielu graczy.
+ *
+ * Gry można oglądać: każdy pokój ma numer i strumień ramek
+ * ({@link SpectatorFeed}), które osobne wątki ({@link SpectatorHub}) wysyłają
+ * widzom tego pokoju.
+ */
+public class GameServer {
+
+    private final int port;
+    private final ServerShard[] shards;
+    private final Timings timings = new Timings();
+    private final ArrayList<SpectatorFeed> feeds = new ArrayList<>();
+
+    private int spectatorThreads = 1;
+    private SpectatorHub[] hubs;
+    private Thread[] hubThreads;
+
+    private int roomSize = PlayerColor.values().length;
+    private int minPlayers = 2;
+    private int startDelay = 5 * 60;
+    private long maxTicks = 60 * 60 * 3;
+    private int width = Grid.DEFAULT_WIDTH;
+    private int height = Grid.DEFAULT_HEIGHT;
+    private long seed = System.nanoTime();
+
+    private ServerSocketChannel acceptor;
+    private Thread[] threads;
+    private int nextShard = 0;
+
+    /**
+     * @param port Port na którym serwer przyjmuje połączenia albo 0 aby
+     * wybrać wolny port.
+     * @param threads Liczba wątków.
+     */
+    public GameServer(int port, int threads) {
+        this.port = port;
+        this.shards = new ServerShard[threads];
+        timings.setEnabled(true);
+    }
+
+    /**
+     * Ustawia liczbę graczy w pokoju oraz po ilu krokach oczekiwania gra
+     * rozpoczyna się w niepełnym pokoju. Musi być wywołane przed
+     * {@link #start()}.
+     *
+     * @param roomSize Liczba graczy pełnego pokoju, od 2 do 4.
+     * @param minPlayers Najmniejsza liczba graczy niepełnego pokoju.
+     * @param startDelay Liczba kroków oczekiwania.
+     */
+    public void setRoomSize(int roomSize, int minPlayers, int startDelay) {
+        if (roomSize < 2 || roomSize > PlayerColor.values().length
+                || minPlayers < 1 || minPlayers > roomSize) {
+            throw new IllegalArgumentException("Invalid room size: "
+                    + roomSize + ", " + minPlayers);
+        }
+        this.roomSize = roomSize;
+        this.minPlayers = minPlayers;
+        this.startDelay = startDelay;
+    }
+
+    /**
+     * @param maxTicks Liczba kroków po której gra jest przerywana.
+     */
+    public void setMaxTicks(long maxTicks) {
+        this.maxTicks = maxTicks;
+    }
+
+    /**
+     * Ustawia liczbę wątków wysyłających ramki widzom. Musi być wywołane
+     * przed {@link #start()}.
+     *
+     * @param threads Liczba wątków.
+     */
+    public void setSpectatorThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Invalid thread count: " + threads);
+        }
+        this.spectatorThreads = threads;
+    }
+
+    /**
+     * @param seed Ziarno z którego wyznaczane są ziarna gier.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Otwiera gniazdo serwera i uruchamia wątki.
+     *
+     * @throws IOException Gdy nie można otworzyć gniazda.
+     */
+    public synchronized void start() throws IOException {
+        acceptor = ServerSocketChannel.open();
+        acceptor.configureBlocking(false);
+        acceptor.bind(new InetSocketAddress(port), 1024);
+
+        hubs = new SpectatorHub[spectatorThreads];
+        hubThreads = new Thread[spectatorThreads];
+        for (int i = 0; i < hubs.length; i++) {
+            hubs[i] = new SpectatorHub();
+            hubThreads[i] = new Thread(hubs[i], "Spectators " + i);
+            hubThreads[i].start();
+        }
+
+        threads = new Thread[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new ServerShard(this, seed + i);
+        }
+        shards[0].registerAcceptor(acceptor);
+        for (int i = 0; i < shards.length; i++) {
+            threads[i] = new Thread(shards[i], "Server " + i);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Zatrzymuje serwer i zamyka wszystkie połączenia.
+     *
+     * @throws IOException Gdy nie można zamknąć gniazda serwera.
+     * @throws InterruptedException Gdy wątek został przerwany w trakcie
+     * oczekiwania na zakończenie wątków serwera.
+     */
+    public synchronized void stop() throws IOException, InterruptedException {
+        for (ServerShard shard : shards) {
+            shard.stop();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (SpectatorHub hub : hubs) {
+            hub.stop();
+        }
+        for (Thread thread : hubThreads) {
+            thread.join();
+        }
+        acceptor.close();
+    }
+
+    /**
+     * Przekazuje nowe połączenie kolejnemu wątkowi.
+     */
+    void assign(SocketChannel channel) {
+        final int shard;
+        synchronized (this) {
+            shard = nextShard;
+            nextShard = (nextShard + 1) % shards.length;
+        }
+        shards[shard].assign(channel);
+    }
+
+    /**
+     * Tworzy strumień ramek dla nowego pokoju. Pokoje są numerowane w
+     * kolejności utworzenia, a ich strumienie rozdzielane pomiędzy wątki
+     * widzów.
+     */
+    synchronized SpectatorFeed createFeed() {
+        final int id = feeds.size();
+        final SpectatorHub hub = hubs[id % hubs.length];
+        final SpectatorFeed feed = new SpectatorFeed(id, hub);
+        feeds.add(feed);
+        hub.addFeed(feed);
+        return feed;
+    }
+
+    /**
+     * Zwraca strumień pokoju o podanym numerze albo {@code null}.
+     */
+    synchronized SpectatorFeed getFeed(int room) {
+        return room >= 0 && room < feeds.size() ? feeds.get(room) : null;
+    }
+
+    void wakeSpectatorHubs() {
+        for (SpectatorHub hub : hubs) {
+            hub.wakeup();
+        }
+    }
+
+    /**
+     * Zwraca port na którym serwer przyjmuje połączenia.
+     *
+     * @return Port.
+     * @throws IOException Gdy nie można odczytać adresu gniazda.
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) acceptor.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Zwraca czasy kroków wszystkich wątków serwera: czas wykonania kroków
+     * wszystkich gier wątku i opóźnienie rozpoczęcia kroku względem
+     * planowanej chwili. Pomiary są dodawane co sekundę przy zablokowanym
+     * monitorze zwracanego obiektu.
+     *
+     * @return Czasy kroków.
+     */
+    public Timings getTimings() {
+        return timings;
+    }
+
+    public int getRunningRooms() {
+        int rooms = 0;
+        for (ServerShard shard : shards) {
+            rooms += shard.getRunningRooms();
+        }
+        return rooms;
+    }
+
+    public int getConnectionCount() {
+        int count = 0;
+        for (ServerShard shard : shards) {
+            count += shard.getConnectionCount();
+        }
+        return count;
+    }
+
+    /**
+     * Zwraca liczbę wiadomości pominiętych, bo klienci nie odbierali ich
+     * wystarczająco szybko.
+     *
+     * @return Liczba pominiętych wiadomości.
+     */
+    public long getDroppedMessages() {
+        long dropped = 0;
+        for (ServerShard shard : shards) {
+            dropped += shard.getDroppedMessages();
+        }
+        return dropped;
+    }
+
+    public int getSpectatorCount() {
+        int count = 0;
+        for (SpectatorHub hub : hubs) {
+            count += hub.getSpectatorCount();
+        }
+        return count;
+    }
+
+    /**
+     * Zwraca liczbę ramek pominiętych przez widzów, którzy nie odbierali
+     * ich wystarczająco szybko.
+     *
+     * @return Liczba ramek.
+     */
+    public long getSkippedFrames() {
+        long skipped = 0;
+        for (SpectatorHub hub : hubs) {
+            skipped += hub.getSkippedFrames();
+        }
+        return skipped;
+    }
+
+    int getRoomSize() {
+        return roomSize;
+    }
+
+    int getMinPlayers() {
+        return minPlayers;
+    }
+
+    int getStartDelay() {
+        return startDelay;
+    }
+
+    long getMaxTicks() {
+        return maxTicks;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Uruchamia serwer i co sekundę wypisuje liczbę gier i połączeń oraz
+     * czasy kroków. Jeśli ustawiona jest właściwość
+     * {@code dynablaster.timings}, czasy są zamiast tego zapisywane do
+     * podanego pliku.
+     *
+     * @param args Port oraz opcjonalnie liczba wątków.
+     * @throws Exception Gdy nie można uruchomić serwera.
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        final int port = args.length > 0 ? Integer.parseInt(args[0]) : 7000;
+        final int threads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+
+        final GameServer server = new GameServer(port, threads);
+        server.start();
+        System.out.printf("Serwer na porcie %d, %d wątków%n",
+                server.getPort(), threads);
+
+        final String timingsPath = System.getProperty("dynablaster.timings");
+        if (timingsPath != null) {
+            // Okna pomiarowe kończy zapisywanie do pliku.
+            new TimingsDump(server.getTimings(), timingsPath,
+                    Long.getLong("dynablaster.timings.period", 1000)).start();
+            return;
+        }
+
+        while (true) {
+            Thread.sleep(1000);
+            System.out.println(server.describe());
+        }
+    }
+
+    /**
+     * Zwraca opis aktualnego stanu serwera i czasów kroków z ostatniego
+     * okna pomiarowego. Rozpoczyna nowe okno pomiarowe.
+     */
+    String describe() {
+        synchronized (timings) {
+            timings.rotate();
+            return String.format(Locale.ROOT,
+                    "gry: %d, połączenia: %d, pominięte: %d, widzowie: %d (pominięte ramki: %d), krok p50/p99/max: %.0f/%.0f/%.0f us, opóźnienie p99/max: %.0f/%.0f us",
+                    getRunningRooms(), getConnectionCount(), getDroppedMessages(),
+                    getSpectatorCount(), getSkippedFrames(),
+                    timings.getP50(Timings.Phase.SERVER_TICK) / 1e3,
+                    timings.getP99(Timings.Phase.SERVER_TICK) / 1e3,
+                    timings.getMax(Timings.Phase.SERVER_TICK) / 1e3,
+                    timings.getP99(Timings.Phase.SERVER_LATENESS) / 1e3,
+                    timings.getMax(Timings.Phase.SERVER_LATENESS) / 1e3);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package dynablaster;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Zapisany stan gry, który może zostać przywrócony, np. aby cofnąć grę do
+ * wcześniejszego kroku. Bufor stanu jest używany ponownie przy kolejnych
+ * zapisach i powiększany tylko gdy stan gry się w nim nie mieści.
+ */
+public class GameSnapshot {
+
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+    private long tick = -1;
+
+    /**
+     * Zapisuje aktualny stan gry, zastępując poprzednio zapisany stan.
+     *
+     * @param game Gra.
+     */
+    public void capture(GameController game) {
+        synchronized (game) {
+            final int size = game.getStateSize();
+            if (size > buffer.capacity()) {
+                buffer = ByteBuffer.allocate(Math.max(size,
+                        buffer.capacity() * 2));
+            }
+
+            buffer.clear();
+            game.saveState(buffer);
+            buffer.flip();
+            tick = game.clock.getTick();
+        }
+    }
+
+    /**
+     * Przywraca zapisany stan gry. Ten sam stan może zostać przywrócony
+     * wielokrotnie.
+     *
+     * @param game Gra.
+     */
+    public void restore(GameController game) {
+        if (tick == -1) {
+            throw new IllegalStateException("Nothing captured");
+        }
+
+        buffer.rewind();
+        game.restoreState(buffer);
+    }
+
+    /**
+     * Zwraca numer kroku gry w którym zapisano stan.
+     *
+     * @return Numer kroku albo {@code -1} jeśli stan nie został zapisany.
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    /**
+     * Zwraca rozmiar zapisanego stanu w bajtach.
+     *
+     * @return Rozmiar stanu.
+     */
+    public int getSize() {
+        return buffer.limit();
+    }
+
+    /**
+     * Zwraca zapisany stan, np. aby zapisać go do pliku.
+     *
+     * @return Bufor tylko do odczytu obejmujący zapisany stan.
+     */
+    public ByteBuffer getBuffer() {
+        return buffer.asReadOnlyBuffer();
+    }
+}
@@ -3,63 +3,140 @@ package dynablaster;
 import java.awt.Dimension;
 import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.Toolkit;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
-import java.util.Random;
+import java.nio.ByteBuffer;
 
 public class Grid {
 
-    private static final int WIDTH = 13;
-    private static final int HEIGHT = 13;
-    private static final int TILES = WIDTH * HEIGHT;
-    private static final Random RANDOM = new Random();
+    public static final int DEFAULT_WIDTH = 13;
+    public static final int DEFAULT_HEIGHT = 13;
+
+    /**
+     * Najmniejszy rozmiar planszy na której zmieszczą się wszyscy gracze.
+     */
+    public static final int MIN_SIZE = 7;
 
     public static final int SCALE = 2;
     public static final int TILE_SIZE = 16 * SCALE;
-    public static final Dimension SIZE
-            = new Dimension(WIDTH * TILE_SIZE, HEIGHT * TILE_SIZE);
-
-    private final Tile tiles[] = new Tile[TILES];
-
-    private final Image indestructible;
-    private final Image grass;
-    private final Image grassShadow;
-    private final Image destructible;
-    private final Image powerupBombImage;
-    private final Image powerupRangeImage;
+    public static final Dimension SIZE = new Dimension(
+            DEFAULT_WIDTH * TILE_SIZE, DEFAULT_HEIGHT * TILE_SIZE);
+
+    /**
+     * Liczba pól w wierszu i kolumnie jednego fragmentu narysowanej planszy.
+     */
+    private static final int CHUNK_SIZE = 16;
+
+    private int width;
+    private int height;
+
+    /**
+     * Rodzaje pól planszy zapisane jako osobne zbiory bitów. Pola nie należące
+     * do żadnego ze zbiorów to trawa.
+     */
+    private BitBoard indestructibleTiles;
+    private BitBoard destructibleTiles;
+    private BitBoard powerupBombTiles;
+    private BitBoard powerupRangeTiles;
+
+    private BitBoard notFirstColumn;
+    private BitBoard notLastColumn;
+    private BitBoard passableScratch;
+    private BitBoard floodScratch;
+
+    /**
+     * Narysowana plansza podzielona na fragmenty po
+     * {@code CHUNK_SIZE x CHUNK_SIZE} pól. Fragmenty tworzone są dopiero gdy
+     * pojawią się w widocznym obszarze, więc duże plansze nie wymagają jednego
+     * ogromnego obrazu.
+     */
+    private BufferedImage[] chunks;
+    private int chunkColumns;
+    private int chunkRows;
+
+    /**
+     * Pola które zmieniły się od czasu ostatniego rysowania i muszą zostać
+     * ponownie narysowane we fragmentach.
+     */
+    private BitBoard dirtyTiles;
+    private boolean hasDirtyTiles;
+
+    /**
+     * Licznik zmian pól planszy. Pozwala ponownie używać wyników zapytań o
+     * całą planszę dopóki plansza się nie zmieni.
+     */
+    private int changeCount = 0;
 
     private final GameController controller;
 
     public Grid(GameController controller) {
         this.controller = controller;
 
-        final Toolkit toolkit = Toolkit.getDefaultToolkit();
-        indestructible = toolkit.getImage("res/indestructible.png");
-        grass = toolkit.getImage("res/grass.png");
-        grassShadow = toolkit.getImage("res/grass-shadow.png");
-        destructible = toolkit.getImage("res/destructible.png");
-        powerupBombImage = toolkit.getImage("res/powerup-bomb.png");
-        powerupRangeImage = toolkit.getImage("res/powerup-range.png");
-        
+        resize(DEFAULT_WIDTH, DEFAULT_HEIGHT);
         generateGrid();
     }
 
-    public void newGame() {
+    /**
+     * Rozpoczyna nową grę na planszy o podanym rozmiarze.
+     *
+     * @param width Szerokość planszy. Musi być nieparzysta.
+     * @param height Wysokość planszy. Musi być nieparzysta.
+     */
+    public void newGame(int width, int height) {
+        if (width < MIN_SIZE || height < MIN_SIZE
+                || width % 2 == 0 || height % 2 == 0) {
+            throw new IllegalArgumentException("Invalid grid size "
+                    + width + "x" + height);
+        }
+
+        if (width != this.width || height != this.height) {
+            resize(width, height);
+        }
         generateGrid();
     }
 
+    private void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        indestructibleTiles = new BitBoard(width, height);
+        destructibleTiles = new BitBoard(width, height);
+        powerupBombTiles = new BitBoard(width, height);
+        powerupRangeTiles = new BitBoard(width, height);
+
+        notFirstColumn = new BitBoard(width, height);
+        notLastColumn = new BitBoard(width, height);
+        passableScratch = new BitBoard(width, height);
+        floodScratch = new BitBoard(width, height);
+        dirtyTiles = new BitBoard(width, height);
+        changeCount += 1;
+
+        chunkColumns = (width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunkRows = (height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunks = new BufferedImage[chunkColumns * chunkRows];
+
+        notFirstColumn.fill();
+        notLastColumn.fill();
+        for (int y = 0; y < height; y++) {
+            notFirstColumn.clear(y * width);
+            notLastColumn.clear(width - 1 + y * width);
+        }
+    }
+
     private void generateGrid() {
-        Random random = new Random();
-        for (int x = 0; x < WIDTH; x++) {
-            for (int y = 0; y < WIDTH; y++) {
+        final GameRandom random = controller.random;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
                 Tile tile;
-                if (x == 0 || y == 0 || x == WIDTH - 1 || y == HEIGHT - 1) {
+                if (x == 0 || y == 0 || x == width - 1 || y == height - 1) {
                     // Ramka
                     tile = Tile.INDESTRUCTIBLE;
                 } else if (x % 2 == 0 && y % 2 == 0) {
                     // Wewnętrzne kolumny
                     tile = Tile.INDESTRUCTIBLE;
-                } else if (x > 1 && x < WIDTH - 2 && y > 1 && y < HEIGHT - 2
+                } else if (x > 1 && x < width - 2 && y > 1 && y < height - 2
                         && (x % 2 == 0 || y % 2 == 0)
                         && random.nextInt(6) == 0) {
                     // Losowe niezniszczlne blokady
@@ -79,33 +156,246 @@ public class Grid {
         final boolean whitePlayerSpawn = x == 1 && y == 1
                 || x == 2 && y == 1
                 || x == 1 && y == 2;
-        final boolean greenPlayerSpawn = x == WIDTH - 2 && y == HEIGHT - 2
-                || x == WIDTH - 3 && y == HEIGHT - 2
-                || x == WIDTH - 2 && y == HEIGHT - 3;
-        final boolean redPlayerSpawn = x == WIDTH - 2 && y == 1
-                || x == WIDTH - 3 && y == 1
-                || x == WIDTH - 2 && y == 2;
-        final boolean bluePlayerSpawn = x == 1 && y == HEIGHT - 2
-                || x == 2 && y == HEIGHT - 2
-                || x == 1 && y == HEIGHT - 3;
+        final boolean greenPlayerSpawn = x == width - 2 && y == height - 2
+                || x == width - 3 && y == height - 2
+                || x == width - 2 && y == height - 3;
+        final boolean redPlayerSpawn = x == width - 2 && y == 1
+                || x == width - 3 && y == 1
+                || x == width - 2 && y == 2;
+        final boolean bluePlayerSpawn = x == 1 && y == height - 2
+                || x == 2 && y == height - 2
+                || x == 1 && y == height - 3;
         return whitePlayerSpawn || greenPlayerSpawn || redPlayerSpawn
                 || bluePlayerSpawn;
     }
 
+    /**
+     * Usuwa bloki z pola na którym pojawi się gracz oraz zniszczalne bloki z
+     * pól sąsiednich, tak aby gracz mógł się poruszać.
+     *
+     * @param x Współrzędna x.
+     * @param y Współrzędna y.
+     */
+    public void clearSpawn(int x, int y) {
+        if (x <= 0 || y <= 0 || x >= width - 1 || y >= height - 1) {
+            return;
+        }
+
+        setTile(x, y, Tile.GRASS);
+        clearDestructible(x - 1, y);
+        clearDestructible(x + 1, y);
+        clearDestructible(x, y - 1);
+        clearDestructible(x, y + 1);
+    }
+
+    private void clearDestructible(int x, int y) {
+        if (getTile(x, y) == Tile.DESTRUCTIBLE) {
+            setTile(x, y, Tile.GRASS);
+        }
+    }
+
     public final void setTile(int x, int y, Tile tile) {
-        setTile(x + y * WIDTH, tile);
+        setTile(x + y * width, tile);
     }
 
     public final void setTile(int pos, Tile tile) {
-        tiles[pos] = tile;
+        indestructibleTiles.clear(pos);
+        destructibleTiles.clear(pos);
+        powerupBombTiles.clear(pos);
+        powerupRangeTiles.clear(pos);
+
+        switch (tile) {
+            case INDESTRUCTIBLE:
+                indestructibleTiles.set(pos);
+                break;
+            case DESTRUCTIBLE:
+                destructibleTiles.set(pos);
+                break;
+            case POWERUP_BOMB:
+                powerupBombTiles.set(pos);
+                break;
+            case POWERUP_RANGE:
+                powerupRangeTiles.set(pos);
+                break;
+            default:
+                break;
+        }
+
+        markDirty(pos);
+    }
+
+    private void markDirty(int pos) {
+        // Zmiana pola zmienia też cień na trawie poniżej.
+        dirtyTiles.set(pos);
+        if (pos + width < width * height) {
+            dirtyTiles.set(pos + width);
+        }
+        hasDirtyTiles = true;
+        changeCount += 1;
+    }
+
+    /**
+     * Zwraca licznik zmian planszy, zwiększany przy każdej zmianie pola.
+     *
+     * @return Licznik zmian.
+     */
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Zwraca rozmiar w bajtach stanu planszy zapisywanego przez
+     * {@link #saveState(ByteBuffer)}.
+     *
+     * @return Rozmiar stanu.
+     */
+    int getStateSize() {
+        return 8 + 4 * 8 * indestructibleTiles.words.length;
+    }
+
+    /**
+     * Zapisuje rozmiar planszy i rodzaje wszystkich pól.
+     *
+     * @param out Bufor do którego zapisać stan.
+     */
+    void saveState(ByteBuffer out) {
+        out.putInt(width);
+        out.putInt(height);
+        saveWords(out, indestructibleTiles);
+        saveWords(out, destructibleTiles);
+        saveWords(out, powerupBombTiles);
+        saveWords(out, powerupRangeTiles);
+    }
+
+    /**
+     * Przywraca stan planszy zapisany przez {@link #saveState(ByteBuffer)}.
+     * Ponownie rysowane są tylko pola które się zmieniły.
+     *
+     * @param in Bufor z którego odczytać stan.
+     */
+    void restoreState(ByteBuffer in) {
+        final int newWidth = in.getInt();
+        final int newHeight = in.getInt();
+        if (newWidth != width || newHeight != height) {
+            resize(newWidth, newHeight);
+        }
+
+        restoreWords(in, indestructibleTiles);
+        restoreWords(in, destructibleTiles);
+        restoreWords(in, powerupBombTiles);
+        restoreWords(in, powerupRangeTiles);
+    }
+
+    private static void saveWords(ByteBuffer out, BitBoard board) {
+        final long[] words = board.words;
+        for (int i = 0; i < words.length; i++) {
+            out.putLong(words[i]);
+        }
+    }
+
+    private void restoreWords(ByteBuffer in, BitBoard board) {
+        final long[] words = board.words;
+        for (int i = 0; i < words.length; i++) {
+            final long word = in.getLong();
+            long changed = words[i] ^ word;
+            words[i] = word;
+
+            while (changed != 0) {
+                markDirty((i << 6) + Long.numberOfTrailingZeros(changed));
+                changed &= changed - 1;
+            }
+        }
     }
 
     public Tile getTile(int x, int y) {
-        return getTile(x + y * WIDTH);
+        return getTile(x + y * width);
     }
 
     public Tile getTile(int pos) {
-        return tiles[pos];
+        if (indestructibleTiles.get(pos)) {
+            return Tile.INDESTRUCTIBLE;
+        }
+        if (destructibleTiles.get(pos)) {
+            return Tile.DESTRUCTIBLE;
+        }
+        if (powerupBombTiles.get(pos)) {
+            return Tile.POWERUP_BOMB;
+        }
+        if (powerupRangeTiles.get(pos)) {
+            return Tile.POWERUP_RANGE;
+        }
+        return Tile.GRASS;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Zwraca rozmiar planszy w pikselach.
+     *
+     * @return Rozmiar planszy.
+     */
+    public Dimension getPixelSize() {
+        return new Dimension(width * TILE_SIZE, height * TILE_SIZE);
+    }
+
+    /**
+     * Tworzy pusty zbiór pól o rozmiarze tej planszy.
+     *
+     * @return Nowy zbiór pól.
+     */
+    public BitBoard createBitBoard() {
+        return new BitBoard(width, height);
+    }
+
+    /**
+     * Zapisuje do {@code out} wszystkie pola na które nie ma bloków.
+     *
+     * @param out Zbiór do którego zapisać wynik.
+     */
+    public void getPassableTiles(BitBoard out) {
+        out.copyFrom(indestructibleTiles);
+        out.or(destructibleTiles);
+        out.not();
+    }
+
+    /**
+     * Zapisuje do {@code out} wszystkie pola sąsiadujące z blokami które można
+     * zniszczyć.
+     *
+     * @param out Zbiór do którego zapisać wynik.
+     */
+    public void getTilesNextToDestructible(BitBoard out) {
+        out.setNeighboursOf(destructibleTiles, notFirstColumn, notLastColumn);
+    }
+
+    /**
+     * Zapisuje do {@code out} wszystkie pola bez bloków do których można dojść
+     * z podanej pozycji.
+     *
+     * @param x Współrzędna x pozycji startowej.
+     * @param y Współrzędna y pozycji startowej.
+     * @param out Zbiór do którego zapisać wynik.
+     */
+    public void getReachableTiles(int x, int y, BitBoard out) {
+        out.clear();
+        if (!isValidPosition(x, y)) {
+            return;
+        }
+
+        getPassableTiles(passableScratch);
+        if (!passableScratch.get(x + y * width)) {
+            return;
+        }
+
+        out.set(x + y * width);
+        out.floodFill(passableScratch, notFirstColumn, notLastColumn,
+                floodScratch);
     }
 
     public boolean canMoveTo(int x, int y) {
@@ -121,49 +411,151 @@ public class Grid {
     }
 
     private boolean isSolidBlockAt(int x, int y) {
-        final Tile tile = getTile(x, y);
-        return tile == Tile.INDESTRUCTIBLE || tile == Tile.DESTRUCTIBLE;
+        final int pos = x + y * width;
+        return indestructibleTiles.get(pos) || destructibleTiles.get(pos);
     }
 
-    private boolean isValidPosition(int x, int y) {
-        return x >= 0 && y >= 0 && x < WIDTH && y < HEIGHT;
+    public boolean isValidPosition(int x, int y) {
+        return x >= 0 && y >= 0 && x < width && y < height;
     }
 
+    /**
+     * Rysuje planszę. Pola rysowane są raz do fragmentów przechowywanych w
+     * pamięci, a następnie tylko te które się zmieniły. Każda klatka to więc
+     * jedynie skopiowanie widocznych fragmentów.
+     *
+     * @param g Obiekt na którym rysować.
+     * @param observer Obserwator wczytywania obrazów.
+     */
     public void draw(Graphics2D g, ImageObserver observer) {
-        for (int x = 0; x < 13; x++) {
-            for (int y = 0; y < 13; y++) {
-                Tile tile = getTile(x, y);
-                Image tileImage;
-
-                switch (tile) {
-                    case INDESTRUCTIBLE:
-                        tileImage = indestructible;
-                        break;
-                    case DESTRUCTIBLE:
-                        tileImage = destructible;
-                        break;
-                    case POWERUP_BOMB:
-                        tileImage = powerupBombImage;
-                        break;
-                    case POWERUP_RANGE:
-                        tileImage = powerupRangeImage;
-                        break;
-
-                    default:
-                        final boolean isUnderSolidBlock
-                                = y > 0 && isSolidBlockAt(x, y - 1);
-                        tileImage = isUnderSolidBlock ? grassShadow : grass;
-                        break;
+        if (hasDirtyTiles) {
+            redrawDirtyTiles();
+        }
+
+        // Rysuj tylko fragmenty znajdujące się w widocznym obszarze.
+        int minX = 0;
+        int minY = 0;
+        int maxX = chunkColumns - 1;
+        int maxY = chunkRows - 1;
+
+        final int chunkPixels = CHUNK_SIZE * TILE_SIZE;
+        final Rectangle clip = g.getClipBounds();
+        if (clip != null) {
+            minX = Math.max(minX, clip.x / chunkPixels);
+            minY = Math.max(minY, clip.y / chunkPixels);
+            maxX = Math.min(maxX, (clip.x + clip.width - 1) / chunkPixels);
+            maxY = Math.min(maxY, (clip.y + clip.height - 1) / chunkPixels);
+        }
+
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX; x++) {
+                BufferedImage chunk = chunks[x + y * chunkColumns];
+                if (chunk == null) {
+                    chunk = createChunk(g, x, y);
                 }
 
-                g.drawImage(tileImage,
-                        x * TILE_SIZE,
-                        y * TILE_SIZE,
-                        TILE_SIZE,
-                        TILE_SIZE,
-                        observer);
+                g.drawImage(chunk, x * chunkPixels, y * chunkPixels, null);
+            }
+        }
+    }
+
+    /**
+     * Tworzy i rysuje fragment planszy. Obraz jest zgodny z urządzeniem na
+     * którym rysowana jest plansza, dzięki czemu może być przechowywany w
+     * pamięci karty graficznej.
+     */
+    private BufferedImage createChunk(Graphics2D g, int chunkX, int chunkY) {
+        final int firstX = chunkX * CHUNK_SIZE;
+        final int firstY = chunkY * CHUNK_SIZE;
+        final int lastX = Math.min(width, firstX + CHUNK_SIZE) - 1;
+        final int lastY = Math.min(height, firstY + CHUNK_SIZE) - 1;
+
+        final BufferedImage chunk = g.getDeviceConfiguration()
+                .createCompatibleImage(
+                        (lastX - firstX + 1) * TILE_SIZE,
+                        (lastY - firstY + 1) * TILE_SIZE,
+                        Transparency.OPAQUE);
+        chunks[chunkX + chunkY * chunkColumns] = chunk;
+
+        final Graphics2D chunkGraphics = chunk.createGraphics();
+        for (int y = firstY; y <= lastY; y++) {
+            for (int x = firstX; x <= lastX; x++) {
+                drawTile(chunkGraphics, x, y);
+                dirtyTiles.clear(x + y * width);
             }
         }
+        chunkGraphics.dispose();
+        return chunk;
+    }
+
+    /**
+     * Rysuje ponownie zmienione pola w już utworzonych fragmentach.
+     */
+    private void redrawDirtyTiles() {
+        hasDirtyTiles = false;
+
+        BufferedImage chunk = null;
+        Graphics2D chunkGraphics = null;
+
+        for (int pos = dirtyTiles.nextSetBit(0); pos >= 0;
+                pos = dirtyTiles.nextSetBit(pos + 1)) {
+            final int x = pos % width;
+            final int y = pos / width;
+
+            dirtyTiles.clear(pos);
+
+            final BufferedImage tileChunk
+                    = chunks[x / CHUNK_SIZE + y / CHUNK_SIZE * chunkColumns];
+            if (tileChunk == null) {
+                // Pole zostanie narysowane w trakcie tworzenia fragmentu.
+                continue;
+            }
+
+            if (tileChunk != chunk) {
+                if (chunkGraphics != null) {
+                    chunkGraphics.dispose();
+                }
+                chunk = tileChunk;
+                chunkGraphics = chunk.createGraphics();
+                chunkGraphics.translate(
+                        -(x / CHUNK_SIZE) * CHUNK_SIZE * TILE_SIZE,
+                        -(y / CHUNK_SIZE) * CHUNK_SIZE * TILE_SIZE);
+            }
+
+            drawTile(chunkGraphics, x, y);
+        }
+
+        if (chunkGraphics != null) {
+            chunkGraphics.dispose();
+        }
+    }
+
+    private void drawTile(Graphics2D g, int x, int y) {
+        final Image tileImage;
+
+        switch (getTile(x, y)) {
+            case INDESTRUCTIBLE:
+                tileImage = Sprites.INDESTRUCTIBLE;
+                break;
+            case DESTRUCTIBLE:
+                tileImage = Sprites.DESTRUCTIBLE;
+                break;
+            case POWERUP_BOMB:
+                tileImage = Sprites.POWERUP_BOMB;
+                break;
+            case POWERUP_RANGE:
+                tileImage = Sprites.POWERUP_RANGE;
+                break;
+
+            default:
+                final boolean isUnderSolidBlock
+                        = y > 0 && isSolidBlockAt(x, y - 1);
+                tileImage = isUnderSolidBlock
+                        ? Sprites.GRASS_SHADOW : Sprites.GRASS;
+                break;
+        }
+
+        g.drawImage(tileImage, x * TILE_SIZE, y * TILE_SIZE, null);
     }
 
     public Tile destroyTile(int x, int y) {
@@ -175,8 +567,8 @@ public class Grid {
 
         if (tile == Tile.DESTRUCTIBLE) {
             Tile newTile = Tile.GRASS;
-            if (RANDOM.nextInt(5) == 0) {
-                newTile = RANDOM.nextInt(2) == 0
+            if (controller.random.nextInt(5) == 0) {
+                newTile = controller.random.nextInt(2) == 0
                         ? Tile.POWERUP_BOMB : Tile.POWERUP_RANGE;
             }
 
@@ -1,11 +1,10 @@
 package dynablaster;
 
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.image.ImageObserver;
 
 public interface IExplosion {
-    void draw(Graphics2D g, ImageObserver observer, Image image);
-    boolean hasTimedOut();
+    void draw(Graphics2D g, ImageObserver observer, long now);
+    boolean hasTimedOut(long now);
     boolean isInRange(int x, int y);
 }
@@ -0,0 +1,142 @@
+package dynablaster;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kolejka zdarzeń klawiatury przekazywanych z wątku interfejsu do wątku
+ * symulacji. Zdarzenia są dodawane przez jeden wątek i odczytywane przez
+ * jeden wątek bez blokowania, a symulacja przetwarza je na początku każdego
+ * kroku.
+ *
+ * Na niektórych systemach (np. Linux) przytrzymany klawisz generuje pary
+ * zdarzeń zwolnienia i ponownego wciśnięcia z tym samym czasem. Takie
+ * zwolnienia są pomijane w trakcie odczytu.
+ */
+public class InputRing {
+
+    /**
+     * Przetwarza zdarzenia odczytane z kolejki.
+     */
+    public interface Handler {
+
+        void keyPressed(int keyCode);
+
+        void keyReleased(int keyCode);
+    }
+
+    /**
+     * Jak długo czekać na wciśnięcie klawisza następujące po jego
+     * zwolnieniu, zanim zwolnienie zostanie uznane za prawdziwe.
+     */
+    private static final long REPEAT_WINDOW_MILLIS = 5;
+
+    private final long[] times;
+
+    /**
+     * Kod klawisza przesunięty o jeden bit, z najmłodszym bitem ustawionym
+     * dla wciśnięcia klawisza.
+     */
+    private final int[] keys;
+    private final int mask;
+
+    /**
+     * Numer następnego zapisywanego i odczytywanego zdarzenia. Każdy licznik
+     * jest zmieniany tylko przez jeden wątek.
+     */
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Ostatnia odczytana przez wątek zapisujący wartość {@code tail}.
+     */
+    private long cachedTail = 0;
+
+    /**
+     * @param capacity Pojemność kolejki. Musi być potęgą dwójki.
+     */
+    public InputRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+
+        times = new long[capacity];
+        keys = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Dodaje zdarzenie do kolejki. Może być wywoływane tylko przez jeden
+     * wątek.
+     *
+     * @param when Czas zdarzenia w milisekundach.
+     * @param keyCode Kod klawisza.
+     * @param pressed {@code true} dla wciśnięcia, {@code false} dla
+     * zwolnienia klawisza.
+     * @return {@code false} jeśli kolejka jest pełna i zdarzenie zostało
+     * pominięte.
+     */
+    public boolean offer(long when, int keyCode, boolean pressed) {
+        final long h = head.get();
+        if (h - cachedTail > mask) {
+            cachedTail = tail.get();
+            if (h - cachedTail > mask) {
+                return false;
+            }
+        }
+
+        final int i = (int) h & mask;
+        times[i] = when;
+        keys[i] = keyCode << 1 | (pressed ? 1 : 0);
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    /**
+     * Przekazuje oczekujące zdarzenia do obiektu przetwarzającego. Może być
+     * wywoływane tylko przez jeden wątek w danej chwili.
+     *
+     * @param handler Obiekt przetwarzający zdarzenia.
+     * @param nowMillis Aktualny czas w milisekundach, w tej samej skali co
+     * czasy zdarzeń.
+     */
+    public void drain(Handler handler, long nowMillis) {
+        final long h = head.get();
+        long t = tail.get();
+
+        while (t < h) {
+            final int i = (int) t & mask;
+            final int key = keys[i];
+            final int keyCode = key >>> 1;
+
+            if ((key & 1) != 0) {
+                handler.keyPressed(keyCode);
+            } else if (t + 1 < h) {
+                final int next = (int) (t + 1) & mask;
+                if (keys[next] != (key | 1) || times[next] != times[i]) {
+                    handler.keyReleased(keyCode);
+                }
+            } else if (nowMillis - times[i] < REPEAT_WINDOW_MILLIS) {
+                // Wciśnięcie klawisza może jeszcze nadejść, więc zwolnienie
+                // zostanie przetworzone w następnym kroku.
+                break;
+            } else {
+                handler.keyReleased(keyCode);
+            }
+            t++;
+        }
+
+        tail.lazySet(t);
+    }
+
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    /**
+     * Pomija wszystkie oczekujące zdarzenia. Może być wywoływane tylko przez
+     * wątek odczytujący.
+     */
+    public void clear() {
+        tail.lazySet(head.get());
+    }
+}
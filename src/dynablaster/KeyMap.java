@@ -0,0 +1,199 @@
+package dynablaster;
+
+import java.awt.event.KeyEvent;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Properties;
+import javax.swing.KeyStroke;
+
+/**
+ * Przypisanie klawiszy do akcji graczy sterowanych z klawiatury. Każdy
+ * klawisz może sterować jedną akcją jednego gracza, a przypisania zapisane są
+ * w tablicy indeksowanej kodem klawisza.
+ *
+ * Gracze identyfikowani są numerem miejsca: miejsca od 0 do 3 odpowiadają
+ * kolorom graczy w kolejności {@link PlayerColor}, a kolejne miejsca
+ * dodatkowym graczom. Przypisania mogą zostać wczytane z pliku w formacie
+ * {@link Properties}, np.:
+ *
+ * <pre>
+ * player1.up = UP
+ * player1.bomb = SPACE, CONTROL
+ * player5.left = NUMPAD1
+ * </pre>
+ *
+ * Nazwy klawiszy są takie jak w {@link KeyStroke#getKeyStroke(String)}.
+ * Obiekt nie jest zmieniany po utworzeniu, więc może być bezpiecznie
+ * podmieniony w trakcie gry.
+ */
+public final class KeyMap {
+
+    public enum Action {
+        UP(Direction.UP),
+        DOWN(Direction.DOWN),
+        LEFT(Direction.LEFT),
+        RIGHT(Direction.RIGHT),
+        BOMB(Direction.NONE);
+
+        /**
+         * Kierunek ruchu albo {@code Direction.NONE} dla akcji innych niż
+         * ruch.
+         */
+        public final Direction direction;
+
+        Action(Direction direction) {
+            this.direction = direction;
+        }
+    }
+
+    private static final Action[] ACTIONS = Action.values();
+
+    /**
+     * Wartość oznaczająca klawisz bez przypisania.
+     */
+    public static final int NONE = 0;
+
+    private static final int ACTION_BITS = 3;
+
+    /**
+     * Przypisania indeksowane kodem klawisza. Zawiera numer miejsca gracza
+     * przesunięty o {@code ACTION_BITS} bitów i numer akcji powiększony o 1.
+     */
+    private final int[] bindings;
+
+    private KeyMap(int[] bindings) {
+        this.bindings = bindings;
+    }
+
+    /**
+     * Zwraca przypisanie klawisza.
+     *
+     * @param keyCode Kod klawisza.
+     * @return Przypisanie albo {@link #NONE}.
+     */
+    public int get(int keyCode) {
+        return keyCode >= 0 && keyCode < bindings.length
+                ? bindings[keyCode] : NONE;
+    }
+
+    public static int slotOf(int binding) {
+        return binding >>> ACTION_BITS;
+    }
+
+    public static Action actionOf(int binding) {
+        return ACTIONS[(binding & ((1 << ACTION_BITS) - 1)) - 1];
+    }
+
+    /**
+     * Zwraca domyślne przypisania klawiszy dla czterech graczy.
+     *
+     * @return Domyślne przypisania.
+     */
+    public static KeyMap createDefault() {
+        return new Builder()
+                .bind(0, Action.UP, KeyEvent.VK_UP)
+                .bind(0, Action.DOWN, KeyEvent.VK_DOWN)
+                .bind(0, Action.LEFT, KeyEvent.VK_LEFT)
+                .bind(0, Action.RIGHT, KeyEvent.VK_RIGHT)
+                .bind(0, Action.BOMB, KeyEvent.VK_SPACE, KeyEvent.VK_CONTROL)
+                .bind(1, Action.UP, KeyEvent.VK_W)
+                .bind(1, Action.DOWN, KeyEvent.VK_S)
+                .bind(1, Action.LEFT, KeyEvent.VK_A)
+                .bind(1, Action.RIGHT, KeyEvent.VK_D)
+                .bind(1, Action.BOMB, KeyEvent.VK_Q, KeyEvent.VK_E)
+                .bind(2, Action.UP, KeyEvent.VK_I)
+                .bind(2, Action.DOWN, KeyEvent.VK_K)
+                .bind(2, Action.LEFT, KeyEvent.VK_J)
+                .bind(2, Action.RIGHT, KeyEvent.VK_L)
+                .bind(2, Action.BOMB, KeyEvent.VK_U, KeyEvent.VK_O)
+                .bind(3, Action.UP, KeyEvent.VK_NUMPAD8)
+                .bind(3, Action.DOWN, KeyEvent.VK_NUMPAD2)
+                .bind(3, Action.LEFT, KeyEvent.VK_NUMPAD4)
+                .bind(3, Action.RIGHT, KeyEvent.VK_NUMPAD6)
+                .bind(3, Action.BOMB, KeyEvent.VK_NUMPAD5, KeyEvent.VK_NUMPAD0)
+                .build();
+    }
+
+    /**
+     * Wczytuje przypisania klawiszy z pliku.
+     *
+     * @param path Ścieżka pliku.
+     * @return Wczytane przypisania.
+     * @throws IOException Gdy nie można odczytać pliku.
+     * @throws IllegalArgumentException Gdy plik zawiera nieprawidłowe
+     * przypisanie.
+     */
+    public static KeyMap load(String path) throws IOException {
+        final Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(path)) {
+            properties.load(in);
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * Tworzy przypisania klawiszy z właściwości w postaci
+     * {@code playerN.akcja = KLAWISZ, KLAWISZ}, gdzie N to numer miejsca
+     * gracza liczony od 1.
+     *
+     * @param properties Właściwości.
+     * @return Przypisania klawiszy.
+     * @throws IllegalArgumentException Gdy właściwości zawierają
+     * nieprawidłowe przypisanie.
+     */
+    public static KeyMap fromProperties(Properties properties) {
+        final Builder builder = new Builder();
+
+        for (String name : properties.stringPropertyNames()) {
+            final int dot = name.indexOf('.');
+            if (!name.startsWith("player") || dot < 0) {
+                throw new IllegalArgumentException("Invalid binding " + name);
+            }
+
+            final int slot;
+            final Action action;
+            try {
+                slot = Integer.parseInt(name.substring("player".length(), dot)) - 1;
+                action = Action.valueOf(name.substring(dot + 1).toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid binding " + name, e);
+            }
+            if (slot < 0) {
+                throw new IllegalArgumentException("Invalid binding " + name);
+            }
+
+            for (String key : properties.getProperty(name).split(",")) {
+                final KeyStroke stroke = KeyStroke.getKeyStroke(key.trim());
+                if (stroke == null || stroke.getKeyCode() == KeyEvent.VK_UNDEFINED) {
+                    throw new IllegalArgumentException("Invalid key " + key
+                            + " in " + name);
+                }
+                builder.bind(slot, action, stroke.getKeyCode());
+            }
+        }
+        return builder.build();
+    }
+
+    private static final class Builder {
+
+        private int[] bindings = new int[256];
+
+        Builder bind(int slot, Action action, int... keyCodes) {
+            for (int keyCode : keyCodes) {
+                if (keyCode >= bindings.length) {
+                    bindings = Arrays.copyOf(bindings,
+                            Math.max(keyCode + 1, bindings.length * 2));
+                }
+                bindings[keyCode] = slot << ACTION_BITS | (action.ordinal() + 1);
+            }
+            return this;
+        }
+
+        KeyMap build() {
+            return new KeyMap(bindings);
+        }
+    }
+}
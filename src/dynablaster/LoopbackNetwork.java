@@ -0,0 +1,142 @@
+package dynablaster;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sieć pomiędzy uczestnikami gry działającymi w jednym procesie, np. do
+ * sprawdzania gry sieciowej. Symuluje opóźnienie, jego wahania i gubienie
+ * pakietów. Czas sieci ustawia korzystający z niej kod, dzięki czemu gry
+ * mogą działać szybciej niż w czasie rzeczywistym, a przy tym samym ziarnie
+ * pakiety są gubione i opóźniane zawsze tak samo.
+ */
+public class LoopbackNetwork {
+
+    /**
+     * Dokładność prawdopodobieństwa zgubienia pakietu.
+     */
+    private static final int LOSS_SCALE = 1000000;
+
+    private final List<PriorityQueue<Packet>> queues;
+    private final GameRandom random;
+
+    private long now = 0;
+    private long sent = 0;
+
+    private int latency = 0;
+    private int jitter = 0;
+    private int loss = 0;
+
+    /**
+     * @param peers Liczba uczestników.
+     * @param seed Ziarno generatora losującego opóźnienia i zgubione
+     * pakiety.
+     */
+    public LoopbackNetwork(int peers, long seed) {
+        queues = new ArrayList<>(peers);
+        for (int i = 0; i < peers; i++) {
+            queues.add(new PriorityQueue<Packet>());
+        }
+        random = new GameRandom(GameRandom.mix(seed));
+    }
+
+    /**
+     * Ustawia opóźnienie dostarczania pakietów.
+     *
+     * @param latency Opóźnienie w jedną stronę w milisekundach.
+     * @param jitter Największe dodatkowe, losowe opóźnienie w milisekundach.
+     * Pakiety mogą wtedy docierać w innej kolejności niż zostały wysłane.
+     */
+    public void setLatency(int latency, int jitter) {
+        this.latency = latency;
+        this.jitter = jitter;
+    }
+
+    /**
+     * @param loss Prawdopodobieństwo zgubienia pakietu, od 0 do 1.
+     */
+    public void setLoss(double loss) {
+        this.loss = (int) Math.round(loss * LOSS_SCALE);
+    }
+
+    /**
+     * Ustawia aktualny czas sieci. Pakiety są dostarczane gdy czas sieci
+     * osiągnie chwilę ich dostarczenia.
+     *
+     * @param millis Czas w milisekundach.
+     */
+    public void setTime(long millis) {
+        now = millis;
+    }
+
+    /**
+     * Zwraca połączenie uczestnika z pozostałymi uczestnikami.
+     *
+     * @param peer Numer uczestnika.
+     * @return Połączenie.
+     */
+    public NetTransport getTransport(final int peer) {
+        return new NetTransport() {
+            @Override
+            public void send(int to, ByteBuffer packet) {
+                LoopbackNetwork.this.send(peer, to, packet);
+            }
+
+            @Override
+            public int receive(ByteBuffer packet) {
+                return LoopbackNetwork.this.receive(peer, packet);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private synchronized void send(int from, int to, ByteBuffer packet) {
+        final byte[] data = new byte[packet.remaining()];
+        packet.get(data);
+        if (random.nextInt(LOSS_SCALE) < loss) {
+            return;
+        }
+
+        final long delay = latency + (jitter > 0 ? random.nextInt(jitter + 1) : 0);
+        queues.get(to).add(new Packet(now + delay, sent++, from, data));
+    }
+
+    private synchronized int receive(int peer, ByteBuffer packet) {
+        final Packet next = queues.get(peer).peek();
+        if (next == null || next.time > now) {
+            return -1;
+        }
+
+        queues.get(peer).poll();
+        packet.put(next.data);
+        return next.from;
+    }
+
+    private static final class Packet implements Comparable<Packet> {
+
+        final long time;
+        final long sequence;
+        final int from;
+        final byte[] data;
+
+        Packet(long time, long sequence, int from, byte[] data) {
+            this.time = time;
+            this.sequence = sequence;
+            this.from = from;
+            this.data = data;
+        }
+
+        @Override
+        public int compareTo(Packet other) {
+            if (time != other.time) {
+                return Long.compare(time, other.time);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -1,9 +1,46 @@
 package dynablaster;
 
-public class MainFrame extends javax.swing.JFrame {
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+public class MainFrame extends javax.swing.JFrame implements GameListener {
+
+    /**
+     * Katalog do którego zapisywane są zakończone gry, jeśli nie podano
+     * właściwości systemowej {@code dynablaster.replays}.
+     */
+    private static final String DEFAULT_REPLAY_DIRECTORY = "replays";
     
     private final GameController gameController = new GameController(this);
 
+    /**
+     * Katalog zapisów gier albo {@code null} jeśli gry nie są zapisywane.
+     */
+    private final File replayDirectory;
+
+    /**
+     * Wątek zapisujący gry do plików, aby nie robić tego w pętli gry.
+     */
+    private final ExecutorService replayWriter = Executors.newSingleThreadExecutor(
+            new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable action) {
+                    final Thread thread = new Thread(action, "Replay writer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    /**
+     * Sesja gry sieciowej albo {@code null}.
+     */
+    private RollbackSession session;
+
     public MainFrame() {
         initComponents();
 
@@ -16,6 +53,182 @@ public class MainFrame extends javax.swing.JFrame {
         gamePanel.setGameController(gameController);
         playerSelection.setGameController(gameController);
         endGame.setGameController(gameController);
+
+        final String replays = System.getProperty("dynablaster.replays",
+                DEFAULT_REPLAY_DIRECTORY);
+        replayDirectory = replays.isEmpty() ? null : new File(replays);
+        if (replayDirectory != null) {
+            gameController.setRecorder(new ReplayRecorder());
+        }
+
+        setBots(System.getProperty("dynablaster.bots", ""));
+
+        final String replay = System.getProperty("dynablaster.replay");
+        final String peers = System.getProperty("dynablaster.net.peers");
+        if (replay != null) {
+            playReplay(new File(replay));
+        } else if (peers != null) {
+            startNetworkGame(peers.split(","));
+        }
+    }
+
+    /**
+     * Oddaje sterowanie graczami o podanych numerach komputerowi. Gracze 1-4
+     * to kolejno gracz biały, zielony, czerwony i niebieski.
+     *
+     * @param numbers Numery graczy oddzielone przecinkami.
+     */
+    private void setBots(String numbers) {
+        final PlayerColor[] colors = PlayerColor.values();
+        for (String number : numbers.split(",")) {
+            if (number.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                gameController.bots.setBot(
+                        colors[Integer.parseInt(number.trim()) - 1], true);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                System.err.println("Nieprawidłowy numer gracza: " + number);
+            }
+        }
+    }
+
+    /**
+     * Rozpoczyna grę sieciową z uczestnikami o podanych adresach. Numer
+     * lokalnego uczestnika podaje właściwość {@code dynablaster.net.peer},
+     * a wszyscy uczestnicy muszą podać to samo ziarno w
+     * {@code dynablaster.net.seed}.
+     *
+     * @param addresses Adresy wszystkich uczestników w postaci
+     * {@code host:port}.
+     */
+    private void startNetworkGame(String[] addresses) {
+        final int local = Integer.getInteger("dynablaster.net.peer", 0);
+        final int delay = Integer.getInteger("dynablaster.net.delay", 2);
+        try {
+            final UdpTransport transport = UdpTransport.create(local, addresses);
+            session = new RollbackSession(gameController, transport, local,
+                    addresses.length, delay);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Nie można rozpocząć gry sieciowej: "
+                    + e.getMessage());
+            return;
+        }
+
+        gamePanel.setSession(session);
+        gameController.newGame(Grid.DEFAULT_WIDTH, Grid.DEFAULT_HEIGHT,
+                Long.getLong("dynablaster.net.seed", 1));
+    }
+
+    /**
+     * Odtwarza zapis gry z pliku z normalną prędkością.
+     *
+     * @param file Plik z zapisem gry.
+     */
+    private void playReplay(File file) {
+        try {
+            gameController.play(Replay.load(file));
+        } catch (IOException e) {
+            System.err.println("Nie można odczytać zapisu gry: "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Zapisuje zakończoną grę do pliku w katalogu zapisów. Odtwarzane gry nie
+     * są zapisywane ponownie. Zapis gry jest pobierany od razu, a plik
+     * zapisywany w tle.
+     */
+    private void saveReplay() {
+        final ReplayRecorder recorder = gameController.getRecorder();
+        if (recorder == null || gameController.isReplaying()) {
+            return;
+        }
+
+        final Replay replay = recorder.finish(gameController);
+        final String name = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS")
+                .format(new Date());
+        replayWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    replayDirectory.mkdirs();
+                    replay.save(createReplayFile(name));
+                } catch (IOException e) {
+                    System.err.println("Nie można zapisać gry: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Tworzy pusty plik zapisu o podanej nazwie. Jeśli taki plik już istnieje
+     * (np. zapisany przez innego uczestnika gry sieciowej w tym samym
+     * katalogu), do nazwy dodawany jest kolejny numer.
+     *
+     * @param name Nazwa pliku bez rozszerzenia.
+     * @return Utworzony plik.
+     * @throws IOException Gdy nie można utworzyć pliku.
+     */
+    private File createReplayFile(String name) throws IOException {
+        File file = new File(replayDirectory, name + ".dbr");
+        for (int i = 1; !file.createNewFile(); i++) {
+            file = new File(replayDirectory, name + "-" + i + ".dbr");
+        }
+        return file;
+    }
+
+    /*
+     * Zdarzenia gry mogą być zgłaszane przez wątek pętli gry, więc zmiany
+     * interfejsu są przekazywane do wątku Swing.
+     */
+
+    @Override
+    public void gameStarted() {
+        runOnEventThread(new Runnable() {
+            @Override
+            public void run() {
+                if (!gamePanel.getSize().equals(gamePanel.getPreferredSize())) {
+                    // Rozmiar planszy zmienił się od poprzedniej gry.
+                    pack();
+                }
+                showGamePanel();
+            }
+        });
+    }
+
+    @Override
+    public void gameEnded(final Player winner) {
+        saveReplay();
+        runOnEventThread(new Runnable() {
+            @Override
+            public void run() {
+                showEndPanel(winner);
+            }
+        });
+    }
+
+    @Override
+    public void playerSelectionRequested() {
+        if (session != null) {
+            // W grze sieciowej gracze są ustaleni przez sesję.
+            gameController.newGame();
+            return;
+        }
+        runOnEventThread(new Runnable() {
+            @Override
+            public void run() {
+                showPlayerSelectionPanel();
+            }
+        });
+    }
+
+    private static void runOnEventThread(Runnable action) {
+        if (java.awt.EventQueue.isDispatchThread()) {
+            action.run();
+        } else {
+            java.awt.EventQueue.invokeLater(action);
+        }
     }
     
     public void showPlayerSelectionPanel() {
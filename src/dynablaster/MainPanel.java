@@ -1,58 +1,138 @@
 package dynablaster;
 
+import java.awt.BorderLayout;
+import java.awt.Canvas;
 import java.awt.Dimension;
-import java.awt.Graphics;
-import java.awt.Graphics2D;
-import java.awt.Toolkit;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
+import java.awt.DisplayMode;
+import java.awt.GraphicsEnvironment;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
 import javax.swing.JPanel;
-import javax.swing.Timer;
 
 public class MainPanel extends JPanel {
 
+    /**
+     * Liczba klatek na sekundę używana gdy nie można odczytać częstotliwości
+     * odświeżania ekranu.
+     */
+    private static final int DEFAULT_FPS = 60;
+
+    /**
+     * Plik z przypisaniem klawiszy używany gdy nie podano właściwości
+     * systemowej {@code dynablaster.keys}.
+     */
+    private static final String DEFAULT_KEY_MAP_PATH = "keys.properties";
+
     private GameController gameController;
-    private final Timer gameTimer = new Timer(17, new TickListener());
-    
+    private final Canvas canvas = new Canvas();
+    private GameLoop gameLoop;
+
     public void setGameController(GameController controller) {
         gameController = controller;
-        
-        gameController.registerKeyListener(this);
-        gameTimer.start();
 
-        addMouseListener(new MouseListener());
+        // Gra rysowana jest przez wątek pętli gry, a nie przez Swing.
+        canvas.setIgnoreRepaint(true);
+        setLayout(new BorderLayout());
+        add(canvas, BorderLayout.CENTER);
+
+        gameController.registerKeyListener(canvas);
+        canvas.addMouseListener(new MouseListener());
+        canvas.addKeyListener(new FunctionKeyListener());
+        loadKeyMap();
+        Sprites.preload();
+
+        gameLoop = new GameLoop(gameController, canvas, getFrameRateLimit());
+        gameLoop.start();
+    }
+
+    /**
+     * Przekazuje wykonywanie kroków gry sesji gry sieciowej.
+     *
+     * @param session Sesja.
+     */
+    public void setSession(RollbackSession session) {
+        gameLoop.setSession(session);
+    }
+
+    /**
+     * Zwraca największą liczbę klatek na sekundę. Domyślnie jest to
+     * częstotliwość odświeżania ekranu, a można ją zmienić właściwością
+     * systemową {@code dynablaster.fps}. Wartość 0 wyłącza ograniczenie.
+     */
+    private static int getFrameRateLimit() {
+        final Integer fps = Integer.getInteger("dynablaster.fps");
+        if (fps != null) {
+            return fps;
+        }
+
+        final int refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDisplayMode().getRefreshRate();
+        return refreshRate != DisplayMode.REFRESH_RATE_UNKNOWN
+                ? refreshRate : DEFAULT_FPS;
+    }
+
+    /**
+     * Wczytuje przypisanie klawiszy z pliku podanego właściwością systemową
+     * {@code dynablaster.keys} albo z pliku {@code keys.properties} w
+     * katalogu roboczym, jeśli istnieje. W przypadku błędu pozostawia
+     * dotychczasowe przypisanie.
+     */
+    private void loadKeyMap() {
+        final String path = System.getProperty("dynablaster.keys",
+                DEFAULT_KEY_MAP_PATH);
+        if (!new File(path).isFile()) {
+            return;
+        }
+
+        try {
+            gameController.players.setKeyMap(KeyMap.load(path));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Nie można wczytać przypisania klawiszy: "
+                    + e.getMessage());
+        }
     }
 
     @Override
     public Dimension getPreferredSize() {
-        return Grid.SIZE;
+        if (gameController == null) {
+            return Grid.SIZE;
+        }
+        return gameController.grid.getPixelSize();
     }
 
     @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-
-        Graphics2D g2 = (Graphics2D) g;
-        gameController.draw(g2, this);
-        Toolkit.getDefaultToolkit().sync();
+    public boolean requestFocusInWindow() {
+        return canvas.requestFocusInWindow();
     }
 
-    private class MouseListener extends MouseAdapter {
+    /**
+     * Klawisz F3 włącza i wyłącza wyświetlanie czasów trwania etapów gry, a F5
+     * ponownie wczytuje przypisanie klawiszy.
+     */
+    private class FunctionKeyListener extends KeyAdapter {
 
         @Override
-        public void mousePressed(MouseEvent e) {
-            requestFocusInWindow();
+        public void keyPressed(KeyEvent e) {
+            switch (e.getKeyCode()) {
+                case KeyEvent.VK_F3:
+                    gameLoop.toggleHud();
+                    break;
+                case KeyEvent.VK_F5:
+                    loadKeyMap();
+                    break;
+            }
         }
     }
 
-    private class TickListener implements ActionListener {
+    private class MouseListener extends MouseAdapter {
 
         @Override
-        public void actionPerformed(ActionEvent e) {
-            gameController.update();
-            repaint();
+        public void mousePressed(MouseEvent e) {
+            requestFocusInWindow();
         }
     }
 }
@@ -0,0 +1,351 @@
+package dynablaster;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Uruchamia wiele niezależnych gier bez interfejsu graficznego, równolegle na
+ * wszystkich rdzeniach procesora. Każda gra ma własne ziarno wyznaczone z
+ * ziarna całej serii, a wyniki są zliczane osobno przez każde zadanie i
+ * łączone dopiero po jego zakończeniu.
+ */
+public class MatchRunner {
+
+    /**
+     * Liczba gier rozgrywanych kolejno przez jedno zadanie.
+     */
+    private static final int BATCH_SIZE = 32;
+
+    /**
+     * Steruje graczami w trakcie gry, np. wysyłając im polecenia ruchu.
+     */
+    public interface MatchDriver {
+
+        /**
+         * Wywoływane przed każdym krokiem symulacji.
+         *
+         * @param game Symulowana gra.
+         */
+        void beforeTick(GameController game);
+    }
+
+    /**
+     * Tworzy obiekty sterujące graczami dla kolejnych gier.
+     */
+    public interface DriverFactory {
+
+        /**
+         * Tworzy obiekt sterujący graczami nowo rozpoczętej gry.
+         *
+         * @param game Rozpoczęta gra.
+         * @param seed Ziarno gry, które może zostać użyte do losowania ruchów.
+         * @return Obiekt sterujący graczami.
+         */
+        MatchDriver create(GameController game, long seed);
+    }
+
+    /**
+     * Zbiorcze wyniki serii gier.
+     */
+    public static class Results {
+
+        public long matches = 0;
+        public long ticks = 0;
+        public long draws = 0;
+        public long timeouts = 0;
+
+        /**
+         * Liczba zwycięstw indeksowana kolorem gracza.
+         */
+        public final long[] wins = new long[PlayerColor.values().length];
+
+        void add(GameController game) {
+            matches += 1;
+            ticks += game.clock.getTick();
+
+            if (!game.isGameOver()) {
+                timeouts += 1;
+            } else if (game.getWinner() == null) {
+                draws += 1;
+            } else {
+                wins[game.getWinner().color.ordinal()] += 1;
+            }
+        }
+
+        void merge(Results other) {
+            matches += other.matches;
+            ticks += other.ticks;
+            draws += other.draws;
+            timeouts += other.timeouts;
+            for (int i = 0; i < wins.length; i++) {
+                wins[i] += other.wins[i];
+            }
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final int maxTicks;
+    private final DriverFactory drivers;
+    private final ForkJoinPool pool;
+
+    /**
+     * Zbiorcze czasy etapów wszystkich gier albo {@code null} jeśli czas nie
+     * jest mierzony.
+     */
+    private volatile Timings timings;
+
+    /**
+     * Katalog do którego zapisywane są przebiegi gier albo {@code null}.
+     */
+    private volatile File replayDirectory;
+
+    /**
+     * @param width Szerokość planszy.
+     * @param height Wysokość planszy.
+     * @param maxTicks Maksymalna liczba kroków gry. Gry które się nie
+     * zakończyły do tego czasu liczone są jako nierozstrzygnięte.
+     * @param drivers Źródło obiektów sterujących graczami.
+     * @param parallelism Liczba wątków.
+     */
+    public MatchRunner(int width, int height, int maxTicks,
+            DriverFactory drivers, int parallelism) {
+        this.width = width;
+        this.height = height;
+        this.maxTicks = maxTicks;
+        this.drivers = drivers;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Rozgrywa serię gier.
+     *
+     * @param matches Liczba gier.
+     * @param seed Ziarno serii.
+     * @return Zbiorcze wyniki.
+     */
+    public Results run(int matches, long seed) {
+        return pool.invoke(new Batch(0, matches, seed));
+    }
+
+    /**
+     * Włącza pomiar czasu etapów gry. Pomiary każdej zakończonej gry są
+     * dodawane do podanego obiektu przy zablokowanym jego monitorze.
+     *
+     * @param timings Zbiorcze pomiary albo {@code null} aby wyłączyć pomiar.
+     */
+    public void setTimings(Timings timings) {
+        this.timings = timings;
+    }
+
+    /**
+     * Włącza zapisywanie przebiegu każdej gry do pliku
+     * {@code match-<numer>.dbr} w podanym katalogu.
+     *
+     * @param directory Katalog albo {@code null} aby nie zapisywać gier.
+     */
+    public void setReplayDirectory(File directory) {
+        this.replayDirectory = directory;
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private Results runSequentially(int from, int to, long seed) {
+        final Results results = new Results();
+        final GameController game = new GameController();
+        for (PlayerColor color : PlayerColor.values()) {
+            game.players.setPlayerEnabled(color, true);
+        }
+
+        final Timings sharedTimings = timings;
+        game.timings.setEnabled(sharedTimings != null);
+
+        final File replays = replayDirectory;
+        if (replays != null) {
+            game.setRecorder(new ReplayRecorder());
+        }
+
+        for (int i = from; i < to; i++) {
+            final long matchSeed = GameRandom.mix(seed + i);
+            game.newGame(width, height, matchSeed);
+
+            final MatchDriver driver = drivers.create(game, matchSeed);
+            for (int tick = 0; tick < maxTicks && !game.isGameOver(); tick++) {
+                driver.beforeTick(game);
+                game.update();
+            }
+
+            results.add(game);
+
+            if (replays != null) {
+                saveReplay(game.getRecorder().finish(game),
+                        new File(replays, "match-" + i + ".dbr"));
+            }
+
+            if (sharedTimings != null) {
+                synchronized (sharedTimings) {
+                    sharedTimings.merge(game.timings);
+                }
+                game.timings.clear();
+            }
+        }
+        return results;
+    }
+
+    private static void saveReplay(Replay replay, File file) {
+        try {
+            replay.save(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private class Batch extends RecursiveTask<Results> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final long seed;
+
+        Batch(int from, int to, long seed) {
+            this.from = from;
+            this.to = to;
+            this.seed = seed;
+        }
+
+        @Override
+        protected Results compute() {
+            if (to - from <= BATCH_SIZE) {
+                return runSequentially(from, to, seed);
+            }
+
+            final int middle = (from + to) >>> 1;
+            final Batch left = new Batch(from, middle, seed);
+            left.fork();
+            final Results results = new Batch(middle, to, seed).compute();
+            results.merge(left.join());
+            return results;
+        }
+    }
+
+    /**
+     * Steruje graczami losowo: co jakiś czas zmienia kierunek ruchu i
+     * stawia bomby.
+     */
+    public static class RandomDriver implements MatchDriver {
+
+        private static final Direction[] DIRECTIONS = Direction.values();
+
+        private final GameRandom random;
+
+        public RandomDriver(long seed) {
+            random = new GameRandom(GameRandom.mix(seed));
+        }
+
+        @Override
+        public void beforeTick(GameController game) {
+            final Players players = game.players;
+            for (int id = 0; id < players.getCount(); id++) {
+                if (random.nextInt(30) == 0) {
+                    players.setMovementDirection(id,
+                            DIRECTIONS[random.nextInt(DIRECTIONS.length)]);
+                }
+                if (random.nextInt(60) == 0) {
+                    players.placeBomb(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Oddaje sterowanie wszystkimi graczami komputerowi ({@link Bots}).
+     * Polecenia wydawane są w trakcie kroku gry, więc obiekt sterujący nie
+     * robi nic przed krokiem.
+     */
+    public static class BotDriver implements MatchDriver {
+
+        public BotDriver(GameController game) {
+            for (PlayerColor color : PlayerColor.values()) {
+                game.bots.setBot(color, true);
+            }
+        }
+
+        @Override
+        public void beforeTick(GameController game) {
+        }
+    }
+
+    /**
+     * Uruchamia serię gier z losowo sterowanymi graczami i wypisuje wyniki.
+     *
+     * Jeśli ustawiona jest właściwość systemowa {@code dynablaster.timings},
+     * czasy etapów gry zapisywane są do podanego pliku co
+     * {@code dynablaster.timings.period} milisekund (domyślnie co sekundę).
+     * Właściwość {@code dynablaster.replays} wskazuje katalog, do którego
+     * zapisywane są przebiegi gier. Jeśli ustawiona jest właściwość
+     * {@code dynablaster.bots}, graczami sterują {@link Bots} zamiast
+     * losowych poleceń.
+     *
+     * @param args Liczba gier oraz opcjonalnie liczba wątków.
+     * @throws IOException Gdy nie można zapisać czasów etapów gry.
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        final int matches = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final int threads = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+
+        final boolean bots = Boolean.getBoolean("dynablaster.bots");
+        final MatchRunner runner = new MatchRunner(
+                Grid.DEFAULT_WIDTH, Grid.DEFAULT_HEIGHT, 60 * 60 * 3,
+                new DriverFactory() {
+                    @Override
+                    public MatchDriver create(GameController game, long seed) {
+                        return bots ? new BotDriver(game) : new RandomDriver(seed);
+                    }
+                }, threads);
+
+        final String replays = System.getProperty("dynablaster.replays");
+        if (replays != null) {
+            final File directory = new File(replays);
+            directory.mkdirs();
+            runner.setReplayDirectory(directory);
+        }
+
+        TimingsDump dump = null;
+        final String timingsPath = System.getProperty("dynablaster.timings");
+        if (timingsPath != null) {
+            final Timings timings = new Timings();
+            runner.setTimings(timings);
+            dump = new TimingsDump(timings, timingsPath,
+                    Long.getLong("dynablaster.timings.period", 1000));
+            dump.start();
+        }
+
+        final long start = System.nanoTime();
+        final Results results = runner.run(matches, 1);
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        runner.shutdown();
+
+        if (dump != null) {
+            dump.close();
+        }
+
+        System.out.printf("%d matches on %d threads in %.2f s (%.0f matches/s, %.0f ticks/s)%n",
+                results.matches, threads, seconds,
+                results.matches / seconds, results.ticks / seconds);
+        for (PlayerColor color : PlayerColor.values()) {
+            System.out.printf("%s: %d%n", color.getPlayerName(),
+                    results.wins[color.ordinal()]);
+        }
+        System.out.printf("Remisy: %d, nierozstrzygnięte: %d%n",
+                results.draws, results.timeouts);
+    }
+}
@@ -0,0 +1,328 @@
+package dynablaster;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stan gry w postaci tablic, odczytany z formatu
+ * {@link GameController#saveState(ByteBuffer)} i zapisywany z powrotem w
+ * tym samym formacie. Na nim {@link StateDelta} wyznacza i stosuje różnice
+ * pomiędzy stanami. Układ pól musi odpowiadać metodom {@code saveState}
+ * gry, planszy, graczy i bomb.
+ *
+ * Pola graczy, bomb i eksplozji są dostępne także przez numer pola, tak aby
+ * różnice wszystkich pól były kodowane w ten sam sposób.
+ */
+final class NetState {
+
+    /**
+     * Liczba plansz bitowych w kolejności zapisu: pola niezniszczalne,
+     * zniszczalne, z dodatkową bombą i z większym zasięgiem.
+     */
+    static final int BOARDS = 4;
+
+    static final int PLAYER_FIELDS = 12;
+
+    static final int BOMBS = 0;
+    static final int EXPLOSIONS = 1;
+
+    /**
+     * Numer pola z czasem wybuchu bomby albo rozpoczęcia eksplozji.
+     */
+    static final int WHEN_FIELD = 3;
+
+    /**
+     * Pola bomby: właściciel, x, y, czas wybuchu i zasięg.
+     */
+    private static final int BOMB_FIELDS = 5;
+
+    /**
+     * Pola eksplozji: rodzaj (1 dla eksplozji pola), x, y, czas rozpoczęcia,
+     * zasięg oraz zasięgi w górę, w dół, w lewo i w prawo. Eksplozja pola
+     * ma tylko cztery pierwsze pola.
+     */
+    private static final int EXPLOSION_FIELDS = 9;
+    private static final int TILE_EXPLOSION_FIELDS = 4;
+
+    long seed;
+    long tick;
+    long random;
+    boolean gameOver;
+    int winner = -1;
+
+    int width;
+    int height;
+    int words;
+    final long[][] boards = new long[BOARDS][];
+
+    int players;
+    private final long[][] playerFields = new long[PLAYER_FIELDS][0];
+
+    private final int[] entryCount = new int[2];
+    private final long[][][] entryFields = {
+        new long[BOMB_FIELDS][0],
+        new long[EXPLOSION_FIELDS][0]
+    };
+
+    NetState() {
+        Arrays.fill(boards, new long[0]);
+    }
+
+    /**
+     * Ustawia stan pustej gry, od którego kodowane są pełne stany.
+     */
+    void clear() {
+        seed = 0;
+        tick = 0;
+        random = 0;
+        gameOver = false;
+        winner = -1;
+        resize(0, 0);
+        players = 0;
+        entryCount[BOMBS] = 0;
+        entryCount[EXPLOSIONS] = 0;
+    }
+
+    /**
+     * Zmienia rozmiar planszy. Słowa plansz mają nieokreśloną wartość.
+     */
+    void resize(int width, int height) {
+        this.width = width;
+        this.height = height;
+        words = (width * height + 63) >>> 6;
+        for (int b = 0; b < BOARDS; b++) {
+            if (boards[b].length < words) {
+                boards[b] = new long[words];
+            }
+        }
+    }
+
+    /**
+     * Ustawia liczbę graczy. Pola nowych graczy mają nieokreśloną wartość.
+     */
+    void setPlayers(int count) {
+        if (count > playerFields[0].length) {
+            final int capacity = Math.max(count, playerFields[0].length * 2);
+            for (int f = 0; f < PLAYER_FIELDS; f++) {
+                playerFields[f] = Arrays.copyOf(playerFields[f], capacity);
+            }
+        }
+        players = count;
+    }
+
+    /**
+     * Zwraca pole gracza: 0 kolor, 1-4 położenie i poprzednie położenie,
+     * 5 liczba bomb, 6 zasięg, 7 flagi śmierci, 8-9 kierunek ruchu i ostatni
+     * wciśnięty kierunek, 10 początek ruchu, 11 czas śmierci.
+     */
+    long getPlayerField(int id, int field) {
+        return playerFields[field][id];
+    }
+
+    void setPlayerField(int id, int field, long value) {
+        playerFields[field][id] = value;
+    }
+
+    int getEntryCount(int kind) {
+        return entryCount[kind];
+    }
+
+    /**
+     * Ustawia liczbę bomb albo eksplozji. Pola nowych wpisów mają
+     * nieokreśloną wartość.
+     */
+    void setEntryCount(int kind, int count) {
+        final long[][] fields = entryFields[kind];
+        if (count > fields[0].length) {
+            final int capacity = Math.max(count, fields[0].length * 2);
+            for (int f = 0; f < fields.length; f++) {
+                fields[f] = Arrays.copyOf(fields[f], capacity);
+            }
+        }
+        entryCount[kind] = count;
+    }
+
+    long getEntryField(int kind, int i, int field) {
+        return entryFields[kind][field][i];
+    }
+
+    void setEntryField(int kind, int i, int field, long value) {
+        entryFields[kind][field][i] = value;
+    }
+
+    /**
+     * Zwraca liczbę pól wpisu. Dla eksplozji zależy ona od rodzaju, więc
+     * musi on być już ustawiony.
+     */
+    int getFieldCount(int kind, int i) {
+        if (kind == BOMBS) {
+            return BOMB_FIELDS;
+        }
+        return entryFields[kind][0][i] != 0 ? TILE_EXPLOSION_FIELDS : EXPLOSION_FIELDS;
+    }
+
+    boolean sameEntry(int kind, int i, NetState other, int j) {
+        final long[][] fields = entryFields[kind];
+        final long[][] otherFields = other.entryFields[kind];
+        for (int f = 0; f < fields.length; f++) {
+            if (fields[f][i] != otherFields[f][j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void clearEntry(int kind, int i) {
+        final long[][] fields = entryFields[kind];
+        for (int f = 0; f < fields.length; f++) {
+            fields[f][i] = 0;
+        }
+    }
+
+    /**
+     * Kopiuje wpis z innego stanu. Wpis musi już istnieć.
+     */
+    void copyEntry(int kind, int i, NetState from, int j) {
+        final long[][] fields = entryFields[kind];
+        final long[][] fromFields = from.entryFields[kind];
+        for (int f = 0; f < fields.length; f++) {
+            fields[f][i] = fromFields[f][j];
+        }
+    }
+
+    /**
+     * Zwraca rozmiar stanu zapisywanego przez {@link #write(ByteBuffer)}.
+     *
+     * @return Rozmiar w bajtach.
+     */
+    int getSize() {
+        int size = 29 + 8 + BOARDS * 8 * words + 4 + players * 45 + 8
+                + entryCount[BOMBS] * 24;
+        final long[] tile = entryFields[EXPLOSIONS][0];
+        for (int i = 0; i < entryCount[EXPLOSIONS]; i++) {
+            size += tile[i] != 0 ? 17 : 37;
+        }
+        return size;
+    }
+
+    /**
+     * Odczytuje stan zapisany przez
+     * {@link GameController#saveState(ByteBuffer)}.
+     *
+     * @param in Bufor.
+     */
+    void read(ByteBuffer in) {
+        seed = in.getLong();
+        tick = in.getLong();
+        random = in.getLong();
+        gameOver = in.get() != 0;
+        winner = in.getInt();
+
+        final int newWidth = in.getInt();
+        resize(newWidth, in.getInt());
+        for (int b = 0; b < BOARDS; b++) {
+            final long[] board = boards[b];
+            for (int i = 0; i < words; i++) {
+                board[i] = in.getLong();
+            }
+        }
+
+        setPlayers(in.getInt());
+        final long[][] p = playerFields;
+        for (int id = 0; id < players; id++) {
+            p[0][id] = in.get();
+            for (int f = 1; f <= 6; f++) {
+                p[f][id] = in.getInt();
+            }
+            final int dead = in.get();
+            p[7][id] = dead | in.get() << 1;
+            p[8][id] = in.get();
+            p[9][id] = in.get();
+            p[10][id] = in.getLong();
+            p[11][id] = in.getLong();
+        }
+
+        setEntryCount(BOMBS, in.getInt());
+        final long[][] b = entryFields[BOMBS];
+        for (int i = 0; i < entryCount[BOMBS]; i++) {
+            b[0][i] = in.getInt();
+            b[1][i] = in.getInt();
+            b[2][i] = in.getInt();
+            b[4][i] = in.getInt();
+            b[3][i] = in.getLong();
+        }
+
+        setEntryCount(EXPLOSIONS, in.getInt());
+        final long[][] e = entryFields[EXPLOSIONS];
+        for (int i = 0; i < entryCount[EXPLOSIONS]; i++) {
+            e[0][i] = in.get();
+            e[1][i] = in.getInt();
+            e[2][i] = in.getInt();
+            e[3][i] = in.getLong();
+            final int fields = getFieldCount(EXPLOSIONS, i);
+            for (int f = TILE_EXPLOSION_FIELDS; f < EXPLOSION_FIELDS; f++) {
+                e[f][i] = f < fields ? in.getInt() : 0;
+            }
+        }
+    }
+
+    /**
+     * Zapisuje stan w formacie {@link GameController#saveState(ByteBuffer)}.
+     *
+     * @param out Bufor z co najmniej {@link #getSize()} wolnymi bajtami.
+     */
+    void write(ByteBuffer out) {
+        out.putLong(seed);
+        out.putLong(tick);
+        out.putLong(random);
+        out.put((byte) (gameOver ? 1 : 0));
+        out.putInt(winner);
+
+        out.putInt(width);
+        out.putInt(height);
+        for (int b = 0; b < BOARDS; b++) {
+            final long[] board = boards[b];
+            for (int i = 0; i < words; i++) {
+                out.putLong(board[i]);
+            }
+        }
+
+        out.putInt(players);
+        final long[][] p = playerFields;
+        for (int id = 0; id < players; id++) {
+            out.put((byte) p[0][id]);
+            for (int f = 1; f <= 6; f++) {
+                out.putInt((int) p[f][id]);
+            }
+            out.put((byte) (p[7][id] & 1));
+            out.put((byte) (p[7][id] >> 1));
+            out.put((byte) p[8][id]);
+            out.put((byte) p[9][id]);
+            out.putLong(p[10][id]);
+            out.putLong(p[11][id]);
+        }
+
+        out.putInt(entryCount[BOMBS]);
+        final long[][] b = entryFields[BOMBS];
+        for (int i = 0; i < entryCount[BOMBS]; i++) {
+            out.putInt((int) b[0][i]);
+            out.putInt((int) b[1][i]);
+            out.putInt((int) b[2][i]);
+            out.putInt((int) b[4][i]);
+            out.putLong(b[3][i]);
+        }
+
+        out.putInt(entryCount[EXPLOSIONS]);
+        final long[][] e = entryFields[EXPLOSIONS];
+        for (int i = 0; i < entryCount[EXPLOSIONS]; i++) {
+            out.put((byte) e[0][i]);
+            out.putInt((int) e[1][i]);
+            out.putInt((int) e[2][i]);
+            out.putLong(e[3][i]);
+            final int fields = getFieldCount(EXPLOSIONS, i);
+            for (int f = TILE_EXPLOSION_FIELDS; f < fields; f++) {
+                out.putInt((int) e[f][i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package dynablaster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Przesyła pakiety pomiędzy uczestnikami gry sieciowej ponumerowanymi od 0.
+ * Pakiety mogą zostać zgubione, zduplikowane lub dostarczone w innej
+ * kolejności niż zostały wysłane. Żadna z metod nie blokuje.
+ */
+public interface NetTransport extends Closeable {
+
+    /**
+     * Największy rozmiar pakietu w bajtach.
+     */
+    int MAX_PACKET_SIZE = 1400;
+
+    /**
+     * Wysyła pakiet do uczestnika.
+     *
+     * @param peer Numer odbiorcy.
+     * @param packet Bufor z pakietem od pozycji do limitu. Po wysłaniu
+     * pozycja bufora jest równa jego limitowi.
+     * @throws IOException Gdy nie można wysłać pakietu.
+     */
+    void send(int peer, ByteBuffer packet) throws IOException;
+
+    /**
+     * Odbiera jeden oczekujący pakiet.
+     *
+     * @param packet Bufor do którego zapisać pakiet od aktualnej pozycji.
+     * Musi mieć co najmniej {@link #MAX_PACKET_SIZE} wolnych bajtów.
+     * @return Numer nadawcy albo {@code -1} jeśli nie ma oczekujących
+     * pakietów.
+     * @throws IOException Gdy nie można odebrać pakietu.
+     */
+    int receive(ByteBuffer packet) throws IOException;
+}
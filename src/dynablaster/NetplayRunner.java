@@ -0,0 +1,210 @@
+package dynablaster;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Rozgrywa gry sieciowe pomiędzy kilkoma uczestnikami w jednym procesie,
+ * połączonymi przez {@link LoopbackNetwork} z opóźnieniem i gubieniem
+ * pakietów. Gracze sterowani są losowo albo przez {@link Bots}. Czas sieci
+ * płynie tak jak w grze działającej w czasie rzeczywistym, ale gry są
+ * rozgrywane tak szybko jak to możliwe. Po każdej grze sprawdzane jest, czy
+ * wszyscy uczestnicy skończyli ją w tym samym stanie i czy zapis gry
+ * pierwszego uczestnika odtwarza ją tak samo. Mierzony jest najdłuższy krok
+ * sesji, który musi mieścić się w czasie kroku gry.
+ */
+public class NetplayRunner {
+
+    /**
+     * Największa liczba kroków jednej gry, po której gra jest przerywana.
+     */
+    private static final int MAX_TICKS = 60 * 60 * 5;
+
+    private final int peers;
+    private final int latency;
+    private final int jitter;
+    private final double loss;
+    private final int inputDelay;
+    private final boolean bots;
+
+    private final ReplayRecorder recorder = new ReplayRecorder();
+    private final ReplayRunner replayRunner = new ReplayRunner();
+
+    private long rollbacks = 0;
+    private long resimulatedTicks = 0;
+    private long stalls = 0;
+    private long updates = 0;
+    private long updateNanos = 0;
+    private long maxUpdateNanos = 0;
+    private long replayMismatches = 0;
+    private long unfinished = 0;
+
+    /**
+     * @param peers Liczba uczestników.
+     * @param latency Opóźnienie pakietów w jedną stronę w milisekundach.
+     * @param jitter Największe dodatkowe opóźnienie w milisekundach.
+     * @param loss Prawdopodobieństwo zgubienia pakietu.
+     * @param inputDelay Opóźnienie lokalnych poleceń w krokach.
+     * @param bots {@code true} aby wszystkimi graczami sterował komputer.
+     */
+    public NetplayRunner(int peers, int latency, int jitter, double loss,
+            int inputDelay, boolean bots) {
+        this.peers = peers;
+        this.latency = latency;
+        this.jitter = jitter;
+        this.loss = loss;
+        this.inputDelay = inputDelay;
+        this.bots = bots;
+    }
+
+    /**
+     * Rozgrywa jedną grę.
+     *
+     * @param seed Ziarno gry, sieci i ruchów graczy.
+     * @return {@code false} jeśli gra zakończyła się u uczestników w różnym
+     * stanie. Gry przerwane po {@link #MAX_TICKS} krokach i niezgodność
+     * zapisu gry są liczone osobno.
+     */
+    public boolean play(long seed) {
+        final LoopbackNetwork network = new LoopbackNetwork(peers, seed);
+        network.setLatency(latency, jitter);
+        network.setLoss(loss);
+
+        final GameController[] games = new GameController[peers];
+        final RollbackSession[] sessions = new RollbackSession[peers];
+        final GameRandom[] drivers = new GameRandom[peers];
+        for (int i = 0; i < peers; i++) {
+            games[i] = new GameController();
+            for (PlayerColor color : PlayerColor.values()) {
+                games[i].bots.setBot(color, bots);
+            }
+            if (i == 0) {
+                games[i].setRecorder(recorder);
+            }
+            sessions[i] = new RollbackSession(games[i],
+                    network.getTransport(i), i, peers, inputDelay);
+            games[i].newGame(Grid.DEFAULT_WIDTH, Grid.DEFAULT_HEIGHT, seed);
+            drivers[i] = new GameRandom(GameRandom.mix(seed + i + 1));
+        }
+
+        long time = 0;
+        for (int tick = 0; tick < MAX_TICKS && !allConfirmed(sessions); tick++) {
+            time += GameClock.TICK_DURATION;
+            network.setTime(time);
+            for (int i = 0; i < peers; i++) {
+                if (!bots) {
+                    drive(sessions[i], drivers[i], i);
+                }
+
+                final long start = System.nanoTime();
+                sessions[i].update();
+                final long elapsed = System.nanoTime() - start;
+                updates += 1;
+                updateNanos += elapsed;
+                maxUpdateNanos = Math.max(maxUpdateNanos, elapsed);
+            }
+        }
+
+        for (RollbackSession session : sessions) {
+            rollbacks += session.getRollbacks();
+            resimulatedTicks += session.getResimulatedTicks();
+            stalls += session.getStalls();
+        }
+        if (!replayRunner.verify(recorder.finish(games[0]))) {
+            replayMismatches += 1;
+        }
+        if (!allConfirmed(sessions)) {
+            unfinished += 1;
+            return true;
+        }
+        return sameState(games);
+    }
+
+    private void clearStatistics() {
+        rollbacks = 0;
+        resimulatedTicks = 0;
+        stalls = 0;
+        updates = 0;
+        updateNanos = 0;
+        maxUpdateNanos = 0;
+        replayMismatches = 0;
+        unfinished = 0;
+    }
+
+    private static void drive(PlayerCommands session, GameRandom random, int id) {
+        if (random.nextInt(30) == 0) {
+            final Direction[] directions = Direction.values();
+            session.setMovementDirection(id,
+                    directions[random.nextInt(directions.length)]);
+        }
+        if (random.nextInt(60) == 0) {
+            session.placeBomb(id);
+        }
+    }
+
+    private static boolean allConfirmed(RollbackSession[] sessions) {
+        for (RollbackSession session : sessions) {
+            if (!session.isGameEndConfirmed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameState(GameController[] games) {
+        byte[] expected = null;
+        for (GameController game : games) {
+            final ByteBuffer state = ByteBuffer.allocate(game.getStateSize());
+            game.saveState(state);
+            if (expected == null) {
+                expected = state.array();
+            } else if (!Arrays.equals(expected, state.array())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Rozgrywa serię gier sieciowych i wypisuje liczbę niezgodnych gier,
+     * cofnięć i czasy kroków sesji. Jeśli ustawiona jest właściwość systemowa
+     * {@code dynablaster.bots}, graczami sterują {@link Bots}.
+     *
+     * @param args Liczba gier, liczba uczestników, opóźnienie w
+     * milisekundach, procent zgubionych pakietów i opóźnienie lokalnych
+     * poleceń w krokach.
+     */
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        final int matches = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        final int peers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        final int latency = args.length > 2 ? Integer.parseInt(args[2]) : 150;
+        final double loss = args.length > 3 ? Double.parseDouble(args[3]) / 100 : 0.05;
+        final int delay = args.length > 4 ? Integer.parseInt(args[4]) : 2;
+
+        final NetplayRunner runner = new NetplayRunner(peers, latency,
+                latency / 5, loss, delay, Boolean.getBoolean("dynablaster.bots"));
+        // Pierwsza gra rozgrzewa maszynę wirtualną i nie jest liczona.
+        runner.play(0);
+        runner.clearStatistics();
+
+        int mismatches = 0;
+        for (int i = 0; i < matches; i++) {
+            if (!runner.play(GameRandom.mix(i + 1))) {
+                mismatches += 1;
+                System.out.printf("Gra %d: stan uczestników się różni%n", i);
+            }
+        }
+
+        System.out.printf("%d gier, %d uczestników, opóźnienie %d ms, zgubione %.0f%%%n",
+                matches, peers, latency, loss * 100);
+        System.out.printf("Cofnięcia: %d, powtórzone kroki: %d, wstrzymane kroki: %d%n",
+                runner.rollbacks, runner.resimulatedTicks, runner.stalls);
+        System.out.printf("Krok sesji: średnio %.1f us, najdłużej %.1f us (krok gry %d ms)%n",
+                runner.updateNanos / 1e3 / runner.updates,
+                runner.maxUpdateNanos / 1e3, GameClock.TICK_DURATION);
+        System.out.printf("Niezgodne: %d, niezgodne zapisy: %d, nierozstrzygnięte: %d%n",
+                mismatches, runner.replayMismatches, runner.unfinished);
+    }
+}
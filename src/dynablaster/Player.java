@@ -4,75 +4,41 @@ import java.awt.Graphics2D;
 import java.awt.image.ImageObserver;
 
 /**
- * Klasa reprezentująca gracza.
+ * Klasa reprezentująca gracza. Stan gracza przechowywany jest w tablicach
+ * klasy {@link Players}, a obiekt tej klasy odwołuje się do niego przy pomocy
+ * identyfikatora gracza.
  */
 public class Player {
 
-    private static final int PLAYER_SIZE = 23;
+    static final int PLAYER_SIZE = 23;
     private static final int PLAYER_X_OFFSET = 13;
     private static final int PLAYER_Y_OFFSET = 9;
 
     /**
-     * Współrzędna x w pikselach pozycji na której znajduje się gracz.
+     * Czas trwania animacji śmierci gracza.
      */
-    private int drawX;
+    private static final long DEATH_ANIMATION_DURATION = 700;
 
     /**
-     * Współrzędna y w pikselach pozycji na której znajduje się gracz.
+     * Zbiór graczy przechowujący stan tego gracza.
      */
-    private int drawY;
+    private final Players store;
 
     /**
-     * Ilość bomb jaką ten gracz może aktualnie postawić.
+     * Identyfikator gracza będący indeksem jego stanu w tablicach
+     * {@link Players}.
      */
-    private int bombs = 1;
-
-    /**
-     * Maksymalny zasięg bomb postawionych przez tego gracza.
-     */
-    private int bombRange = 1;
-
-    /**
-     * Oznacza czy gracz zginął.
-     */
-    private boolean dead = false;
-
-    /**
-     * Kierunek w którym gracz aktualnie się porusza.
-     */
-    private Direction movementDirection = Direction.NONE;
-
-    /**
-     * Kierónek różny od {@code Direction.NONE} w którym ostatnio poruszał się
-     * gracz.
-     */
-    private Direction latestDir = Direction.DOWN;
-
-    /**
-     * Czas kiedy gracz zaczął się poruszać.
-     */
-    private long movementStart = 0;
-
-    /**
-     * Czas kiedy gracz umarł.
-     */
-    private long deathStart = 0;
-
-    /**
-     * Oznacza czy animacja śmierci się zakończyła.
-     */
-    public boolean hasPlayedDeathAnimation = false;
+    public final int id;
 
     /**
      * Kolor tego gracza.
      */
     public final PlayerColor color;
 
-    public Player(PlayerColor color, int spawnX, int spawnY) {
+    Player(Players store, int id, PlayerColor color) {
+        this.store = store;
+        this.id = id;
         this.color = color;
-
-        drawX = spawnX * Grid.TILE_SIZE;
-        drawY = spawnY * Grid.TILE_SIZE;
     }
 
     /**
@@ -81,7 +47,7 @@ public class Player {
      * @return Współrzędna x.
      */
     public int getX() {
-        return (drawX + Grid.TILE_SIZE / 2) / Grid.TILE_SIZE + 1;
+        return toTile(store.drawX[id]);
     }
 
     /**
@@ -90,7 +56,17 @@ public class Player {
      * @return Współrzędna y.
      */
     public int getY() {
-        return (drawY + Grid.TILE_SIZE / 2) / Grid.TILE_SIZE + 1;
+        return toTile(store.drawY[id]);
+    }
+
+    /**
+     * Zamienia współrzędną gracza w pikselach na współrzędną pola.
+     *
+     * @param drawPos Współrzędna w pikselach.
+     * @return Współrzędna pola.
+     */
+    static int toTile(int drawPos) {
+        return (drawPos + Grid.TILE_SIZE / 2) / Grid.TILE_SIZE + 1;
     }
 
     /**
@@ -99,16 +75,17 @@ public class Player {
      * gdzy zostanie wywołana funkcja {@code update()}.
      *
      * @param dir Kierunek w którym gracz ma się poruszać.
+     * @param now Aktualny czas gry.
      */
-    public void setMovementDirection(Direction dir) {
-        if (dir == movementDirection) {
+    public void setMovementDirection(Direction dir, long now) {
+        if (dir == store.movementDirection[id]) {
             return;
         }
 
-        movementDirection = dir;
+        store.movementDirection[id] = dir;
         if (dir != Direction.NONE) {
-            latestDir = dir;
-            movementStart = System.currentTimeMillis();
+            store.latestDir[id] = dir;
+            store.movementStart[id] = now;
         }
     }
 
@@ -116,32 +93,37 @@ public class Player {
      * Zwiększa zasięg eksplozji bomb stawianych przez tego gracza o 1.
      */
     public void increaseRange() {
-        bombRange += 1;
+        store.bombRange[id] += 1;
     }
 
     /**
-     * Próbuje postawić bombę na podanych współrzędnych
+     * Próbuje zużyć jedną z bomb gracza.
      *
-     * @param bombX Współrzędna x.
-     * @param bombY Współrzędna y.
-     * @return Postawiona bomba albo {@code null} jeśli nie postawiono żadnej
-     * bomby.
+     * @return {@code true} jeśli gracz mógł postawić bombę.
      */
-    public Bomb placeBomb(int bombX, int bombY) {
+    public boolean placeBomb() {
         if (!canPlaceBombs()) {
-            return null;
+            return false;
         }
 
-        Bomb bomb = new Bomb(this, bombX, bombY, bombRange);
-        bombs -= 1;
-        return bomb;
+        store.bombs[id] -= 1;
+        return true;
+    }
+
+    /**
+     * Zwraca zasięg eksplozji bomb stawianych przez tego gracza.
+     *
+     * @return Zasięg eksplozji.
+     */
+    public int getBombRange() {
+        return store.bombRange[id];
     }
 
     /**
      * Zwiększa ilość bomb jaką gracz może postawić o 1.
      */
     public void addBomb() {
-        bombs += 1;
+        store.bombs[id] += 1;
     }
 
     /**
@@ -150,19 +132,22 @@ public class Player {
      * @return {@code true} jeśli gracz może stawiać bomby.
      */
     public boolean canPlaceBombs() {
-        return bombs > 0;
+        return store.bombs[id] > 0;
     }
 
     /**
      * Zabija gracza.
+     *
+     * @param now Aktualny czas gry.
      */
-    public void kill() {
+    public void kill(long now) {
         if (isDead()) {
             return;
         }
 
-        dead = true;
-        deathStart = System.currentTimeMillis();
+        store.dead[id] = true;
+        store.deathStart[id] = now;
+        store.leaveTile(id);
     }
 
     /**
@@ -171,11 +156,21 @@ public class Player {
      * @return {@code true} jeśli gracz został zabity.
      */
     public boolean isDead() {
-        return dead;
+        return store.dead[id];
+    }
+
+    /**
+     * Zwraca czy animacja śmierci gracza się zakończyła.
+     *
+     * @return {@code true} jeśli animacja się zakończyła.
+     */
+    public boolean hasPlayedDeathAnimation() {
+        return store.deathAnimationPlayed[id];
     }
 
-    public void draw(Graphics2D g, ImageObserver observer) {
-        if (isDead() && hasPlayedDeathAnimation) {
+    public void draw(Graphics2D g, ImageObserver observer, long now,
+            float alpha) {
+        if (isDead() && hasPlayedDeathAnimation()) {
             return;
         }
 
@@ -198,16 +193,11 @@ public class Player {
         if (isDead()) {
             offset += 12;
 
-            long now = System.currentTimeMillis();
-            long frame = (now - deathStart) / 100;
-            if (frame >= 7) {
-                hasPlayedDeathAnimation = true;
-                frame = 7;
-            }
+            long frame = Math.min((now - store.deathStart[id]) / 100, 7);
 
             offset += frame;
         } else {
-            switch (latestDir) {
+            switch (store.latestDir[id]) {
                 case RIGHT:
                     offset += 3;
                     break;
@@ -219,48 +209,40 @@ public class Player {
                     break;
             }
 
-            if (movementDirection != Direction.NONE) {
+            if (store.movementDirection[id] != Direction.NONE) {
                 // Animacja ruchu
-                long now = System.currentTimeMillis();
-                long timeOfMovement = (now - movementStart) / 150;
+                long timeOfMovement = (now - store.movementStart[id]) / 150;
                 long frame = timeOfMovement % 3;
 
                 offset += frame;
             }
         }
 
-        int offsetX = offset % 13;
-        int offsetY = offset / 13;
-
-        final int sourceX = offsetX * PLAYER_SIZE + offsetX;
-        final int sourceY = offsetY * PLAYER_SIZE + offsetY;
-        final int width = PLAYER_SIZE;
-        final int height = PLAYER_SIZE;
-
-        final int targetX = drawX + PLAYER_X_OFFSET * Grid.SCALE;
-        final int targetY = drawY + PLAYER_Y_OFFSET * Grid.SCALE;
-        final int targetWidth = width * Grid.SCALE;
-        final int targetHeight = height * Grid.SCALE;
-
-        g.drawImage(Players.IMAGE,
-                targetX,
-                targetY,
-                targetX + targetWidth,
-                targetY + targetHeight,
-                sourceX,
-                sourceY,
-                sourceX + width,
-                sourceY + height,
+        final int x = store.prevDrawX[id]
+                + Math.round((store.drawX[id] - store.prevDrawX[id]) * alpha);
+        final int y = store.prevDrawY[id]
+                + Math.round((store.drawY[id] - store.prevDrawY[id]) * alpha);
+
+        g.drawImage(Sprites.PLAYERS[offset],
+                x + PLAYER_X_OFFSET * Grid.SCALE,
+                y + PLAYER_Y_OFFSET * Grid.SCALE,
                 observer);
     }
 
-    public void update(Grid grid) {
-        if (movementDirection == Direction.NONE || isDead()) {
+    public void update(Grid grid, long now) {
+        if (isDead()) {
+            if (now - store.deathStart[id] >= DEATH_ANIMATION_DURATION) {
+                store.deathAnimationPlayed[id] = true;
+            }
+            return;
+        }
+
+        if (store.movementDirection[id] == Direction.NONE) {
             return;
         }
 
-        int modX = drawX % Grid.TILE_SIZE;
-        int modY = drawY % Grid.TILE_SIZE;
+        int modX = store.drawX[id] % Grid.TILE_SIZE;
+        int modY = store.drawY[id] % Grid.TILE_SIZE;
 
         alignAndMove(grid, getX(), getY(), modX, modY);
     }
@@ -279,11 +261,11 @@ public class Player {
         if (canMoveStraight(grid, tileX, tileY)) {
             // - Wyśrodkuj gracza w osi przeciwnej do osi ruchu
             // - Rozpocznij ruch po wyśrodkowaniu
-            align(!movementDirection.isHorizontal(), false, true);
+            align(!store.movementDirection[id].isHorizontal(), false, true);
             return;
         }
 
-        int mod = movementDirection.isHorizontal() ? modY : modX;
+        int mod = store.movementDirection[id].isHorizontal() ? modY : modX;
 
         final boolean canMoveToLeftSide = mod >= Grid.TILE_SIZE / 2
                 && canMoveToSide(grid, tileX, tileY, Direction.LEFT);
@@ -296,13 +278,13 @@ public class Player {
         if (canMoveToLeftSide || canMoveToRightSide) {
             // - Przesuń gracza w bok
             // - Rozpocznij ruch po wyśrodkowaniu
-            align(!movementDirection.isHorizontal(), true, true);
+            align(!store.movementDirection[id].isHorizontal(), true, true);
             return;
         }
 
         // Wyśrodkuj gracza w kierunku ruch co powoduje że poruszy się on tak
         // aby dotknąć ściany.
-        align(movementDirection.isHorizontal(), false, false);
+        align(store.movementDirection[id].isHorizontal(), false, false);
     }
 
     /**
@@ -315,7 +297,7 @@ public class Player {
      * @return {@code true} jeśli gracz może się poruszyć.
      */
     private boolean canMoveStraight(Grid grid, int tileX, int tileY) {
-        switch (movementDirection) {
+        switch (store.movementDirection[id]) {
             case UP:
                 tileY -= 1;
                 break;
@@ -353,7 +335,7 @@ public class Player {
 
         boolean checkClockwise = side == Direction.RIGHT;
 
-        switch (movementDirection) {
+        switch (store.movementDirection[id]) {
             case UP:
                 tileX += checkClockwise ? 1 : -1;
                 tileY -= 1;
@@ -386,7 +368,7 @@ public class Player {
      */
     private void align(boolean horizontal, boolean reverse,
             boolean moveIfAligned) {
-        int pos = horizontal ? drawX : drawY;
+        int pos = horizontal ? store.drawX[id] : store.drawY[id];
         int mod = pos % Grid.TILE_SIZE;
 
         if (mod == 0) {
@@ -401,15 +383,15 @@ public class Player {
         if (!reverse && mod < Grid.TILE_SIZE / 2
                 || reverse && mod >= Grid.TILE_SIZE / 2) {
             if (horizontal) {
-                drawX -= alignSpeed;
+                store.drawX[id] -= alignSpeed;
             } else {
-                drawY -= alignSpeed;
+                store.drawY[id] -= alignSpeed;
             }
         } else {
             if (horizontal) {
-                drawX += alignSpeed;
+                store.drawX[id] += alignSpeed;
             } else {
-                drawY += alignSpeed;
+                store.drawY[id] += alignSpeed;
             }
         }
     }
@@ -418,18 +400,18 @@ public class Player {
      * Przesuń gracza bez dokonywania żadnych sprawdzeń.
      */
     private void moveInternal() {
-        switch (movementDirection) {
+        switch (store.movementDirection[id]) {
             case UP:
-                drawY -= Grid.SCALE;
+                store.drawY[id] -= Grid.SCALE;
                 break;
             case DOWN:
-                drawY += Grid.SCALE;
+                store.drawY[id] += Grid.SCALE;
                 break;
             case LEFT:
-                drawX -= Grid.SCALE;
+                store.drawX[id] -= Grid.SCALE;
                 break;
             case RIGHT:
-                drawX += Grid.SCALE;
+                store.drawX[id] += Grid.SCALE;
                 break;
             default:
                 break;
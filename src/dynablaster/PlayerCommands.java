@@ -0,0 +1,23 @@
+package dynablaster;
+
+/**
+ * Polecenia wydawane graczom, np. z klawiatury.
+ */
+public interface PlayerCommands {
+
+    /**
+     * Ustawia kierunek ruchu gracza.
+     *
+     * @param id Identyfikator gracza.
+     * @param direction Kierunek ruchu albo {@code Direction.NONE} aby
+     * zatrzymać gracza.
+     */
+    void setMovementDirection(int id, Direction direction);
+
+    /**
+     * Stawia bombę na pozycji gracza.
+     *
+     * @param id Identyfikator gracza.
+     */
+    void placeBomb(int id);
+}
@@ -1,51 +1,433 @@
 package dynablaster;
 
 import java.awt.Graphics2D;
-import java.awt.Image;
-import java.awt.Toolkit;
-import java.awt.event.KeyAdapter;
-import java.awt.event.KeyEvent;
 import java.awt.image.ImageObserver;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashSet;
 
-public class Players extends KeyAdapter {
+public class Players implements InputRing.Handler, PlayerCommands {
 
-    public static Image IMAGE;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final PlayerColor[] COLORS = PlayerColor.values();
+
+    /**
+     * Rozmiar w bajtach zapisanego stanu jednego gracza.
+     */
+    private static final int PLAYER_STATE_SIZE = 45;
 
-    private final HashMap<PlayerColor, Integer> latestKeyPresses = new HashMap<>();
-    private final HashMap<PlayerColor, Player> players = new HashMap<>();
     private final HashSet<PlayerColor> enabledPlayers = new HashSet<>();
 
+    /**
+     * Przypisanie klawiszy do akcji graczy. Może zostać podmienione w trakcie
+     * gry z innego wątku.
+     */
+    private volatile KeyMap keyMap = KeyMap.createDefault();
+
+    /**
+     * Odbiorca poleceń z klawiatury. Domyślnie polecenia są wydawane od razu,
+     * a w grze sieciowej trafiają najpierw do sesji.
+     */
+    private PlayerCommands keyboardTarget = this;
+
+    /**
+     * Identyfikatory graczy sterowanych z klawiatury indeksowane numerem
+     * miejsca albo {@code null} jeśli używane jest {@link #idBySlot}.
+     */
+    private int[] keyboardPlayers;
+
+    /**
+     * Liczba graczy biorących udział w grze. Gracze mają identyfikatory od 0
+     * do {@code count - 1}.
+     */
+    private int count = 0;
+
+    /**
+     * Stan graczy przechowywany w tablicach indeksowanych identyfikatorem
+     * gracza.
+     */
+    Player[] handles = new Player[4];
+
+    /**
+     * Współrzędne w pikselach pozycji na której znajduje się gracz.
+     */
+    int[] drawX = new int[4];
+    int[] drawY = new int[4];
+
+    /**
+     * Pozycja gracza w pikselach przed ostatnim krokiem symulacji, używana do
+     * płynnego rysowania pomiędzy krokami.
+     */
+    int[] prevDrawX = new int[4];
+    int[] prevDrawY = new int[4];
+
+    /**
+     * Ilość bomb jaką gracz może aktualnie postawić.
+     */
+    int[] bombs = new int[4];
+
+    /**
+     * Maksymalny zasięg bomb postawionych przez gracza.
+     */
+    int[] bombRange = new int[4];
+
+    /**
+     * Oznacza czy gracz zginął oraz czy jego animacja śmierci się zakończyła.
+     */
+    boolean[] dead = new boolean[4];
+    boolean[] deathAnimationPlayed = new boolean[4];
+
+    /**
+     * Kierunek w którym gracz aktualnie się porusza oraz ostatni kierunek
+     * różny od {@code Direction.NONE} w którym się poruszał.
+     */
+    Direction[] movementDirection = new Direction[4];
+    Direction[] latestDir = new Direction[4];
+
+    /**
+     * Czas kiedy gracz zaczął się poruszać oraz czas kiedy umarł.
+     */
+    long[] movementStart = new long[4];
+    long[] deathStart = new long[4];
+
+    /**
+     * Kod ostatnio wciśniętego klawisza ruchu gracza albo 0. Zwolnienie
+     * innego klawisza nie zatrzymuje gracza. Stan klawiatury nie jest
+     * częścią zapisywanego stanu gry.
+     */
+    int[] latestKey = new int[4];
+
+    /**
+     * Identyfikatory graczy sterowanych z klawiatury indeksowane numerem
+     * miejsca z {@link KeyMap} albo {@code -1} jeśli miejsce jest wolne.
+     * Miejsca od 0 do 3 zajmują pierwsi gracze każdego koloru, a pozostali
+     * gracze kolejne wolne miejsca.
+     */
+    private int[] idBySlot = new int[PlayerColor.values().length];
+
+    /**
+     * Indeks żyjących graczy na polach planszy. Dla każdego pola zapisany jest
+     * identyfikator pierwszego gracza stojącego na nim, a gracze na tym samym
+     * polu tworzą listę dwukierunkową w {@code nextOnTile} i
+     * {@code prevOnTile}. Gracz jest przenoszony między listami tylko gdy
+     * zmieni pole.
+     */
+    private int[] firstOnTile = new int[0];
+    private int[] nextOnTile = new int[4];
+    private int[] prevOnTile = new int[4];
+    private int[] tileOf = new int[4];
+
     private final GameController controller;
 
     public Players(GameController controller) {
         this.controller = controller;
 
-        final Toolkit toolkit = Toolkit.getDefaultToolkit();
-        IMAGE = toolkit.getImage("res/players.png");
-
         enabledPlayers.add(PlayerColor.WHITE);
         enabledPlayers.add(PlayerColor.GREEN);
         resetPlayers();
     }
 
     public final void resetPlayers() {
-        players.clear();
+        for (int id = 0; id < count; id++) {
+            handles[id] = null;
+        }
+        count = 0;
+        clearIndexes();
+
+        final int farX = controller.grid.getWidth() - 2;
+        final int farY = controller.grid.getHeight() - 2;
 
         if (enabledPlayers.contains(PlayerColor.WHITE)) {
-            players.put(PlayerColor.WHITE, new Player(PlayerColor.WHITE, 0, 0));
+            addPlayer(PlayerColor.WHITE, 1, 1);
         }
-
         if (enabledPlayers.contains(PlayerColor.GREEN)) {
-            players.put(PlayerColor.GREEN, new Player(PlayerColor.GREEN, 10, 10));
+            addPlayer(PlayerColor.GREEN, farX, farY);
         }
         if (enabledPlayers.contains(PlayerColor.RED)) {
-            players.put(PlayerColor.RED, new Player(PlayerColor.RED, 10, 0));
+            addPlayer(PlayerColor.RED, farX, 1);
         }
         if (enabledPlayers.contains(PlayerColor.BLUE)) {
-            players.put(PlayerColor.BLUE, new Player(PlayerColor.BLUE, 0, 10));
+            addPlayer(PlayerColor.BLUE, 1, farY);
+        }
+    }
+
+    /**
+     * Dodaje do gry nowego gracza sterowanego z klawiatury. Pierwszy gracz
+     * danego koloru zajmuje miejsce odpowiadające temu kolorowi.
+     *
+     * @param color Kolor gracza.
+     * @param tileX Współrzędna x pola na którym gracz się pojawi.
+     * @param tileY Współrzędna y pola na którym gracz się pojawi.
+     * @return Dodany gracz.
+     */
+    public Player addPlayer(PlayerColor color, int tileX, int tileY) {
+        if (count == handles.length) {
+            grow(count * 2);
+        }
+
+        final int id = count;
+        count += 1;
+
+        handles[id] = new Player(this, id, color);
+        drawX[id] = (tileX - 1) * Grid.TILE_SIZE;
+        drawY[id] = (tileY - 1) * Grid.TILE_SIZE;
+        prevDrawX[id] = drawX[id];
+        prevDrawY[id] = drawY[id];
+        bombs[id] = 1;
+        bombRange[id] = 1;
+        dead[id] = false;
+        deathAnimationPlayed[id] = false;
+        movementDirection[id] = Direction.NONE;
+        latestDir[id] = Direction.DOWN;
+        movementStart[id] = 0;
+        deathStart[id] = 0;
+        latestKey[id] = 0;
+
+        final int slot = findFreeSlot(color);
+        idBySlot[slot] = id;
+
+        tileOf[id] = -1;
+        enterTile(id, tileX + tileY * controller.grid.getWidth());
+
+        controller.grid.clearSpawn(tileX, tileY);
+        return handles[id];
+    }
+
+    /**
+     * Czyści indeks graczy na polach planszy i przypisanie graczy do miejsc
+     * z {@link KeyMap}.
+     */
+    private void clearIndexes() {
+        Arrays.fill(idBySlot, -1);
+
+        final int tiles = controller.grid.getWidth() * controller.grid.getHeight();
+        if (firstOnTile.length != tiles) {
+            firstOnTile = new int[tiles];
         }
+        Arrays.fill(firstOnTile, -1);
+    }
+
+    /**
+     * Zwraca rozmiar w bajtach stanu graczy zapisywanego przez
+     * {@link #saveState(ByteBuffer)}.
+     *
+     * @return Rozmiar stanu.
+     */
+    int getStateSize() {
+        return 4 + count * PLAYER_STATE_SIZE;
+    }
+
+    /**
+     * Zapisuje stan wszystkich graczy.
+     *
+     * @param out Bufor do którego zapisać stan.
+     */
+    void saveState(ByteBuffer out) {
+        out.putInt(count);
+        for (int id = 0; id < count; id++) {
+            out.put((byte) handles[id].color.ordinal());
+            out.putInt(drawX[id]);
+            out.putInt(drawY[id]);
+            out.putInt(prevDrawX[id]);
+            out.putInt(prevDrawY[id]);
+            out.putInt(bombs[id]);
+            out.putInt(bombRange[id]);
+            out.put((byte) (dead[id] ? 1 : 0));
+            out.put((byte) (deathAnimationPlayed[id] ? 1 : 0));
+            out.put((byte) movementDirection[id].ordinal());
+            out.put((byte) latestDir[id].ordinal());
+            out.putLong(movementStart[id]);
+            out.putLong(deathStart[id]);
+        }
+    }
+
+    /**
+     * Przywraca stan graczy zapisany przez {@link #saveState(ByteBuffer)}.
+     * Plansza musi mieć już przywrócony rozmiar. Obiekty graczy są używane
+     * ponownie jeśli gracz o danym identyfikatorze ma ten sam kolor, a indeks
+     * graczy na polach jest budowany od nowa.
+     *
+     * @param in Bufor z którego odczytać stan.
+     */
+    void restoreState(ByteBuffer in) {
+        final int newCount = in.getInt();
+        if (newCount > handles.length) {
+            grow(Math.max(newCount, handles.length * 2));
+        }
+        for (int id = newCount; id < count; id++) {
+            handles[id] = null;
+        }
+        count = newCount;
+        clearIndexes();
+
+        final int width = controller.grid.getWidth();
+        for (int id = 0; id < count; id++) {
+            final PlayerColor color = COLORS[in.get()];
+            if (handles[id] == null || handles[id].color != color) {
+                handles[id] = new Player(this, id, color);
+            }
+
+            drawX[id] = in.getInt();
+            drawY[id] = in.getInt();
+            prevDrawX[id] = in.getInt();
+            prevDrawY[id] = in.getInt();
+            bombs[id] = in.getInt();
+            bombRange[id] = in.getInt();
+            dead[id] = in.get() != 0;
+            deathAnimationPlayed[id] = in.get() != 0;
+            movementDirection[id] = DIRECTIONS[in.get()];
+            latestDir[id] = DIRECTIONS[in.get()];
+            movementStart[id] = in.getLong();
+            deathStart[id] = in.getLong();
+
+            final int slot = findFreeSlot(color);
+            idBySlot[slot] = id;
+
+            tileOf[id] = -1;
+            if (!dead[id]) {
+                enterTile(id, Player.toTile(drawX[id])
+                        + Player.toTile(drawY[id]) * width);
+            }
+        }
+    }
+
+    private void grow(int capacity) {
+        handles = Arrays.copyOf(handles, capacity);
+        drawX = Arrays.copyOf(drawX, capacity);
+        drawY = Arrays.copyOf(drawY, capacity);
+        prevDrawX = Arrays.copyOf(prevDrawX, capacity);
+        prevDrawY = Arrays.copyOf(prevDrawY, capacity);
+        bombs = Arrays.copyOf(bombs, capacity);
+        bombRange = Arrays.copyOf(bombRange, capacity);
+        dead = Arrays.copyOf(dead, capacity);
+        deathAnimationPlayed = Arrays.copyOf(deathAnimationPlayed, capacity);
+        movementDirection = Arrays.copyOf(movementDirection, capacity);
+        latestDir = Arrays.copyOf(latestDir, capacity);
+        movementStart = Arrays.copyOf(movementStart, capacity);
+        deathStart = Arrays.copyOf(deathStart, capacity);
+        latestKey = Arrays.copyOf(latestKey, capacity);
+        nextOnTile = Arrays.copyOf(nextOnTile, capacity);
+        prevOnTile = Arrays.copyOf(prevOnTile, capacity);
+        tileOf = Arrays.copyOf(tileOf, capacity);
+    }
+
+    private int findFreeSlot(PlayerColor color) {
+        if (idBySlot[color.ordinal()] == -1) {
+            return color.ordinal();
+        }
+
+        int slot = PlayerColor.values().length;
+        while (slot < idBySlot.length && idBySlot[slot] != -1) {
+            slot++;
+        }
+        if (slot == idBySlot.length) {
+            idBySlot = Arrays.copyOf(idBySlot, slot * 2);
+            Arrays.fill(idBySlot, slot, idBySlot.length, -1);
+        }
+        return slot;
+    }
+
+    /**
+     * Dopisuje gracza do listy graczy na podanym polu.
+     */
+    private void enterTile(int id, int pos) {
+        final int first = firstOnTile[pos];
+        nextOnTile[id] = first;
+        prevOnTile[id] = -1;
+        if (first != -1) {
+            prevOnTile[first] = id;
+        }
+        firstOnTile[pos] = id;
+        tileOf[id] = pos;
+    }
+
+    /**
+     * Usuwa gracza z listy graczy na polu na którym się znajduje.
+     *
+     * @param id Identyfikator gracza.
+     */
+    void leaveTile(int id) {
+        final int pos = tileOf[id];
+        if (pos == -1) {
+            return;
+        }
+
+        final int next = nextOnTile[id];
+        final int prev = prevOnTile[id];
+        if (prev == -1) {
+            firstOnTile[pos] = next;
+        } else {
+            nextOnTile[prev] = next;
+        }
+        if (next != -1) {
+            prevOnTile[next] = prev;
+        }
+        tileOf[id] = -1;
+    }
+
+    /**
+     * Przenosi gracza na listę pola na którym aktualnie stoi, jeśli zmienił
+     * pole.
+     */
+    private void updateTile(int id, int width) {
+        if (dead[id]) {
+            return;
+        }
+
+        final int pos = Player.toTile(drawX[id]) + Player.toTile(drawY[id]) * width;
+        if (pos != tileOf[id]) {
+            leaveTile(id);
+            enterTile(id, pos);
+        }
+    }
+
+    /**
+     * Zwraca identyfikator pierwszego żyjącego gracza znajdującego się na
+     * podanym polu. Kolejnych graczy na tym samym polu można uzyskać przy
+     * pomocy {@link #nextPlayerOnTile(int)}.
+     *
+     * @param x Współrzędna x.
+     * @param y Współrzędna y.
+     * @return Identyfikator gracza albo {@code -1} jeśli pole jest puste.
+     */
+    public int firstPlayerAt(int x, int y) {
+        return firstOnTile[x + y * controller.grid.getWidth()];
+    }
+
+    /**
+     * Zwraca kolejnego gracza znajdującego się na tym samym polu co podany
+     * gracz.
+     *
+     * @param id Identyfikator gracza zwrócony przez
+     * {@link #firstPlayerAt(int, int)} lub tę metodę.
+     * @return Identyfikator gracza albo {@code -1} jeśli na polu nie ma więcej
+     * graczy.
+     */
+    public int nextPlayerOnTile(int id) {
+        return nextOnTile[id];
+    }
+
+    /**
+     * Zwraca liczbę graczy biorących udział w grze.
+     *
+     * @return Liczba graczy.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Zwraca gracza o podanym identyfikatorze.
+     *
+     * @param id Identyfikator gracza.
+     * @return Gracz.
+     */
+    public Player getPlayer(int id) {
+        return handles[id];
+    }
+
+    public boolean isPlayerEnabled(PlayerColor playerColor) {
+        return enabledPlayers.contains(playerColor);
     }
 
     public void setPlayerEnabled(PlayerColor playerColor, boolean selected) {
@@ -56,124 +438,75 @@ public class Players extends KeyAdapter {
         }
     }
 
+    public KeyMap getKeyMap() {
+        return keyMap;
+    }
+
+    /**
+     * Zmienia przypisanie klawiszy. Może być wywoływane w trakcie gry.
+     *
+     * @param keyMap Nowe przypisanie klawiszy.
+     */
+    public void setKeyMap(KeyMap keyMap) {
+        this.keyMap = keyMap;
+    }
+
+    /**
+     * Przekierowuje polecenia z klawiatury do podanego odbiorcy.
+     *
+     * @param target Odbiorca poleceń albo {@code null} aby wydawać je
+     * graczom od razu.
+     * @param playersBySlot Identyfikatory graczy sterowanych kolejnymi
+     * miejscami z {@link KeyMap} (lub {@code -1}) albo {@code null} aby
+     * przypisać miejsca według kolorów graczy.
+     */
+    public void setKeyboardTarget(PlayerCommands target, int[] playersBySlot) {
+        keyboardTarget = target != null ? target : this;
+        keyboardPlayers = playersBySlot;
+    }
+
     @Override
-    public void keyPressed(KeyEvent e) {
-        switch (e.getKeyCode()) {
-            // WHITE
-            case KeyEvent.VK_UP:
-                setMovementDirection(PlayerColor.WHITE, Direction.UP, e.getKeyCode());
-                break;
-            case KeyEvent.VK_DOWN:
-                setMovementDirection(PlayerColor.WHITE, Direction.DOWN, e.getKeyCode());
-                break;
-            case KeyEvent.VK_LEFT:
-                setMovementDirection(PlayerColor.WHITE, Direction.LEFT, e.getKeyCode());
-                break;
-            case KeyEvent.VK_RIGHT:
-                setMovementDirection(PlayerColor.WHITE, Direction.RIGHT, e.getKeyCode());
-                break;
-            case KeyEvent.VK_SPACE:
-            case KeyEvent.VK_CONTROL:
-                placeBomb(PlayerColor.WHITE);
-                break;
-
-            // GREEN
-            case KeyEvent.VK_W:
-                setMovementDirection(PlayerColor.GREEN, Direction.UP, e.getKeyCode());
-                break;
-            case KeyEvent.VK_S:
-                setMovementDirection(PlayerColor.GREEN, Direction.DOWN, e.getKeyCode());
-                break;
-            case KeyEvent.VK_A:
-                setMovementDirection(PlayerColor.GREEN, Direction.LEFT, e.getKeyCode());
-                break;
-            case KeyEvent.VK_D:
-                setMovementDirection(PlayerColor.GREEN, Direction.RIGHT, e.getKeyCode());
-                break;
-            case KeyEvent.VK_Q:
-            case KeyEvent.VK_E:
-                placeBomb(PlayerColor.GREEN);
-                break;
-
-            // RED
-            case KeyEvent.VK_I:
-                setMovementDirection(PlayerColor.RED, Direction.UP, e.getKeyCode());
-                break;
-            case KeyEvent.VK_K:
-                setMovementDirection(PlayerColor.RED, Direction.DOWN, e.getKeyCode());
-                break;
-            case KeyEvent.VK_J:
-                setMovementDirection(PlayerColor.RED, Direction.LEFT, e.getKeyCode());
-                break;
-            case KeyEvent.VK_L:
-                setMovementDirection(PlayerColor.RED, Direction.RIGHT, e.getKeyCode());
-                break;
-            case KeyEvent.VK_U:
-            case KeyEvent.VK_O:
-                placeBomb(PlayerColor.RED);
-                break;
-
-            // BLUE
-            case KeyEvent.VK_NUMPAD8:
-                setMovementDirection(PlayerColor.BLUE, Direction.UP, e.getKeyCode());
-                break;
-            case KeyEvent.VK_NUMPAD2:
-                setMovementDirection(PlayerColor.BLUE, Direction.DOWN, e.getKeyCode());
-                break;
-            case KeyEvent.VK_NUMPAD4:
-                setMovementDirection(PlayerColor.BLUE, Direction.LEFT, e.getKeyCode());
-                break;
-            case KeyEvent.VK_NUMPAD6:
-                setMovementDirection(PlayerColor.BLUE, Direction.RIGHT, e.getKeyCode());
-                break;
-            case KeyEvent.VK_NUMPAD5:
-            case KeyEvent.VK_NUMPAD0:
-                placeBomb(PlayerColor.BLUE);
-                break;
-
-            default:
-                break;
+    public void keyPressed(int keyCode) {
+        final int binding = keyMap.get(keyCode);
+        final int id = getBoundPlayer(binding);
+        if (id == -1) {
+            return;
+        }
+
+        final KeyMap.Action action = KeyMap.actionOf(binding);
+        if (action == KeyMap.Action.BOMB) {
+            keyboardTarget.placeBomb(id);
+        } else {
+            keyboardTarget.setMovementDirection(id, action.direction);
+            latestKey[id] = keyCode;
         }
     }
 
     @Override
-    public void keyReleased(KeyEvent e) {
-        switch (e.getKeyCode()) {
-            // WHITE
-            case KeyEvent.VK_UP:
-            case KeyEvent.VK_DOWN:
-            case KeyEvent.VK_LEFT:
-            case KeyEvent.VK_RIGHT:
-                setMovementDirection(PlayerColor.WHITE, Direction.NONE, e.getKeyCode());
-                break;
-
-            // GREEN
-            case KeyEvent.VK_W:
-            case KeyEvent.VK_S:
-            case KeyEvent.VK_A:
-            case KeyEvent.VK_D:
-                setMovementDirection(PlayerColor.GREEN, Direction.NONE, e.getKeyCode());
-                break;
-
-            // RED
-            case KeyEvent.VK_I:
-            case KeyEvent.VK_K:
-            case KeyEvent.VK_J:
-            case KeyEvent.VK_L:
-                setMovementDirection(PlayerColor.RED, Direction.NONE, e.getKeyCode());
-                break;
-
-            // BLUE
-            case KeyEvent.VK_NUMPAD8:
-            case KeyEvent.VK_NUMPAD2:
-            case KeyEvent.VK_NUMPAD4:
-            case KeyEvent.VK_NUMPAD6:
-                setMovementDirection(PlayerColor.BLUE, Direction.NONE, e.getKeyCode());
-                break;
-
-            default:
-                break;
+    public void keyReleased(int keyCode) {
+        final int binding = keyMap.get(keyCode);
+        final int id = getBoundPlayer(binding);
+        if (id == -1 || KeyMap.actionOf(binding) == KeyMap.Action.BOMB) {
+            return;
+        }
+
+        if (latestKey[id] == keyCode) {
+            keyboardTarget.setMovementDirection(id, Direction.NONE);
+        }
+    }
+
+    /**
+     * Zwraca identyfikator gracza sterowanego przypisanym klawiszem albo
+     * {@code -1}.
+     */
+    private int getBoundPlayer(int binding) {
+        if (binding == KeyMap.NONE) {
+            return -1;
         }
+
+        final int slot = KeyMap.slotOf(binding);
+        final int[] ids = keyboardPlayers != null ? keyboardPlayers : idBySlot;
+        return slot < ids.length ? ids[slot] : -1;
     }
 
     /**
@@ -183,79 +516,104 @@ public class Players extends KeyAdapter {
      * @param y Współrzędna y.
      */
     public void killAt(int x, int y) {
-        for (Player player : players.values()) {
-            if (player.getX() == x && player.getY() == y) {
-                player.kill();
-            }
+        final long now = controller.clock.now();
+        int id = firstPlayerAt(x, y);
+        while (id != -1) {
+            // Zabity gracz jest usuwany z listy.
+            final int next = nextOnTile[id];
+            handles[id].kill(now);
+            id = next;
         }
     }
 
-    public void draw(Graphics2D g, ImageObserver observer) {
-        for (Player player : players.values()) {
-            player.draw(g, observer);
+    /**
+     * Rysuje graczy.
+     *
+     * @param g Obiekt na którym rysować.
+     * @param observer Obserwator wczytywania obrazów.
+     * @param alpha Część czasu kroku symulacji jaka upłynęła od ostatniego
+     * kroku, od 0 do 1. Gracze rysowani są pomiędzy pozycją sprzed kroku i po
+     * nim.
+     */
+    public void draw(Graphics2D g, ImageObserver observer, float alpha) {
+        final long now = controller.clock.now();
+        for (int id = 0; id < count; id++) {
+            handles[id].draw(g, observer, now, alpha);
         }
     }
 
     public void update() {
-        for (Player player : players.values()) {
+        final long now = controller.clock.now();
+        final Grid grid = controller.grid;
+        final int width = grid.getWidth();
+
+        System.arraycopy(drawX, 0, prevDrawX, 0, count);
+        System.arraycopy(drawY, 0, prevDrawY, 0, count);
+
+        for (int id = 0; id < count; id++) {
+            final Player player = handles[id];
             if (controller.bombs.hasEnteredExplosion(player)) {
-                player.kill();
+                player.kill(now);
             }
-            player.update(controller.grid);
-            controller.grid.collectPowerup(player);
+            player.update(grid, now);
+            updateTile(id, width);
+            grid.collectPowerup(player);
         }
-
-        checkWinner();
     }
 
-    private void setMovementDirection(PlayerColor color, Direction direction,
-            int keyCode) {
-        Player player = players.get(color);
-        if (player == null) {
+    /**
+     * Ustawia kierunek ruchu gracza.
+     *
+     * @param id Identyfikator gracza.
+     * @param direction Kierunek ruchu albo {@code Direction.NONE} aby
+     * zatrzymać gracza.
+     */
+    @Override
+    public void setMovementDirection(int id, Direction direction) {
+        if (movementDirection[id] == direction) {
             return;
         }
 
-        if (direction == Direction.NONE) {
-            if (latestKeyPresses.getOrDefault(color, 0) == keyCode) {
-                player.setMovementDirection(direction);
-            }
-        } else {
-            player.setMovementDirection(direction);
-            latestKeyPresses.put(color, keyCode);
-        }
+        controller.movementDirectionChanged(id, direction);
+        handles[id].setMovementDirection(direction, controller.clock.now());
     }
 
-    private void placeBomb(PlayerColor color) {
-        Player player = players.get(color);
-        if (player == null || player.isDead()) {
+    /**
+     * Stawia bombę na pozycji gracza.
+     *
+     * @param id Identyfikator gracza.
+     */
+    @Override
+    public void placeBomb(int id) {
+        if (dead[id]) {
             return;
         }
 
-        int x = player.getX();
-        int y = player.getY();
-
-        controller.bombs.placeBomb(player, x, y);
+        controller.bombPlaced(id);
+        final Player player = handles[id];
+        controller.bombs.placeBomb(player, player.getX(), player.getY());
     }
 
     /**
-     * Sprawdza czy ktoś wygrał.
+     * Sprawdza czy ktoś wygrał. Wywoływane po każdym ruchu graczy.
      */
-    private void checkWinner() {
-        Player lastAlivePlayer = null;
+    void checkWinner() {
+        int lastAlivePlayer = -1;
         int alivePlayersCount = 0;
 
-        for (Player player : players.values()) {
-            if (!player.isDead()) {
+        for (int id = 0; id < count; id++) {
+            if (!dead[id]) {
                 alivePlayersCount += 1;
                 if (alivePlayersCount > 1) {
                     return;
                 }
-                lastAlivePlayer = player;
-            } else if (!player.hasPlayedDeathAnimation) {
+                lastAlivePlayer = id;
+            } else if (!deathAnimationPlayed[id]) {
                 return;
             }
         }
 
-        controller.announceWinner(lastAlivePlayer);
+        controller.announceWinner(
+                lastAlivePlayer == -1 ? null : handles[lastAlivePlayer]);
     }
 }
@@ -0,0 +1,262 @@
+package dynablaster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Zapis przebiegu gry: ziarno, rozmiar planszy, lista graczy oraz polecenia
+ * wydane graczom w kolejnych krokach symulacji. Gra jest deterministyczna,
+ * więc odtworzenie poleceń z tym samym ziarnem daje ten sam przebieg gry.
+ *
+ * Polecenia zapisane są jako ciąg liczb o zmiennej długości (po 7 bitów w
+ * bajcie). Każde polecenie to różnica chwili wydania względem poprzedniego
+ * polecenia oraz numer gracza razem z kodem polecenia, więc zwykle zajmuje
+ * dwa bajty.
+ *
+ * Chwila wydania polecenia to numer kroku pomnożony przez 2, powiększony o 1
+ * jeśli polecenie wydano pomiędzy krokami, a nie na początku kroku (np.
+ * przez obiekt sterujący graczami w {@link MatchRunner}).
+ */
+public class Replay {
+
+    private static final int MAGIC = 0x44425250;
+    private static final int VERSION = 1;
+
+    /**
+     * Największy rozmiar planszy przyjmowany przy odczycie, aby błędny plik
+     * nie powodował zajęcia całej pamięci.
+     */
+    private static final int MAX_GRID_SIZE = 1 << 12;
+
+    /**
+     * Największy rozmiar nagłówka zapisu w bajtach.
+     */
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 1 + 1
+            + 4 * Varint.MAX_SIZE;
+
+    /**
+     * Kod polecenia postawienia bomby. Mniejsze kody to numery kierunków
+     * ruchu.
+     */
+    static final int BOMB = 5;
+    static final int COMMAND_BITS = 3;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    public static final int RESULT_UNFINISHED = 0;
+    public static final int RESULT_DRAW = 1;
+
+    /**
+     * Wynik gry, w której wygrał gracz pierwszego koloru. Kolejne kolory mają
+     * kolejne wartości.
+     */
+    public static final int RESULT_WIN = 2;
+
+    public final long seed;
+    public final int width;
+    public final int height;
+
+    /**
+     * Gracze biorący udział w grze jako maska bitowa indeksowana kolorem.
+     */
+    public final int players;
+
+    /**
+     * Numer ostatniego kroku gry.
+     */
+    public final long endTick;
+
+    /**
+     * Wynik gry: {@link #RESULT_UNFINISHED}, {@link #RESULT_DRAW} albo
+     * {@link #RESULT_WIN} powiększony o numer koloru zwycięzcy.
+     */
+    public final int result;
+
+    final byte[] commands;
+
+    Replay(long seed, int width, int height, int players, long endTick,
+            int result, byte[] commands) {
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        this.players = players;
+        this.endTick = endTick;
+        this.result = result;
+        this.commands = commands;
+    }
+
+    /**
+     * Zwraca wynik zakończonej lub przerwanej gry.
+     *
+     * @param game Gra.
+     * @return Wynik gry w postaci takiej jak {@link #result}.
+     */
+    public static int resultOf(GameController game) {
+        if (!game.isGameOver()) {
+            return RESULT_UNFINISHED;
+        }
+        if (game.getWinner() == null) {
+            return RESULT_DRAW;
+        }
+        return RESULT_WIN + game.getWinner().color.ordinal();
+    }
+
+    public boolean isPlayerEnabled(PlayerColor color) {
+        return (players & 1 << color.ordinal()) != 0;
+    }
+
+    /**
+     * Zwraca rozmiar zapisanych poleceń w bajtach.
+     *
+     * @return Rozmiar poleceń.
+     */
+    public int getCommandsSize() {
+        return commands.length;
+    }
+
+    public void write(OutputStream stream) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.put((byte) VERSION);
+        header.putLong(seed);
+        Varint.put(header, width);
+        Varint.put(header, height);
+        header.put((byte) players);
+        Varint.put(header, endTick);
+        header.put((byte) result);
+        Varint.put(header, commands.length);
+
+        stream.write(header.array(), 0, header.position());
+        stream.write(commands);
+        stream.flush();
+    }
+
+    /**
+     * Odczytuje zapis gry. Strumień jest czytany do końca.
+     *
+     * @param stream Strumień danych.
+     * @return Odczytany zapis.
+     * @throws IOException Gdy nie można odczytać danych lub nie są one
+     * zapisem gry.
+     */
+    public static Replay read(InputStream stream) throws IOException {
+        final ByteBuffer in = ByteBuffer.wrap(readAll(stream));
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a replay file");
+            }
+            final int version = in.get() & 0xFF;
+            if (version != VERSION) {
+                throw new IOException("Unsupported replay version " + version);
+            }
+
+            final long seed = in.getLong();
+            final long width = Varint.get(in);
+            final long height = Varint.get(in);
+            if (!isValidSize(width) || !isValidSize(height)) {
+                throw new IOException("Invalid grid size " + width + "x" + height);
+            }
+            final int players = in.get() & 0xFF;
+            final long endTick = Varint.get(in);
+            final int result = in.get() & 0xFF;
+            final long length = Varint.get(in);
+            if (length < 0 || length > in.remaining()) {
+                throw new IOException("Truncated replay file");
+            }
+            final byte[] commands = new byte[(int) length];
+            in.get(commands);
+
+            return new Replay(seed, (int) width, (int) height, players,
+                    endTick, result, commands);
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Truncated replay file");
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Sprawdza czy odczytany rozmiar planszy jest poprawny dla
+     * {@link Grid#newGame(int, int)}.
+     */
+    private static boolean isValidSize(long size) {
+        return size >= Grid.MIN_SIZE && size <= MAX_GRID_SIZE && size % 2 == 1;
+    }
+
+    private static byte[] readAll(InputStream stream) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] chunk = new byte[4096];
+        int read;
+        while ((read = stream.read(chunk)) != -1) {
+            out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    public void save(File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(file))) {
+            write(out);
+        }
+    }
+
+    public static Replay load(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(
+                new FileInputStream(file))) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Odtwarza polecenia zapisu gry we właściwych chwilach.
+     */
+    static class Playback {
+
+        private final ByteBuffer commands;
+        private long nextTime = 0;
+
+        Playback(Replay replay) {
+            this.commands = ByteBuffer.wrap(replay.commands);
+            readNextTime();
+        }
+
+        /**
+         * Wydaje graczom polecenia zapisane do podanej chwili włącznie.
+         *
+         * @param players Gracze.
+         * @param time Chwila gry w postaci opisanej w {@link Replay}.
+         */
+        void apply(Players players, long time) {
+            while (commands.hasRemaining() && nextTime <= time) {
+                final int command = (int) Varint.get(commands);
+                final int id = command >>> COMMAND_BITS;
+                final int code = command & ((1 << COMMAND_BITS) - 1);
+
+                if (id < players.getCount()) {
+                    if (code == BOMB) {
+                        players.placeBomb(id);
+                    } else if (code < DIRECTIONS.length) {
+                        players.setMovementDirection(id, DIRECTIONS[code]);
+                    }
+                }
+                readNextTime();
+            }
+        }
+
+        private void readNextTime() {
+            if (commands.hasRemaining()) {
+                nextTime += Varint.get(commands);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package dynablaster;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Zapisuje polecenia wydawane graczom w trakcie gry. Bufor poleceń jest
+ * używany ponownie w kolejnych grach.
+ */
+public class ReplayRecorder {
+
+    private long seed;
+    private int width;
+    private int height;
+    private int players;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(1024);
+    private long lastTime = 0;
+
+    /**
+     * Rozpoczyna zapis nowej gry. Wywoływane po jej rozpoczęciu.
+     *
+     * @param game Rozpoczęta gra.
+     */
+    void start(GameController game) {
+        seed = game.getSeed();
+        width = game.grid.getWidth();
+        height = game.grid.getHeight();
+        players = 0;
+        for (PlayerColor color : PlayerColor.values()) {
+            if (game.players.isPlayerEnabled(color)) {
+                players |= 1 << color.ordinal();
+            }
+        }
+
+        buffer.clear();
+        lastTime = 0;
+    }
+
+    /**
+     * Zapisuje zmianę kierunku ruchu gracza.
+     *
+     * @param time Chwila gry w postaci opisanej w {@link Replay}.
+     * @param id Identyfikator gracza.
+     * @param direction Nowy kierunek ruchu.
+     */
+    void movementDirectionChanged(long time, int id, Direction direction) {
+        record(time, id, direction.ordinal());
+    }
+
+    /**
+     * Zapisuje postawienie bomby przez gracza.
+     *
+     * @param time Chwila gry w postaci opisanej w {@link Replay}.
+     * @param id Identyfikator gracza.
+     */
+    void bombPlaced(long time, int id) {
+        record(time, id, Replay.BOMB);
+    }
+
+    private void record(long time, int id, int code) {
+        if (buffer.remaining() < 2 * Varint.MAX_SIZE) {
+            final ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+
+        Varint.put(buffer, time - lastTime);
+        Varint.put(buffer, (long) id << Replay.COMMAND_BITS | code);
+        lastTime = time;
+    }
+
+    /**
+     * Kończy zapis gry. Może być wywołane również dla gry, która się jeszcze
+     * nie zakończyła.
+     *
+     * @param game Zapisywana gra.
+     * @return Zapis gry.
+     */
+    public Replay finish(GameController game) {
+        return new Replay(seed, width, height, players, game.clock.getTick(),
+                Replay.resultOf(game), Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+}
@@ -0,0 +1,91 @@
+package dynablaster;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Odtwarza zapisy gier bez interfejsu graficznego, tak szybko jak to możliwe,
+ * i sprawdza czy kończą się tak samo jak zapisane gry.
+ */
+public class ReplayRunner {
+
+    private final GameController game = new GameController();
+
+    /**
+     * Odtwarza zapis gry do ostatniego zapisanego kroku.
+     *
+     * @param replay Zapis gry.
+     * @return Gra w stanie po odtworzeniu zapisu.
+     */
+    public GameController play(Replay replay) {
+        game.play(replay);
+        while (!game.isGameOver() && game.clock.getTick() < replay.endTick) {
+            game.update();
+        }
+        return game;
+    }
+
+    /**
+     * Sprawdza czy odtworzona gra zakończyła się tak samo jak zapisana.
+     *
+     * @param replay Zapis gry.
+     * @return {@code true} jeśli wynik i liczba kroków się zgadzają.
+     */
+    public boolean verify(Replay replay) {
+        play(replay);
+        return Replay.resultOf(game) == replay.result
+                && game.clock.getTick() == replay.endTick;
+    }
+
+    /**
+     * Odtwarza podane zapisy gier (lub wszystkie zapisy z podanych katalogów),
+     * zlicza ich wyniki i wypisuje zapisy, których przebieg się nie zgadza.
+     *
+     * @param args Pliki lub katalogi z zapisami gier.
+     * @throws IOException Gdy nie można odczytać zapisu.
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        final List<File> files = new ArrayList<>();
+        for (String arg : args) {
+            final File file = new File(arg);
+            final File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                files.addAll(Arrays.asList(children));
+            } else {
+                files.add(file);
+            }
+        }
+
+        final ReplayRunner runner = new ReplayRunner();
+        final MatchRunner.Results results = new MatchRunner.Results();
+        int mismatches = 0;
+
+        final long start = System.nanoTime();
+        for (File file : files) {
+            final Replay replay = Replay.load(file);
+            if (!runner.verify(replay)) {
+                mismatches += 1;
+                System.out.printf("%s: zapisany wynik %d w kroku %d, odtworzony %d w kroku %d%n",
+                        file, replay.result, replay.endTick,
+                        Replay.resultOf(runner.game), runner.game.clock.getTick());
+            }
+            results.add(runner.game);
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d replays in %.2f s (%.0f ticks/s)%n",
+                results.matches, seconds, results.ticks / seconds);
+        for (PlayerColor color : PlayerColor.values()) {
+            System.out.printf("%s: %d%n", color.getPlayerName(),
+                    results.wins[color.ordinal()]);
+        }
+        System.out.printf("Remisy: %d, nierozstrzygnięte: %d, niezgodne: %d%n",
+                results.draws, results.timeouts, mismatches);
+    }
+}
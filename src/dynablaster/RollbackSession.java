@@ -0,0 +1,640 @@
+package dynablaster;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Gra sieciowa bez serwera. Każdy uczestnik symuluje całą grę u siebie i
+ * steruje jednym graczem: uczestnik o numerze {@code n} graczem o
+ * identyfikatorze {@code n}.
+ *
+ * Uczestnicy wymieniają polecenia wydane graczom w kolejnych krokach gry.
+ * Sesja nie czeka na polecenia pozostałych uczestników, tylko zakłada, że nie
+ * wydali nowych poleceń, czyli że ich gracze poruszają się dalej tak samo.
+ * Gdy polecenie dotrze z opóźnieniem, gra jest cofana do stanu sprzed kroku
+ * w którym je wydano i kolejne kroki są powtarzane. Stan sprzed każdego z
+ * ostatnich kroków przechowywany jest w {@link GameSnapshot}.
+ *
+ * Polecenia w jednym kroku wydawane są w kolejności numerów uczestników, więc
+ * wszyscy uczestnicy symulują grę tak samo. Każdy pakiet zawiera wszystkie
+ * lokalne polecenia od ostatniego kroku, który odbiorca potwierdził, więc
+ * zgubione pakiety nie muszą być wysyłane ponownie.
+ *
+ * Gracze sterowani przez komputer ({@link Bots}) są symulowani przez
+ * wszystkich uczestników, więc wszyscy muszą mieć ich tak samo ustawionych.
+ * Pakiety od uczestnika z innymi ustawieniami są pomijane. Polecenia tych
+ * graczy nie są wysyłane, ale trafiają do zapisu gry razem z poleceniami
+ * uczestników.
+ *
+ * Format pakietu (liczby zapisane przez {@link Varint}):
+ * <pre>
+ * bajt     numer gry (młodsze 8 bitów)
+ * bajt     gracze sterowani przez komputer jako maska bitowa kolorów
+ * varint   ostatni krok z poleceniami odbiorcy, które otrzymał nadawca
+ * varint   pierwszy krok w pakiecie
+ * varint   liczba kroków
+ * dla każdego kroku:
+ *   varint   liczba poleceń
+ *   varint   polecenia w postaci (id &lt;&lt; 3 | kod) jak w {@link Replay}
+ * </pre>
+ */
+public class RollbackSession implements GameController.CommandSource,
+        PlayerCommands {
+
+    /**
+     * Największa liczba kroków o jaką symulacja może wyprzedzić polecenia
+     * otrzymane od pozostałych uczestników (ok. 400 ms). Dalej gra czeka na
+     * ich polecenia.
+     */
+    public static final int MAX_PREDICTION = 24;
+
+    /**
+     * Największe opóźnienie lokalnych poleceń w krokach.
+     */
+    public static final int MAX_INPUT_DELAY = 8;
+
+    /**
+     * Liczba kroków przechowywanych w historii poleceń. Potęga dwójki.
+     */
+    private static final int HISTORY = 128;
+
+    /**
+     * Liczba przechowywanych stanów gry. Potęga dwójki większa od
+     * {@link #MAX_PREDICTION}.
+     */
+    private static final int SNAPSHOTS = 32;
+
+    /**
+     * Największa liczba poleceń jednego uczestnika w jednym kroku. Kolejne
+     * polecenia są pomijane.
+     */
+    private static final int MAX_COMMANDS = 16;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final PlayerColor[] COLORS = PlayerColor.values();
+
+    private final GameController game;
+    private final NetTransport transport;
+    private final int local;
+    private final int peerCount;
+    private final int inputDelay;
+
+    /**
+     * Polecenia kolejnych uczestników. Polecenia lokalne znane są do kroku
+     * {@code inputDelay} kroków po aktualnym.
+     */
+    private final CommandLog[] logs;
+
+    /**
+     * Polecenia graczy sterowanych przez komputer wydane w symulowanych
+     * krokach. Kroki powtarzane po cofnięciu gry zapisują je od nowa.
+     */
+    private final CommandLog botLog = new CommandLog();
+
+    /**
+     * Ostatni krok z lokalnymi poleceniami, który potwierdził każdy z
+     * uczestników.
+     */
+    private final long[] acked;
+
+    /**
+     * Ostatnie pakiety wysłane do uczestników w poprzedniej grze. Są wysyłane
+     * ponownie uczestnikom, którzy jeszcze jej nie zakończyli.
+     */
+    private final ByteBuffer[] previousPackets;
+
+    private final GameSnapshot[] snapshots = new GameSnapshot[SNAPSHOTS];
+    private final ByteBuffer packet
+            = ByteBuffer.allocate(NetTransport.MAX_PACKET_SIZE);
+
+    /**
+     * Lokalne polecenia czekające na przypisanie do kroku.
+     */
+    private final int[] pending = new int[MAX_COMMANDS];
+    private int pendingCount = 0;
+    private Direction lastDirection = Direction.NONE;
+
+    private int match = 0;
+
+    /**
+     * Liczba kroków wykonanych w aktualnej grze, także po jej zakończeniu.
+     */
+    private long simulatedTick = 0;
+
+    /**
+     * Najwcześniejszy wykonany krok, w którym pojawiły się nowe polecenia i
+     * od którego należy powtórzyć symulację, albo {@code Long.MAX_VALUE}.
+     */
+    private long rollbackTick = Long.MAX_VALUE;
+
+    /**
+     * Ostatni krok, którego polecenia zostały przekazane do zapisu gry.
+     */
+    private long recordedTick = 0;
+    private boolean endConfirmed = false;
+    private boolean botMismatchReported = false;
+
+    private long rollbacks = 0;
+    private long resimulatedTicks = 0;
+    private long stalls = 0;
+
+    /**
+     * Tworzy sesję i ustawia ją jako źródło poleceń gry. W grze biorą udział
+     * gracze pierwszych {@code peerCount} kolorów, a lokalny gracz sterowany
+     * jest klawiszami pierwszego gracza. Grę rozpoczyna się jak zwykle przez
+     * {@link GameController#newGame(int, int, long)}, z tym samym ziarnem u
+     * wszystkich uczestników. Kolejne gry rozpoczęte przez
+     * {@link GameController#newGame()} po zakończeniu poprzedniej mają to
+     * samo ziarno u wszystkich uczestników.
+     *
+     * @param game Gra.
+     * @param transport Połączenie z pozostałymi uczestnikami.
+     * @param local Numer lokalnego uczestnika.
+     * @param peerCount Liczba uczestników.
+     * @param inputDelay Liczba kroków o jaką opóźniane są lokalne polecenia,
+     * od 0 do {@link #MAX_INPUT_DELAY}. Opóźnienie zmniejsza liczbę cofnięć
+     * gry.
+     */
+    public RollbackSession(GameController game, NetTransport transport,
+            int local, int peerCount, int inputDelay) {
+        if (peerCount < 2 || peerCount > COLORS.length) {
+            throw new IllegalArgumentException("Invalid peer count: " + peerCount);
+        }
+        if (local < 0 || local >= peerCount) {
+            throw new IllegalArgumentException("Invalid local peer: " + local);
+        }
+        if (inputDelay < 0 || inputDelay > MAX_INPUT_DELAY) {
+            throw new IllegalArgumentException("Invalid input delay: " + inputDelay);
+        }
+
+        this.game = game;
+        this.transport = transport;
+        this.local = local;
+        this.peerCount = peerCount;
+        this.inputDelay = inputDelay;
+
+        logs = new CommandLog[peerCount];
+        for (int i = 0; i < peerCount; i++) {
+            logs[i] = new CommandLog();
+        }
+        acked = new long[peerCount];
+        previousPackets = new ByteBuffer[peerCount];
+        for (int i = 0; i < SNAPSHOTS; i++) {
+            snapshots[i] = new GameSnapshot();
+        }
+        reset();
+
+        synchronized (game) {
+            for (PlayerColor color : COLORS) {
+                game.players.setPlayerEnabled(color, color.ordinal() < peerCount);
+            }
+            game.players.setKeyboardTarget(this, new int[]{local});
+            game.setCommandSource(this);
+        }
+    }
+
+    /**
+     * Wykonuje jeden krok gry: odbiera polecenia pozostałych uczestników,
+     * cofa grę jeśli to konieczne, wysyła lokalne polecenia i symuluje
+     * kolejny krok. Jeśli gra za bardzo wyprzedziła pozostałych uczestników,
+     * krok nie jest wykonywany. Powinno być wywoływane co
+     * {@link GameClock#TICK_DURATION} milisekund.
+     */
+    public void update() {
+        synchronized (game) {
+            receive();
+            if (rollbackTick <= simulatedTick) {
+                rollback();
+            }
+
+            final CommandLog localLog = logs[local];
+            if (simulatedTick - confirmedTick() >= MAX_PREDICTION
+                    || localLog.lastTick - minAcked() >= HISTORY / 2) {
+                stalls += 1;
+                sendAll();
+                return;
+            }
+
+            if (!game.input.isEmpty()) {
+                game.input.drain(game.players, System.currentTimeMillis());
+            }
+            localLog.set(localLog.lastTick + 1, pending, pendingCount);
+            pendingCount = 0;
+
+            sendAll();
+            advance();
+            confirm();
+        }
+    }
+
+    @Override
+    public void gameStarted(GameController game) {
+        for (int peer = 0; peer < peerCount; peer++) {
+            if (peer != local) {
+                writePacket(peer);
+                previousPackets[peer] = ByteBuffer.allocate(packet.remaining())
+                        .put(packet);
+            }
+        }
+        match += 1;
+        reset();
+    }
+
+    private void reset() {
+        for (CommandLog log : logs) {
+            log.clear();
+        }
+        botLog.clear();
+        logs[local].lastTick = inputDelay;
+        Arrays.fill(acked, 0);
+
+        pendingCount = 0;
+        lastDirection = Direction.NONE;
+        simulatedTick = 0;
+        rollbackTick = Long.MAX_VALUE;
+        recordedTick = 0;
+        endConfirmed = false;
+    }
+
+    @Override
+    public void apply(Players players, long tick) {
+        for (int peer = 0; peer < peerCount; peer++) {
+            final CommandLog log = logs[peer];
+            if (tick > log.lastTick) {
+                continue;
+            }
+
+            final int count = log.count(tick);
+            for (int i = 0; i < count; i++) {
+                final int command = log.get(tick, i);
+                final int id = command >>> Replay.COMMAND_BITS;
+                final int code = command & ((1 << Replay.COMMAND_BITS) - 1);
+                if (code == Replay.BOMB) {
+                    players.placeBomb(id);
+                } else {
+                    players.setMovementDirection(id, DIRECTIONS[code]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void botCommand(long tick, int command) {
+        if (botLog.count(tick) < MAX_COMMANDS) {
+            botLog.add(tick, command);
+        }
+    }
+
+    /**
+     * Dodaje polecenie ruchu lokalnego gracza do najbliższego kroku.
+     * Polecenia dla innych graczy są pomijane.
+     */
+    @Override
+    public void setMovementDirection(int id, Direction direction) {
+        synchronized (game) {
+            if (direction != lastDirection
+                    && addPending(id, direction.ordinal())) {
+                lastDirection = direction;
+            }
+        }
+    }
+
+    /**
+     * Dodaje postawienie bomby przez lokalnego gracza do najbliższego kroku.
+     * Polecenia dla innych graczy są pomijane.
+     */
+    @Override
+    public void placeBomb(int id) {
+        synchronized (game) {
+            addPending(id, Replay.BOMB);
+        }
+    }
+
+    private boolean addPending(int id, int code) {
+        if (id != local || pendingCount == MAX_COMMANDS) {
+            return false;
+        }
+        pending[pendingCount++] = id << Replay.COMMAND_BITS | code;
+        return true;
+    }
+
+    /**
+     * Wykonuje krok symulacji zapisując wcześniej stan gry.
+     */
+    private void advance() {
+        snapshots[(int) simulatedTick & (SNAPSHOTS - 1)].capture(game);
+        botLog.begin(simulatedTick + 1);
+        game.update();
+        simulatedTick += 1;
+    }
+
+    /**
+     * Przywraca stan sprzed kroku z nowymi poleceniami i powtarza kroki do
+     * aktualnego.
+     */
+    private void rollback() {
+        final long target = simulatedTick;
+        final long from = rollbackTick;
+        rollbackTick = Long.MAX_VALUE;
+
+        snapshots[(int) (from - 1) & (SNAPSHOTS - 1)].restore(game);
+        simulatedTick = from - 1;
+        while (simulatedTick < target) {
+            advance();
+        }
+
+        rollbacks += 1;
+        resimulatedTicks += target - from + 1;
+    }
+
+    /**
+     * Przekazuje do zapisu gry polecenia kroków znanych już wszystkim
+     * uczestnikom i zgłasza zakończenie gry, gdy jej wynik jest ostateczny.
+     */
+    private void confirm() {
+        final long confirmed = Math.min(confirmedTick(), simulatedTick);
+        final ReplayRecorder recorder = game.getRecorder();
+        while (recordedTick < confirmed) {
+            recordedTick += 1;
+            if (recorder != null && (!game.isGameOver()
+                    || recordedTick <= game.clock.getTick())) {
+                record(recorder, recordedTick);
+            }
+        }
+
+        if (!endConfirmed && game.isGameOver()
+                && game.clock.getTick() <= confirmed) {
+            endConfirmed = true;
+            game.confirmGameEnd();
+        }
+    }
+
+    private void record(ReplayRecorder recorder, long tick) {
+        final long time = tick * 2;
+        for (int peer = 0; peer < peerCount; peer++) {
+            record(recorder, time, logs[peer], tick);
+        }
+        // Gracze sterowani przez komputer wydają polecenia po poleceniach
+        // uczestników.
+        record(recorder, time, botLog, tick);
+    }
+
+    private static void record(ReplayRecorder recorder, long time,
+            CommandLog log, long tick) {
+        final int count = log.count(tick);
+        for (int i = 0; i < count; i++) {
+            final int command = log.get(tick, i);
+            final int id = command >>> Replay.COMMAND_BITS;
+            final int code = command & ((1 << Replay.COMMAND_BITS) - 1);
+            if (code == Replay.BOMB) {
+                recorder.bombPlaced(time, id);
+            } else {
+                recorder.movementDirectionChanged(time, id, DIRECTIONS[code]);
+            }
+        }
+    }
+
+    /**
+     * Zwraca ostatni krok dla którego znane są polecenia wszystkich
+     * uczestników.
+     */
+    private long confirmedTick() {
+        long confirmed = Long.MAX_VALUE;
+        for (int peer = 0; peer < peerCount; peer++) {
+            if (peer != local) {
+                confirmed = Math.min(confirmed, logs[peer].lastTick);
+            }
+        }
+        return confirmed;
+    }
+
+    private long minAcked() {
+        long min = Long.MAX_VALUE;
+        for (int peer = 0; peer < peerCount; peer++) {
+            if (peer != local) {
+                min = Math.min(min, acked[peer]);
+            }
+        }
+        return min;
+    }
+
+    private void sendAll() {
+        for (int peer = 0; peer < peerCount; peer++) {
+            if (peer != local) {
+                writePacket(peer);
+                send(peer, packet);
+            }
+        }
+    }
+
+    private void writePacket(int peer) {
+        final CommandLog log = logs[local];
+        packet.clear();
+        packet.put((byte) match);
+        packet.put((byte) getBotMask());
+        Varint.put(packet, logs[peer].lastTick);
+        Varint.put(packet, acked[peer] + 1);
+        Varint.put(packet, log.lastTick - acked[peer]);
+        for (long tick = acked[peer] + 1; tick <= log.lastTick; tick++) {
+            final int count = log.count(tick);
+            Varint.put(packet, count);
+            for (int i = 0; i < count; i++) {
+                Varint.put(packet, log.get(tick, i));
+            }
+        }
+        packet.flip();
+    }
+
+    private void send(int peer, ByteBuffer data) {
+        try {
+            transport.send(peer, data);
+        } catch (IOException e) {
+            // Pakiet traktowany jest jak zgubiony. Polecenia zostaną wysłane
+            // ponownie w kolejnym pakiecie.
+        }
+    }
+
+    private void receive() {
+        while (true) {
+            packet.clear();
+            final int from;
+            try {
+                from = transport.receive(packet);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (from == -1) {
+                return;
+            }
+
+            packet.flip();
+            if (from != local && from < peerCount) {
+                try {
+                    readPacket(from);
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    // Niepoprawne pakiety są pomijane.
+                }
+            }
+        }
+    }
+
+    private void readPacket(int from) {
+        final int packetMatch = packet.get() & 0xFF;
+        if (packetMatch != (match & 0xFF)) {
+            final ByteBuffer previous = previousPackets[from];
+            if (packetMatch == ((match - 1) & 0xFF) && previous != null) {
+                previous.rewind();
+                send(from, previous);
+            }
+            return;
+        }
+        if ((packet.get() & 0xFF) != getBotMask()) {
+            if (!botMismatchReported) {
+                botMismatchReported = true;
+                System.err.println("Uczestnik " + from
+                        + " ma inaczej ustawionych graczy komputerowych");
+            }
+            return;
+        }
+
+        final long ack = Varint.get(packet);
+        final long first = Varint.get(packet);
+        final long count = Varint.get(packet);
+        if (count > HISTORY / 2) {
+            throw new IllegalArgumentException("Too many ticks: " + count);
+        }
+        if (ack > acked[from] && ack <= logs[local].lastTick) {
+            acked[from] = ack;
+        }
+
+        final CommandLog log = logs[from];
+        for (long tick = first; tick < first + count; tick++) {
+            final int commands = (int) Varint.get(packet);
+            if (commands < 0 || commands > MAX_COMMANDS) {
+                throw new IllegalArgumentException("Too many commands: " + commands);
+            }
+            if (tick != log.lastTick + 1
+                    || tick > simulatedTick + HISTORY / 2) {
+                for (int i = 0; i < commands; i++) {
+                    Varint.get(packet);
+                }
+                continue;
+            }
+
+            log.begin(tick);
+            for (int i = 0; i < commands; i++) {
+                final long command = Varint.get(packet);
+                if (command >>> Replay.COMMAND_BITS != from
+                        || (command & ((1 << Replay.COMMAND_BITS) - 1)) > Replay.BOMB) {
+                    throw new IllegalArgumentException("Invalid command: " + command);
+                }
+                log.add(tick, (int) command);
+            }
+            log.lastTick = tick;
+
+            if (commands > 0 && tick <= simulatedTick) {
+                rollbackTick = Math.min(rollbackTick, tick);
+            }
+        }
+    }
+
+    /**
+     * Zwraca graczy biorących udział w grze, którymi steruje komputer, jako
+     * maskę bitową kolorów.
+     */
+    private int getBotMask() {
+        int mask = 0;
+        for (int i = 0; i < peerCount; i++) {
+            if (game.bots.isBot(COLORS[i])) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Zwraca liczbę cofnięć gry od utworzenia sesji.
+     *
+     * @return Liczba cofnięć.
+     */
+    public long getRollbacks() {
+        return rollbacks;
+    }
+
+    /**
+     * Zwraca liczbę kroków wykonanych ponownie po cofnięciu gry.
+     *
+     * @return Liczba powtórzonych kroków.
+     */
+    public long getResimulatedTicks() {
+        return resimulatedTicks;
+    }
+
+    /**
+     * Zwraca liczbę wywołań {@link #update()}, w których gra czekała na
+     * polecenia pozostałych uczestników.
+     *
+     * @return Liczba wstrzymanych kroków.
+     */
+    public long getStalls() {
+        return stalls;
+    }
+
+    /**
+     * Zwraca czy zakończenie aktualnej gry zostało potwierdzone przez
+     * polecenia wszystkich uczestników.
+     *
+     * @return {@code true} jeśli wynik gry jest ostateczny.
+     */
+    public boolean isGameEndConfirmed() {
+        synchronized (game) {
+            return endConfirmed;
+        }
+    }
+
+    /**
+     * Polecenia jednego uczestnika w ostatnich {@link #HISTORY} krokach.
+     */
+    private static final class CommandLog {
+
+        final int[] counts = new int[HISTORY];
+        final int[] commands = new int[HISTORY * MAX_COMMANDS];
+
+        /**
+         * Ostatni krok do którego polecenia są znane.
+         */
+        long lastTick = 0;
+
+        void clear() {
+            Arrays.fill(counts, 0);
+            lastTick = 0;
+        }
+
+        int count(long tick) {
+            return counts[(int) tick & (HISTORY - 1)];
+        }
+
+        int get(long tick, int i) {
+            return commands[((int) tick & (HISTORY - 1)) * MAX_COMMANDS + i];
+        }
+
+        void begin(long tick) {
+            counts[(int) tick & (HISTORY - 1)] = 0;
+        }
+
+        void add(long tick, int command) {
+            final int slot = (int) tick & (HISTORY - 1);
+            commands[slot * MAX_COMMANDS + counts[slot]++] = command;
+        }
+
+        void set(long tick, int[] source, int count) {
+            final int slot = (int) tick & (HISTORY - 1);
+            System.arraycopy(source, 0, commands, slot * MAX_COMMANDS, count);
+            counts[slot] = count;
+            lastTick = tick;
+        }
+    }
+}
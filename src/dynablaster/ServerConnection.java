@@ -0,0 +1,107 @@
+package dynablaster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Połączenie klienta z serwerem gry. Należy do jednego wątku serwera i jest
+ * używane tylko przez niego.
+ */
+final class ServerConnection {
+
+    private static final int INPUT_CAPACITY = 512;
+    private static final int OUTPUT_CAPACITY = 16 * 1024;
+
+    /**
+     * Miejsce w buforze wyjściowym zarezerwowane dla wiadomości, które nie
+     * mogą zostać pominięte, np. o zakończeniu gry.
+     */
+    private static final int CONTROL_RESERVE = 64;
+
+    /**
+     * Największa liczba poleceń klienta w jednym kroku gry. Kolejne są
+     * pomijane.
+     */
+    static final int MAX_COMMANDS_PER_TICK = 8;
+
+    final SocketChannel channel;
+    final SelectionKey key;
+
+    final ByteBuffer in = ByteBuffer.allocate(INPUT_CAPACITY);
+
+    /**
+     * Wiadomości oczekujące na wysłanie, w trybie zapisu.
+     */
+    private final ByteBuffer out = ByteBuffer.allocate(OUTPUT_CAPACITY);
+
+    /**
+     * Pokój w którym klient gra albo czeka na grę, albo {@code null}.
+     */
+    ServerRoom room;
+    int playerId = -1;
+    int commands = 0;
+
+    /**
+     * Numer kroku ostatniego stanu gry potwierdzonego przez klienta albo 0.
+     */
+    long ackedTick = 0;
+    long droppedMessages = 0;
+
+    ServerConnection(SocketChannel channel, SelectionKey key) {
+        this.channel = channel;
+        this.key = key;
+    }
+
+    /**
+     * Dodaje wiadomość do wysłania. Jeśli klient nie odbiera wiadomości
+     * wystarczająco szybko i nie mieszczą się one w buforze, wiadomość jest
+     * pomijana. Kolejne wiadomości ze stanem gry są kodowane względem stanu
+     * potwierdzonego przez klienta, więc klient nie musi otrzymać wszystkich.
+     *
+     * @param message Bufor z wiadomością od pozycji do limitu. Pozycja
+     * bufora nie jest zmieniana.
+     * @param droppable Czy wiadomość może zostać pominięta zanim zapełni
+     * się miejsce zarezerwowane dla pozostałych wiadomości.
+     * @return {@code true} jeśli wiadomość zostanie wysłana.
+     */
+    boolean queue(ByteBuffer message, boolean droppable) {
+        final int reserve = droppable ? CONTROL_RESERVE : 0;
+        if (out.remaining() - reserve < message.remaining()) {
+            droppedMessages += 1;
+            return false;
+        }
+        out.put(message.array(), message.arrayOffset() + message.position(),
+                message.remaining());
+        return true;
+    }
+
+    /**
+     * Wysyła oczekujące wiadomości. Jeśli nie można wysłać wszystkich,
+     * pozostałe zostaną wysłane gdy gniazdo będzie gotowe do zapisu.
+     *
+     * @throws IOException Gdy połączenie zostało zerwane.
+     */
+    void flush() throws IOException {
+        if (out.position() == 0) {
+            return;
+        }
+
+        out.flip();
+        channel.write(out);
+        out.compact();
+        key.interestOps(out.position() > 0
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                : SelectionKey.OP_READ);
+    }
+
+    void close() {
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Połączenie i tak jest zamykane.
+        }
+    }
+}
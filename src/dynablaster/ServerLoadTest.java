@@ -0,0 +1,145 @@
+package dynablaster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+
+/**
+ * Uruchamia {@link GameServer} i łączy się z nim wieloma klientami przez
+ * lokalny interfejs sieciowy. Klienci sterują graczami losowo i po każdej
+ * grze dołączają do kolejnej. Co sekundę wypisywana jest liczba gier,
+ * otrzymanych stanów, ich średni rozmiar i czasy kroków serwera. Po
+ * pierwszej sekundzie gry zaczynają oglądać widzowie, rozdzieleni po równo
+ * pomiędzy pokoje.
+ */
+public class ServerLoadTest {
+
+    private static final long TICK_NANOS = GameClock.TICK_DURATION * 1000000L;
+
+    private ServerLoadTest() {
+    }
+
+    /**
+     * @param args Liczba pełnych pokoi, czas testu w sekundach, liczba
+     * wątków serwera i liczba widzów.
+     * @throws Exception Gdy nie można uruchomić serwera lub połączyć
+     * klientów.
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        final int rooms = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        final int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        final int spectatorCount = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+
+        final GameServer server = new GameServer(0, threads);
+        server.setSeed(1);
+        server.start();
+
+        final int roomSize = PlayerColor.values().length;
+        final InetSocketAddress address = new InetSocketAddress("127.0.0.1",
+                server.getPort());
+        final GameClient[] clients = new GameClient[rooms * roomSize];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = GameClient.connect(address);
+            clients[i].join();
+        }
+
+        final GameClient[] spectators = new GameClient[spectatorCount];
+        for (int i = 0; i < spectators.length; i++) {
+            spectators[i] = GameClient.connect(address);
+        }
+
+        // Jeden z klientów i jeden z widzów odtwarzają otrzymany stan, aby
+        // sprawdzić że jest poprawny.
+        final GameController replica = new GameController();
+        clients[0].setGame(replica);
+        final GameController watched = new GameController();
+        if (spectators.length > 0) {
+            spectators[0].setGame(watched);
+        }
+
+        final GameRandom random = new GameRandom(1);
+        final Direction[] directions = Direction.values();
+        long games = 0;
+        long states = 0;
+        long spectatorStates = 0;
+        boolean watching = false;
+        long reportedBytes = 0;
+        long nextTick = System.nanoTime();
+        long nextReport = nextTick + 1000000000L;
+        final long end = nextTick + seconds * 1000000000L;
+
+        while (System.nanoTime() < end) {
+            for (GameClient client : clients) {
+                final int id = client.getPlayerId();
+                if (id != -1) {
+                    if (random.nextInt(30) == 0) {
+                        client.setMovementDirection(id,
+                                directions[random.nextInt(directions.length)]);
+                    }
+                    if (random.nextInt(60) == 0) {
+                        client.placeBomb(id);
+                    }
+                }
+                states += client.poll();
+                if (client.getResult() != -1) {
+                    games += 1;
+                    client.join();
+                }
+            }
+
+            for (GameClient spectator : spectators) {
+                spectatorStates += spectator.poll();
+            }
+
+            final long now = System.nanoTime();
+            if (now >= nextReport) {
+                long stateBytes = 0;
+                for (GameClient client : clients) {
+                    stateBytes += client.getStateBytes();
+                }
+                final double average = states == 0 ? 0
+                        : (double) (stateBytes - reportedBytes) / states;
+                System.out.println(server.describe() + String.format(Locale.ROOT,
+                        ", stany/s: %d, średnio %.1f B (pełny stan %d B), stany widzów/s: %d",
+                        states, average, replica.getStateSize(), spectatorStates));
+                states = 0;
+                spectatorStates = 0;
+                reportedBytes = stateBytes;
+
+                if (!watching) {
+                    // Pokoje są już utworzone, więc ich numery to kolejne
+                    // liczby od zera.
+                    for (int i = 0; i < spectators.length; i++) {
+                        spectators[i].spectate(i % rooms);
+                    }
+                    watching = true;
+                }
+                nextReport += 1000000000L;
+            }
+
+            nextTick += TICK_NANOS;
+            final long sleep = nextTick - System.nanoTime();
+            if (sleep > 0) {
+                Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+            }
+        }
+
+        System.out.printf("Zakończone gry graczy: %d, stan odtworzony w kroku %d%n",
+                games, replica.clock.getTick());
+        if (spectators.length > 0) {
+            System.out.printf("Stan odtworzony przez widza w kroku %d%n",
+                    watched.clock.getTick());
+        }
+        for (GameClient client : clients) {
+            client.close();
+        }
+        for (GameClient spectator : spectators) {
+            spectator.close();
+        }
+        server.stop();
+    }
+}
@@ -0,0 +1,108 @@
+package dynablaster;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Format wiadomości pomiędzy {@link GameServer} a {@link GameClient}. Każda
+ * wiadomość zaczyna się od długości (2 bajty, bez samej długości) i typu
+ * (1 bajt).
+ *
+ * Wiadomości klienta:
+ * <pre>
+ * JOIN      dołączenie do kolejnej gry
+ * COMMAND   bajt: kod polecenia jak w {@link Replay} (kierunek albo bomba)
+ * ACK       bajt: numer gry z wiadomości START, int: numer kroku ostatniego
+ *           odtworzonego stanu gry
+ * SPECTATE  int: numer pokoju, którego gry klient chce oglądać
+ * </pre>
+ *
+ * Po wiadomości SPECTATE klient jest widzem i niczego więcej nie wysyła.
+ * Otrzymuje te same wiadomości co gracze, z identyfikatorem gracza -1 w
+ * START, ale stany są zawsze różnicami względem poprzedniego kroku, a co
+ * pewien czas wysyłana jest ponownie wiadomość START z pełnym stanem. Widz
+ * nie potwierdza stanów; jeśli nie nadąża ich odbierać, część wiadomości
+ * jest pomijana aż do najbliższego pełnego stanu.
+ *
+ * Wiadomości serwera:
+ * <pre>
+ * START     bajty: identyfikator gracza, liczba graczy, szerokość i
+ *           wysokość planszy, long: ziarno gry, bajt: numer gry
+ * STATE     varint: numer kroku stanu bazowego albo 0, dalej bity różnicy
+ *           stanu gry względem stanu bazowego jak w {@link StateDelta}
+ * </pre>
+ *
+ * Stanem bazowym jest stan z ostatniego kroku potwierdzonego przez klienta
+ * wiadomością ACK, jeśli był on nie dawniej niż {@link #STATE_HISTORY}
+ * kroków temu. W przeciwnym razie wysyłany jest pełny stan (stan bazowy 0).
+ * Klient musi pamiętać tyle samo ostatnich stanów. Wiadomości ze stanem mogą
+ * zostać pominięte, gdy klient nie nadąża ich odbierać, ale kolejne są wtedy
+ * kodowane względem stanu, który klient potwierdził.
+ * <pre>
+ * END       bajt: wynik gry jak w {@link Replay#resultOf(GameController)}
+ * </pre>
+ */
+final class ServerProtocol {
+
+    static final int JOIN = 1;
+    static final int COMMAND = 2;
+    static final int ACK = 3;
+    static final int SPECTATE = 4;
+
+    static final int START = 1;
+    static final int STATE = 2;
+    static final int END = 3;
+
+    /**
+     * Liczba ostatnich stanów gry pamiętanych przez serwer i klienta jako
+     * stany bazowe.
+     */
+    static final int STATE_HISTORY = 32;
+
+    /**
+     * Rozmiar nagłówka wiadomości.
+     */
+    static final int HEADER_SIZE = 3;
+
+    /**
+     * Największy rozmiar wiadomości razem z nagłówkiem.
+     */
+    static final int MAX_MESSAGE_SIZE = 0xFFFF + 2;
+
+    private ServerProtocol() {
+    }
+
+    /**
+     * Rozpoczyna wiadomość. Długość jest uzupełniana przez
+     * {@link #end(ByteBuffer, int)}.
+     *
+     * @param out Bufor.
+     * @param type Typ wiadomości.
+     * @return Pozycja początku wiadomości.
+     */
+    static int begin(ByteBuffer out, int type) {
+        final int start = out.position();
+        out.putShort((short) 0);
+        out.put((byte) type);
+        return start;
+    }
+
+    static void end(ByteBuffer out, int start) {
+        out.putShort(start, (short) (out.position() - start - 2));
+    }
+
+    /**
+     * Zwraca długość pierwszej kompletnej wiadomości w buforze, razem z
+     * nagłówkiem, albo 0 jeśli wiadomość nie została jeszcze odebrana w
+     * całości.
+     *
+     * @param in Bufor w trybie odczytu.
+     * @return Długość wiadomości albo 0.
+     */
+    static int available(ByteBuffer in) {
+        if (in.remaining() < 2) {
+            return 0;
+        }
+        final int length = (in.getShort(in.position()) & 0xFFFF) + 2;
+        return in.remaining() >= length ? length : 0;
+    }
+}
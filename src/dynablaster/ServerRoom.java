@@ -0,0 +1,381 @@
+package dynablaster;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pokój serwera: jedna gra i połączenia jej graczy. Pokój jest używany
+ * ponownie w kolejnych grach, więc obiekty gry tworzone są tylko raz.
+ *
+ * Po każdym kroku stan gry jest zapamiętywany jako {@link NetState}, a
+ * graczom wysyłana jest jego różnica względem ostatniego potwierdzonego
+ * przez nich stanu. Różnica względem danego stanu bazowego jest kodowana raz
+ * na krok i wysyłana wszystkim graczom, którzy potwierdzili ten sam stan.
+ *
+ * Jeśli grę oglądają widzowie, pokój publikuje też po każdym kroku ramkę w
+ * {@link SpectatorFeed}: różnicę względem poprzedniego kroku albo co
+ * {@link #KEYFRAME_INTERVAL} kroków pełny stan. Wysyłaniem ramek zajmuje się
+ * osobny wątek, więc widzowie nie wydłużają kroku gry.
+ */
+final class ServerRoom {
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final PlayerColor[] COLORS = PlayerColor.values();
+
+    /**
+     * Co ile kroków widzowie otrzymują pełny stan gry.
+     */
+    private static final int KEYFRAME_INTERVAL = 60;
+
+    /**
+     * Rozmiar treści wiadomości {@link ServerProtocol#START}.
+     */
+    private static final int START_SIZE = 13;
+
+    final GameController game = new GameController();
+    final SpectatorFeed feed;
+
+    /**
+     * Połączenia graczy. W trakcie gry indeks jest identyfikatorem gracza,
+     * a rozłączeni gracze pozostają w grze bez ruchu.
+     */
+    private final ServerConnection[] slots;
+    private int connected = 0;
+    private boolean running = false;
+    private long waitingTicks = 0;
+
+    /**
+     * Numer gry, którym klienci oznaczają potwierdzenia stanów, aby
+     * potwierdzenia z poprzedniej gry nie zostały wzięte za bieżące.
+     */
+    private byte generation = 0;
+
+    private ByteBuffer message = ByteBuffer.allocate(1024);
+    private ByteBuffer snapshot = ByteBuffer.allocate(1024);
+
+    /**
+     * Stany ostatnich kroków, pod indeksem numeru kroku modulo
+     * {@link ServerProtocol#STATE_HISTORY}.
+     */
+    private final NetState[] history = new NetState[ServerProtocol.STATE_HISTORY];
+
+    /**
+     * Wiadomości ze stanem zakodowane w bieżącym kroku i numery kroków ich
+     * stanów bazowych.
+     */
+    private final ByteBuffer[] encoded;
+    private final long[] encodedBase;
+    private int encodedCount = 0;
+    private final BitWriter bits = new BitWriter();
+
+    /**
+     * Numer kroku ostatniej ramki opublikowanej dla widzów i ostatniej
+     * ramki kluczowej albo -1.
+     */
+    private long publishedTick = -1;
+    private long keyframeTick = -1;
+
+    ServerRoom(int size, SpectatorFeed feed) {
+        this.feed = feed;
+        slots = new ServerConnection[size];
+        // Poza stanami potwierdzonymi przez graczy kodowane są ramki dla
+        // widzów: pełny stan i różnica względem poprzedniego kroku.
+        encoded = new ByteBuffer[size + 2];
+        encodedBase = new long[size + 2];
+        for (int i = 0; i < history.length; i++) {
+            history[i] = new NetState();
+        }
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    boolean isFull() {
+        return connected == slots.length;
+    }
+
+    int getConnected() {
+        return connected;
+    }
+
+    /**
+     * Dodaje gracza do pokoju oczekującego na rozpoczęcie gry.
+     */
+    void add(ServerConnection connection) {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] == null) {
+                slots[i] = connection;
+                connection.room = this;
+                connected += 1;
+                return;
+            }
+        }
+        throw new IllegalStateException("Room is full");
+    }
+
+    /**
+     * Usuwa rozłączonego gracza z pokoju.
+     */
+    void remove(ServerConnection connection) {
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] == connection) {
+                slots[i] = null;
+                connected -= 1;
+            }
+        }
+        connection.room = null;
+        connection.playerId = -1;
+    }
+
+    /**
+     * Zwraca czy oczekujący pokój powinien rozpocząć grę. Wywoływane raz
+     * na krok.
+     *
+     * @param minPlayers Najmniejsza liczba graczy niepełnego pokoju.
+     * @param startDelay Liczba kroków po której niepełny pokój rozpoczyna
+     * grę.
+     */
+    boolean shouldStart(int minPlayers, int startDelay) {
+        waitingTicks += 1;
+        return isFull() || connected >= minPlayers && waitingTicks >= startDelay;
+    }
+
+    /**
+     * Rozpoczyna grę z graczami obecnymi w pokoju i wysyła im wiadomość
+     * {@link ServerProtocol#START}.
+     */
+    void start(int width, int height, long seed) {
+        // Gracze otrzymują kolejne identyfikatory w kolejności miejsc.
+        int id = 0;
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) {
+                slots[id] = slots[i];
+                if (id != i) {
+                    slots[i] = null;
+                }
+                slots[id].playerId = id;
+                slots[id].ackedTick = 0;
+                id += 1;
+            }
+        }
+
+        for (PlayerColor color : COLORS) {
+            game.players.setPlayerEnabled(color, color.ordinal() < connected);
+        }
+        game.newGame(width, height, seed);
+        running = true;
+        generation += 1;
+        publishedTick = -1;
+        for (NetState state : history) {
+            state.clear();
+        }
+
+        for (int i = 0; i < connected; i++) {
+            message.clear();
+            putStart(message, i);
+            message.flip();
+            slots[i].queue(message, false);
+        }
+    }
+
+    /**
+     * Zapisuje wiadomość {@link ServerProtocol#START} trwającej gry.
+     *
+     * @param playerId Identyfikator gracza odbiorcy albo -1 dla widza.
+     */
+    private void putStart(ByteBuffer out, int playerId) {
+        final int start = ServerProtocol.begin(out, ServerProtocol.START);
+        out.put((byte) playerId);
+        out.put((byte) game.players.getCount());
+        out.put((byte) game.grid.getWidth());
+        out.put((byte) game.grid.getHeight());
+        out.putLong(game.getSeed());
+        out.put(generation);
+        ServerProtocol.end(out, start);
+    }
+
+    /**
+     * Wykonuje polecenie gracza przed następnym krokiem gry.
+     */
+    void command(ServerConnection connection, int code) {
+        if (!running || connection.commands >= ServerConnection.MAX_COMMANDS_PER_TICK) {
+            return;
+        }
+        connection.commands += 1;
+
+        if (code == Replay.BOMB) {
+            game.players.placeBomb(connection.playerId);
+        } else if (code >= 0 && code < DIRECTIONS.length) {
+            game.players.setMovementDirection(connection.playerId,
+                    DIRECTIONS[code]);
+        }
+    }
+
+    /**
+     * Zapamiętuje ostatni stan gry odtworzony przez gracza.
+     *
+     * @param game Numer gry z potwierdzenia.
+     * @param tick Numer kroku.
+     */
+    void acknowledge(ServerConnection connection, byte game, long tick) {
+        if (running && game == generation && tick > connection.ackedTick
+                && tick <= this.game.clock.getTick()) {
+            connection.ackedTick = tick;
+        }
+    }
+
+    /**
+     * Wykonuje krok gry i wysyła graczom jej stan.
+     *
+     * @param maxTicks Liczba kroków po której gra jest przerywana.
+     * @return {@code true} jeśli gra się zakończyła i pokój jest pusty.
+     */
+    boolean tick(long maxTicks) {
+        game.update();
+        broadcastState();
+        if (feed.watchers > 0) {
+            publishFrame();
+        }
+
+        if (game.isGameOver() || game.clock.getTick() >= maxTicks
+                || connected == 0) {
+            finish();
+            return true;
+        }
+        return false;
+    }
+
+    private void broadcastState() {
+        final long tick = game.clock.getTick();
+        final int size = game.getStateSize();
+        if (size > snapshot.capacity()) {
+            snapshot = ByteBuffer.allocate(Math.max(size, snapshot.capacity() * 2));
+        }
+        snapshot.clear();
+        game.saveState(snapshot);
+        snapshot.flip();
+        final NetState state = history[(int) (tick % history.length)];
+        state.read(snapshot);
+
+        encodedCount = 0;
+        for (ServerConnection connection : slots) {
+            if (connection != null) {
+                connection.commands = 0;
+                connection.queue(encode(state, baseline(connection, tick)), true);
+            }
+        }
+    }
+
+    /**
+     * Publikuje widzom ramkę z różnicą względem poprzedniego kroku albo
+     * ramkę kluczową: wiadomość START i pełny stan. Ramka kluczowa jest
+     * publikowana także gdy poprzedni krok nie został opublikowany albo
+     * nowy widz o nią poprosił.
+     */
+    private void publishFrame() {
+        final long tick = game.clock.getTick();
+        final NetState state = history[(int) (tick % history.length)];
+
+        boolean keyframe = publishedTick != tick - 1
+                || tick - keyframeTick >= KEYFRAME_INTERVAL;
+        if (feed.keyframeRequested) {
+            feed.keyframeRequested = false;
+            keyframe = true;
+        }
+        publishedTick = tick;
+
+        if (!keyframe) {
+            feed.publish(encode(state, history[(int) ((tick - 1) % history.length)]));
+            return;
+        }
+        keyframeTick = tick;
+
+        final ByteBuffer encoded = encode(state, null);
+        final int size = ServerProtocol.HEADER_SIZE + START_SIZE + encoded.remaining();
+        if (size > message.capacity()) {
+            message = ByteBuffer.allocate(Math.max(size, message.capacity() * 2));
+        }
+        message.clear();
+        putStart(message, -1);
+        message.put(encoded.array(), encoded.arrayOffset() + encoded.position(),
+                encoded.remaining());
+        message.flip();
+        feed.publish(message);
+    }
+
+    /**
+     * Zwraca stan potwierdzony przez gracza, jeśli jest on jeszcze
+     * pamiętany, albo {@code null}.
+     */
+    private NetState baseline(ServerConnection connection, long tick) {
+        final long acked = connection.ackedTick;
+        if (acked <= 0 || acked >= tick || tick - acked >= history.length) {
+            return null;
+        }
+        final NetState base = history[(int) (acked % history.length)];
+        return base.tick == acked ? base : null;
+    }
+
+    /**
+     * Zwraca wiadomość z różnicą stanu względem stanu bazowego, kodując ją
+     * tylko jeśli nie została jeszcze zakodowana w tym kroku.
+     */
+    private ByteBuffer encode(NetState state, NetState base) {
+        final long baseTick = base == null ? 0 : base.tick;
+        for (int i = 0; i < encodedCount; i++) {
+            if (encodedBase[i] == baseTick) {
+                return encoded[i];
+            }
+        }
+
+        final int size = ServerProtocol.HEADER_SIZE + Varint.MAX_SIZE
+                + StateDelta.maxSize(base, state);
+        ByteBuffer buffer = encoded[encodedCount];
+        if (buffer == null || buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.max(size,
+                    buffer == null ? 0 : buffer.capacity() * 2));
+            encoded[encodedCount] = buffer;
+        }
+
+        buffer.clear();
+        final int start = ServerProtocol.begin(buffer, ServerProtocol.STATE);
+        Varint.put(buffer, baseTick);
+        bits.begin(buffer);
+        StateDelta.encode(base, state, bits);
+        bits.end();
+        ServerProtocol.end(buffer, start);
+        buffer.flip();
+
+        encodedBase[encodedCount] = baseTick;
+        encodedCount += 1;
+        return buffer;
+    }
+
+    /**
+     * Wysyła graczom wynik gry i opróżnia pokój. Gracze mogą dołączyć do
+     * kolejnej gry.
+     */
+    private void finish() {
+        message.clear();
+        final int start = ServerProtocol.begin(message, ServerProtocol.END);
+        message.put((byte) Replay.resultOf(game));
+        ServerProtocol.end(message, start);
+        message.flip();
+        if (feed.watchers > 0) {
+            feed.publish(message);
+        }
+
+        for (int i = 0; i < slots.length; i++) {
+            final ServerConnection connection = slots[i];
+            if (connection != null) {
+                connection.queue(message, false);
+                connection.room = null;
+                connection.playerId = -1;
+                slots[i] = null;
+            }
+        }
+        connected = 0;
+        running = false;
+        waitingTicks = 0;
+    }
+}
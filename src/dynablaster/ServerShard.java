@@ -0,0 +1,362 @@
+package dynablaster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Wątek serwera obsługujący część połączeń i pokoi. Połączenia, pokoje i
+ * gry należą do jednego wątku, więc nie są blokowane. Wątek czeka na
+ * zdarzenia gniazd do chwili następnego kroku, a wtedy wykonuje krok we
+ * wszystkich swoich pokojach i wysyła klientom ich stan.
+ */
+final class ServerShard implements Runnable {
+
+    private static final long TICK_NANOS = GameClock.TICK_DURATION * 1000000L;
+
+    /**
+     * Opóźnienie po którym wątek przestaje nadrabiać kroki i planuje
+     * następny krok od aktualnej chwili.
+     */
+    private static final long MAX_LAG_NANOS = 5 * TICK_NANOS;
+
+    /**
+     * Co ile kroków czasy wątku są dodawane do wspólnych czasów serwera.
+     */
+    private static final int TIMINGS_PERIOD = 30;
+
+    private final GameServer server;
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<SocketChannel> incoming
+            = new ConcurrentLinkedQueue<>();
+
+    private final ArrayList<ServerConnection> connections = new ArrayList<>();
+    private final ArrayList<ServerRoom> rooms = new ArrayList<>();
+    private final ArrayList<ServerRoom> freeRooms = new ArrayList<>();
+
+    /**
+     * Pokój w którym gracze czekają na rozpoczęcie gry albo {@code null}.
+     */
+    private ServerRoom waiting;
+
+    private final GameRandom random;
+    private final Timings timings = new Timings();
+    private long ticks = 0;
+
+    private volatile int runningRooms = 0;
+    private volatile int connectionCount = 0;
+    private volatile long droppedMessages = 0;
+    private volatile boolean running = true;
+
+    /**
+     * Czy ostatnia próba przyjęcia połączenia się nie powiodła.
+     */
+    private boolean acceptFailed = false;
+
+    ServerShard(GameServer server, long seed) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+        this.random = new GameRandom(GameRandom.mix(seed));
+        timings.setEnabled(true);
+    }
+
+    /**
+     * Przyjmuje nowe połączenia z gniazda serwera w tym wątku.
+     */
+    void registerAcceptor(ServerSocketChannel acceptor)
+            throws ClosedChannelException {
+        acceptor.register(selector, SelectionKey.OP_ACCEPT, acceptor);
+    }
+
+    /**
+     * Przekazuje połączenie do obsługi przez ten wątek. Może być wywoływane
+     * z dowolnego wątku.
+     */
+    void assign(SocketChannel channel) {
+        incoming.add(channel);
+        selector.wakeup();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    int getRunningRooms() {
+        return runningRooms;
+    }
+
+    int getConnectionCount() {
+        return connectionCount;
+    }
+
+    long getDroppedMessages() {
+        return droppedMessages;
+    }
+
+    @Override
+    public void run() {
+        long nextTick = System.nanoTime() + TICK_NANOS;
+        try {
+            while (running) {
+                final long wait = nextTick - System.nanoTime();
+                if (wait > 0) {
+                    selector.select(Math.max(1, wait / 1000000));
+                } else {
+                    selector.selectNow();
+                }
+                registerIncoming();
+                handleSelected();
+
+                final long now = System.nanoTime();
+                if (now - nextTick >= 0) {
+                    timings.record(Timings.Phase.SERVER_LATENESS, now - nextTick);
+                    tick();
+                    timings.record(Timings.Phase.SERVER_TICK,
+                            System.nanoTime() - now);
+
+                    nextTick += TICK_NANOS;
+                    if (now - nextTick > MAX_LAG_NANOS) {
+                        nextTick = now + TICK_NANOS;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Błąd serwera: " + e.getMessage());
+        } finally {
+            for (ServerConnection connection : connections) {
+                connection.close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Wątek i tak jest kończony.
+            }
+        }
+    }
+
+    private void registerIncoming() {
+        SocketChannel channel;
+        while ((channel = incoming.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                final SelectionKey key = channel.register(selector,
+                        SelectionKey.OP_READ);
+                final ServerConnection connection = new ServerConnection(channel, key);
+                key.attach(connection);
+                connections.add(connection);
+            } catch (IOException e) {
+                // Klient mógł zerwać połączenie zanim zostało przyjęte. Błąd
+                // dotyczy tylko tego połączenia.
+                try {
+                    channel.close();
+                } catch (IOException closeError) {
+                    // Połączenie i tak jest zamykane.
+                }
+            }
+        }
+        connectionCount = connections.size();
+    }
+
+    private void handleSelected() {
+        final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            final SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+
+            if (key.isAcceptable()) {
+                accept((ServerSocketChannel) key.attachment());
+                continue;
+            }
+
+            final ServerConnection connection = (ServerConnection) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    read(connection);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.flush();
+                }
+            } catch (IOException e) {
+                disconnect(connection);
+            }
+        }
+    }
+
+    /**
+     * Przyjmuje oczekujące połączenia. Błąd przyjęcia (np. brak wolnych
+     * deskryptorów plików) nie kończy wątku: gniazdo pozostaje zarejestrowane
+     * i kolejne połączenia są przyjmowane gdy będzie to możliwe. Błąd jest
+     * wypisywany tylko raz do następnego udanego przyjęcia.
+     */
+    private void accept(ServerSocketChannel acceptor) {
+        try {
+            SocketChannel channel;
+            while ((channel = acceptor.accept()) != null) {
+                server.assign(channel);
+                acceptFailed = false;
+            }
+        } catch (IOException e) {
+            if (!acceptFailed) {
+                acceptFailed = true;
+                System.err.println("Nie można przyjąć połączenia: " + e.getMessage());
+            }
+        }
+    }
+
+    private void read(ServerConnection connection) throws IOException {
+        final ByteBuffer in = connection.in;
+        if (connection.channel.read(in) < 0) {
+            disconnect(connection);
+            return;
+        }
+
+        in.flip();
+        int length;
+        while ((length = ServerProtocol.available(in)) > 0) {
+            final int start = in.position();
+            handle(connection, in.get(start + 2), in, start + ServerProtocol.HEADER_SIZE,
+                    length - ServerProtocol.HEADER_SIZE);
+            in.position(start + length);
+            if (!connection.key.isValid()) {
+                // Połączenie zostało przekazane do wątku widzów.
+                return;
+            }
+        }
+        in.compact();
+
+        if (!in.hasRemaining()) {
+            // Wiadomość nie mieści się w buforze, więc klient nie przestrzega
+            // protokołu.
+            disconnect(connection);
+        }
+    }
+
+    private void handle(ServerConnection connection, int type, ByteBuffer in,
+            int offset, int length) {
+        switch (type) {
+            case ServerProtocol.JOIN:
+                if (connection.room == null) {
+                    join(connection);
+                }
+                break;
+            case ServerProtocol.COMMAND:
+                if (connection.room != null && length >= 1) {
+                    connection.room.command(connection, in.get(offset));
+                }
+                break;
+            case ServerProtocol.SPECTATE:
+                if (connection.room == null && length >= 4) {
+                    final SpectatorFeed feed = server.getFeed(in.getInt(offset));
+                    if (feed != null) {
+                        spectate(connection, feed);
+                    }
+                }
+                break;
+            case ServerProtocol.ACK:
+                if (connection.room != null && length >= 5) {
+                    connection.room.acknowledge(connection, in.get(offset),
+                            in.getInt(offset + 1));
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void join(ServerConnection connection) {
+        if (waiting == null) {
+            waiting = freeRooms.isEmpty()
+                    ? new ServerRoom(server.getRoomSize(), server.createFeed())
+                    : freeRooms.remove(freeRooms.size() - 1);
+        }
+        waiting.add(connection);
+        if (waiting.isFull()) {
+            startWaiting();
+        }
+    }
+
+    private void startWaiting() {
+        waiting.start(server.getWidth(), server.getHeight(), random.nextLong());
+        rooms.add(waiting);
+        runningRooms = rooms.size();
+        waiting = null;
+    }
+
+    /**
+     * Przekazuje połączenie do wątku widzów strumienia. Połączenie przestaje
+     * być obsługiwane przez ten wątek, ale nie jest zamykane.
+     */
+    private void spectate(ServerConnection connection, SpectatorFeed feed) {
+        connection.key.cancel();
+        connections.remove(connection);
+        connectionCount = connections.size();
+        feed.hub.subscribe(connection.channel, feed);
+    }
+
+    private void disconnect(ServerConnection connection) {
+        if (connection.room != null) {
+            connection.room.remove(connection);
+        }
+        connections.remove(connection);
+        connectionCount = connections.size();
+        connection.close();
+    }
+
+    private void tick() {
+        if (waiting != null && waiting.shouldStart(server.getMinPlayers(),
+                server.getStartDelay())) {
+            startWaiting();
+        }
+
+        boolean watched = false;
+        for (int i = rooms.size() - 1; i >= 0; i--) {
+            final ServerRoom room = rooms.get(i);
+            watched |= room.feed.watchers > 0;
+            if (room.tick(server.getMaxTicks())) {
+                final int last = rooms.size() - 1;
+                rooms.set(i, rooms.get(last));
+                rooms.remove(last);
+                freeRooms.add(room);
+            }
+        }
+        runningRooms = rooms.size();
+        if (watched) {
+            // Wątki widzów są budzone dopiero po krokach wszystkich pokoi,
+            // aby nie konkurowały z nimi o procesor.
+            server.wakeSpectatorHubs();
+        }
+
+        long dropped = 0;
+        for (int i = connections.size() - 1; i >= 0; i--) {
+            final ServerConnection connection = connections.get(i);
+            dropped += connection.droppedMessages;
+            try {
+                connection.flush();
+            } catch (IOException e) {
+                disconnect(connection);
+            }
+        }
+        droppedMessages = dropped;
+
+        ticks += 1;
+        if (ticks % TIMINGS_PERIOD == 0) {
+            final Timings shared = server.getTimings();
+            synchronized (shared) {
+                shared.merge(timings);
+            }
+            timings.clear();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package dynablaster;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Strumień stanów gry jednego pokoju dla widzów. Pokój publikuje w nim po
+ * każdym kroku jedną ramkę: wiadomości w formacie {@link ServerProtocol}
+ * zapisane w buforze tylko do odczytu, które są wysyłane bez kopiowania
+ * wszystkim widzom pokoju.
+ *
+ * Ramka kluczowa zaczyna się od wiadomości START i zawiera pełny stan gry,
+ * pozostałe ramki zawierają różnicę względem stanu z poprzedniego kroku,
+ * więc widz może zacząć odbierać strumień od dowolnej ramki kluczowej.
+ *
+ * Strumień łączy dwa wątki: część publikująca należy do wątku pokoju
+ * ({@link ServerShard}), a lista ramek i widzów do wątku
+ * {@link SpectatorHub}, który je wysyła.
+ */
+final class SpectatorFeed {
+
+    /**
+     * Rozmiar bloku pamięci z którego wydzielane są ramki.
+     */
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    /**
+     * Numer pokoju, którym widzowie wybierają strumień.
+     */
+    final int id;
+    final SpectatorHub hub;
+
+    /**
+     * Ramki opublikowane przez pokój, jeszcze nie odebrane przez wątek
+     * widzów.
+     */
+    final ConcurrentLinkedQueue<ByteBuffer> published = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Liczba widzów, ustawiana przez wątek widzów. Pokój nie koduje ramek
+     * gdy nikt nie ogląda gry.
+     */
+    volatile int watchers = 0;
+
+    /**
+     * Ustawiane przez wątek widzów, gdy nowy widz czeka na ramkę kluczową.
+     */
+    volatile boolean keyframeRequested = false;
+
+    // Pola wątku pokoju.
+    private ByteBuffer chunk = ByteBuffer.allocate(0);
+
+    // Pola wątku widzów.
+    /**
+     * Ramki od ostatniej ramki kluczowej.
+     */
+    final ArrayList<ByteBuffer> frames = new ArrayList<>();
+
+    /**
+     * Numer kolejny pierwszej ramki z {@link #frames}.
+     */
+    long firstSequence = 0;
+
+    /**
+     * Numer kolejny ostatniej ramki kluczowej.
+     */
+    long lastKeyframe = 0;
+
+    SpectatorFeed(int id, SpectatorHub hub) {
+        this.id = id;
+        this.hub = hub;
+    }
+
+    /**
+     * Publikuje ramkę. Wywoływane z wątku pokoju.
+     *
+     * @param message Bufor z ramką od pozycji do limitu. Zawartość jest
+     * kopiowana, a pozycja bufora nie jest zmieniana.
+     */
+    void publish(ByteBuffer message) {
+        final int size = message.remaining();
+        if (chunk.remaining() < size) {
+            chunk = ByteBuffer.allocateDirect(Math.max(size, CHUNK_SIZE));
+        }
+
+        final ByteBuffer frame = chunk.slice();
+        frame.put(message.array(), message.arrayOffset() + message.position(), size);
+        frame.flip();
+        chunk.position(chunk.position() + size);
+        published.add(frame.asReadOnlyBuffer());
+    }
+
+    /**
+     * Zwraca numer kolejny następnej ramki.
+     */
+    long getEndSequence() {
+        return firstSequence + frames.size();
+    }
+
+    static boolean isKeyframe(ByteBuffer frame) {
+        return frame.get(2) == ServerProtocol.START;
+    }
+}
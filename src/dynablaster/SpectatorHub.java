@@ -0,0 +1,358 @@
+package dynablaster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Wątek serwera wysyłający ramki {@link SpectatorFeed} widzom. Ramki nie są
+ * kopiowane do buforów połączeń: wszystkie ramki oczekujące na wysłanie do
+ * widza są zapisywane do gniazda jednym zapisem zbierającym
+ * ({@link SocketChannel#write(ByteBuffer[], int, int)}). Pozycje
+ * współdzielonych ramek zmienia tylko ten wątek.
+ *
+ * Strumień pamięta ramki tylko od ostatniej ramki kluczowej. Widz, który
+ * nie zdążył odebrać ramek sprzed nowej ramki kluczowej, bo gniazdo nie
+ * przyjmowało danych, pomija je i odbiera strumień od niej. Dzięki temu
+ * wolni widzowie nie zajmują coraz więcej pamięci i nie spowalniają
+ * pozostałych.
+ */
+final class SpectatorHub implements Runnable {
+
+    /**
+     * Największa liczba ramek w jednym zapisie do gniazda.
+     */
+    private static final int MAX_GATHER = 64;
+
+    /**
+     * Wątek budzi się co krok gry także gdy pokoje go nie obudziły.
+     */
+    private static final long SELECT_MILLIS = GameClock.TICK_DURATION;
+
+    private static final class Spectator {
+
+        final SocketChannel channel;
+        final SpectatorFeed feed;
+        SelectionKey key;
+
+        /**
+         * Numer kolejny następnej ramki do wysłania albo -1, jeśli widz
+         * czeka na ramkę kluczową.
+         */
+        long next = -1;
+
+        /**
+         * Częściowo wysłana ramka, której wysyłanie trzeba dokończyć przed
+         * kolejnymi, albo {@code null}.
+         */
+        ByteBuffer partial;
+
+        /**
+         * Czy gniazdo nie przyjęło wszystkich danych i widz czeka na
+         * możliwość zapisu.
+         */
+        boolean blocked = false;
+
+        Spectator(SocketChannel channel, SpectatorFeed feed) {
+            this.channel = channel;
+            this.feed = feed;
+        }
+    }
+
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<SpectatorFeed> newFeeds
+            = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Spectator> incoming
+            = new ConcurrentLinkedQueue<>();
+
+    private final ArrayList<SpectatorFeed> feeds = new ArrayList<>();
+    private final ArrayList<Spectator> spectators = new ArrayList<>();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER + 1];
+    private final ByteBuffer discarded = ByteBuffer.allocate(256);
+
+    private volatile int spectatorCount = 0;
+    private volatile long skippedFrames = 0;
+    private volatile boolean running = true;
+
+    SpectatorHub() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Dodaje strumień obsługiwany przez ten wątek. Może być wywoływane z
+     * dowolnego wątku.
+     */
+    void addFeed(SpectatorFeed feed) {
+        newFeeds.add(feed);
+    }
+
+    /**
+     * Przekazuje połączenie widza strumienia do obsługi przez ten wątek.
+     * Może być wywoływane z dowolnego wątku.
+     */
+    void subscribe(SocketChannel channel, SpectatorFeed feed) {
+        incoming.add(new Spectator(channel, feed));
+        selector.wakeup();
+    }
+
+    /**
+     * Budzi wątek po opublikowaniu ramek.
+     */
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    int getSpectatorCount() {
+        return spectatorCount;
+    }
+
+    /**
+     * Zwraca liczbę ramek pominiętych przez wolnych widzów.
+     *
+     * @return Liczba ramek.
+     */
+    long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(SELECT_MILLIS);
+                registerIncoming();
+                handleSelected();
+
+                for (int i = 0; i < feeds.size(); i++) {
+                    collect(feeds.get(i));
+                }
+                for (int i = spectators.size() - 1; i >= 0; i--) {
+                    final Spectator spectator = spectators.get(i);
+                    if (!spectator.blocked) {
+                        write(spectator);
+                    }
+                }
+                for (int i = 0; i < spectators.size(); i++) {
+                    skipToKeyframe(spectators.get(i));
+                }
+                for (int i = 0; i < feeds.size(); i++) {
+                    trim(feeds.get(i));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Błąd serwera: " + e.getMessage());
+        } finally {
+            for (Spectator spectator : spectators) {
+                close(spectator);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Wątek i tak jest kończony.
+            }
+        }
+    }
+
+    private void registerIncoming() {
+        SpectatorFeed feed;
+        while ((feed = newFeeds.poll()) != null) {
+            feeds.add(feed);
+        }
+
+        Spectator spectator;
+        while ((spectator = incoming.poll()) != null) {
+            try {
+                spectator.key = spectator.channel.register(selector,
+                        SelectionKey.OP_READ, spectator);
+            } catch (IOException e) {
+                close(spectator);
+                continue;
+            }
+            final SpectatorFeed watched = spectator.feed;
+            if (!watched.frames.isEmpty()) {
+                spectator.next = watched.lastKeyframe;
+            } else {
+                watched.keyframeRequested = true;
+            }
+            watched.watchers += 1;
+            spectators.add(spectator);
+        }
+        spectatorCount = spectators.size();
+    }
+
+    private void handleSelected() {
+        final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            final SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+
+            final Spectator spectator = (Spectator) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    // Widzowie niczego nie wysyłają, więc odczyt służy tylko
+                    // do wykrycia zamknięcia połączenia.
+                    discarded.clear();
+                    if (spectator.channel.read(discarded) < 0) {
+                        disconnect(spectator);
+                        continue;
+                    }
+                }
+                if (key.isWritable()) {
+                    write(spectator);
+                }
+            } catch (IOException e) {
+                disconnect(spectator);
+            }
+        }
+    }
+
+    /**
+     * Przenosi ramki opublikowane przez pokój do listy ramek strumienia.
+     * Lista zawsze zaczyna się od ramki kluczowej, więc ramki opublikowane
+     * przed pierwszą z nich są pomijane.
+     */
+    private void collect(SpectatorFeed feed) {
+        ByteBuffer frame;
+        while ((frame = feed.published.poll()) != null) {
+            if (SpectatorFeed.isKeyframe(frame)) {
+                feed.lastKeyframe = feed.getEndSequence();
+                feed.frames.add(frame);
+            } else if (!feed.frames.isEmpty()) {
+                feed.frames.add(frame);
+            }
+        }
+    }
+
+    /**
+     * Wysyła widzowi ramki, które gniazdo przyjmie bez czekania.
+     */
+    private void write(Spectator spectator) {
+        final SpectatorFeed feed = spectator.feed;
+        if (spectator.next == -1) {
+            if (feed.frames.isEmpty()) {
+                return;
+            }
+            spectator.next = feed.lastKeyframe;
+        }
+
+        try {
+            while (true) {
+                int count = 0;
+                if (spectator.partial != null) {
+                    gather[count++] = spectator.partial;
+                }
+                final long end = feed.getEndSequence();
+                for (long sequence = spectator.next;
+                        sequence < end && count < gather.length; sequence++) {
+                    final ByteBuffer frame = feed.frames.get(
+                            (int) (sequence - feed.firstSequence));
+                    frame.rewind();
+                    gather[count++] = frame;
+                }
+                if (count == 0) {
+                    setBlocked(spectator, false);
+                    return;
+                }
+
+                spectator.channel.write(gather, 0, count);
+
+                int i = 0;
+                if (spectator.partial != null) {
+                    if (spectator.partial.hasRemaining()) {
+                        setBlocked(spectator, true);
+                        return;
+                    }
+                    spectator.partial = null;
+                    i = 1;
+                }
+                for (; i < count; i++) {
+                    final ByteBuffer frame = gather[i];
+                    if (frame.hasRemaining()) {
+                        if (frame.position() > 0) {
+                            spectator.partial = frame.duplicate();
+                            spectator.next += 1;
+                        }
+                        setBlocked(spectator, true);
+                        return;
+                    }
+                    spectator.next += 1;
+                }
+            }
+        } catch (IOException e) {
+            disconnect(spectator);
+        }
+    }
+
+    private void setBlocked(Spectator spectator, boolean blocked) {
+        if (spectator.blocked != blocked && spectator.key.isValid()) {
+            spectator.key.interestOps(blocked
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                    : SelectionKey.OP_READ);
+        }
+        spectator.blocked = blocked;
+    }
+
+    /**
+     * Przesuwa widza, który nie odebrał ramek sprzed ostatniej ramki
+     * kluczowej, do tej ramki. Rozpoczęta ramka jest wysyłana do końca.
+     */
+    private void skipToKeyframe(Spectator spectator) {
+        final long keyframe = spectator.feed.lastKeyframe;
+        if (spectator.next != -1 && spectator.next < keyframe) {
+            skippedFrames += keyframe - spectator.next;
+            spectator.next = keyframe;
+        }
+    }
+
+    /**
+     * Usuwa ramki sprzed ostatniej ramki kluczowej, których nikt już nie
+     * potrzebuje.
+     */
+    private static void trim(SpectatorFeed feed) {
+        final int obsolete = (int) (feed.lastKeyframe - feed.firstSequence);
+        if (obsolete > 0) {
+            feed.frames.subList(0, obsolete).clear();
+            feed.firstSequence = feed.lastKeyframe;
+        }
+    }
+
+    private void disconnect(Spectator spectator) {
+        spectators.remove(spectator);
+        spectatorCount = spectators.size();
+        final SpectatorFeed feed = spectator.feed;
+        feed.watchers -= 1;
+        if (feed.watchers == 0) {
+            // Pokój przestaje publikować ramki, więc następny widz musi
+            // zacząć od nowej ramki kluczowej.
+            final long end = feed.getEndSequence();
+            feed.frames.clear();
+            feed.firstSequence = end;
+            feed.lastKeyframe = end;
+        }
+        close(spectator);
+    }
+
+    private static void close(Spectator spectator) {
+        if (spectator.key != null) {
+            spectator.key.cancel();
+        }
+        try {
+            spectator.channel.close();
+        } catch (IOException e) {
+            // Połączenie i tak jest zamykane.
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package dynablaster;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import javax.imageio.ImageIO;
+
+/**
+ * Klatki animacji wszystkich obiektów gry. Obrazy są wczytywane jednorazowo
+ * przy uruchomieniu gry ({@link #preload()}), dzielone na pojedyncze klatki
+ * i od razu powiększane {@link Grid#SCALE} razy, dzięki czemu rysowanie to
+ * tylko skopiowanie gotowego obrazu.
+ */
+public final class Sprites {
+
+    /**
+     * Rozmiar klatki pola, bomby i eksplozji w pliku graficznym.
+     */
+    private static final int TILE_FRAME_SIZE = 16;
+
+    /**
+     * Liczba klatek w jednym wierszu pliku z graczami.
+     */
+    private static final int PLAYER_COLUMNS = 13;
+
+    /**
+     * Liczba klatek w jednym wierszu pliku z eksplozjami.
+     */
+    private static final int EXPLOSION_COLUMNS = 20;
+
+    public static final BufferedImage INDESTRUCTIBLE;
+    public static final BufferedImage DESTRUCTIBLE;
+    public static final BufferedImage GRASS;
+    public static final BufferedImage GRASS_SHADOW;
+    public static final BufferedImage POWERUP_BOMB;
+    public static final BufferedImage POWERUP_RANGE;
+
+    /**
+     * Klatki graczy. Klatki kolejnych kolorów zaczynają się co 20 klatek.
+     */
+    public static final BufferedImage[] PLAYERS;
+    public static final BufferedImage[] BOMB;
+    public static final BufferedImage[] EXPLOSION;
+    public static final BufferedImage[] TILE_EXPLOSION;
+
+    static {
+        final GraphicsConfiguration config = GraphicsEnvironment.isHeadless()
+                ? null
+                : GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice().getDefaultConfiguration();
+
+        INDESTRUCTIBLE = slice(config, load("res/indestructible.png"), 1, 1)[0];
+        DESTRUCTIBLE = slice(config, load("res/destructible.png"), 1, 1)[0];
+        GRASS = slice(config, load("res/grass.png"), 1, 1)[0];
+        GRASS_SHADOW = slice(config, load("res/grass-shadow.png"), 1, 1)[0];
+        POWERUP_BOMB = slice(config, load("res/powerup-bomb.png"), 1, 1)[0];
+        POWERUP_RANGE = slice(config, load("res/powerup-range.png"), 1, 1)[0];
+
+        BOMB = slice(config, load("res/bomb.png"), 3, 1);
+        EXPLOSION = slice(config, load("res/explosion.png"), EXPLOSION_COLUMNS, 2);
+        TILE_EXPLOSION = slice(config, load("res/explosion-tile.png"), 7, 1);
+
+        // Klatki graczy oddzielone są pionową i poziomą linią szerokości
+        // jednego piksela.
+        final BufferedImage players = load("res/players.png");
+        final int rows = (players.getHeight() + 1) / (Player.PLAYER_SIZE + 1);
+        PLAYERS = new BufferedImage[PLAYER_COLUMNS * rows];
+        for (int i = 0; i < PLAYERS.length; i++) {
+            PLAYERS[i] = scaledFrame(config, players,
+                    (i % PLAYER_COLUMNS) * (Player.PLAYER_SIZE + 1),
+                    (i / PLAYER_COLUMNS) * (Player.PLAYER_SIZE + 1),
+                    Player.PLAYER_SIZE);
+        }
+    }
+
+    private Sprites() {
+    }
+
+    /**
+     * Wczytuje wszystkie obrazy, jeśli nie zostały jeszcze wczytane, aby nie
+     * robić tego w trakcie rysowania pierwszej klatki gry.
+     */
+    static void preload() {
+        // Wczytanie następuje przy inicjalizacji klasy.
+    }
+
+    private static BufferedImage load(String path) {
+        try {
+            return ImageIO.read(new File(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load " + path, e);
+        }
+    }
+
+    /**
+     * Dzieli obraz na kwadratowe klatki ułożone wierszami.
+     */
+    private static BufferedImage[] slice(GraphicsConfiguration config,
+            BufferedImage image, int columns, int rows) {
+        final BufferedImage[] frames = new BufferedImage[columns * rows];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = scaledFrame(config, image,
+                    (i % columns) * TILE_FRAME_SIZE,
+                    (i / columns) * TILE_FRAME_SIZE,
+                    TILE_FRAME_SIZE);
+        }
+        return frames;
+    }
+
+    /**
+     * Wycina z obrazu kwadratową klatkę i powiększa ją. Fragment klatki
+     * wychodzący poza obraz pozostaje przezroczysty.
+     */
+    private static BufferedImage scaledFrame(GraphicsConfiguration config,
+            BufferedImage image, int sourceX, int sourceY, int size) {
+        final int scaledSize = size * Grid.SCALE;
+        final BufferedImage frame = config != null
+                ? config.createCompatibleImage(scaledSize, scaledSize,
+                        Transparency.BITMASK)
+                : new BufferedImage(scaledSize, scaledSize,
+                        BufferedImage.TYPE_INT_ARGB);
+
+        final int width = Math.min(size, image.getWidth() - sourceX);
+        final int height = Math.min(size, image.getHeight() - sourceY);
+
+        final Graphics2D g = frame.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        g.drawImage(image,
+                0,
+                0,
+                width * Grid.SCALE,
+                height * Grid.SCALE,
+                sourceX,
+                sourceY,
+                sourceX + width,
+                sourceY + height,
+                null);
+        g.dispose();
+        return frame;
+    }
+}
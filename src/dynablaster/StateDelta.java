@@ -0,0 +1,308 @@
+package dynablaster;
+
+import java.util.Arrays;
+
+/**
+ * Kodowanie stanu gry jako różnicy względem stanu bazowego, który odbiorca
+ * już zna. Stan pełny jest kodowany jako różnica względem pustej gry.
+ * Odbiorca odtwarza dokładnie ten sam stan, który można przywrócić przez
+ * {@link GameController#restoreState(java.nio.ByteBuffer)}.
+ *
+ * Różnica zawiera:
+ * <ul>
+ * <li>zmienione bity plansz jako odstępy pomiędzy kolejnymi zmienionymi
+ * polami, więc zniszczenie ściany albo zebranie bonusu zajmuje kilka
+ * bitów;</li>
+ * <li>dla każdego gracza maskę zmienionych pól i różnice ich wartości;</li>
+ * <li>dla bomb i eksplozji po jednym bicie na wpis bazy, określającym czy
+ * wpis pozostał, oraz nowe wpisy dopisane na końcu listy, z czasami
+ * względem czasu kroku.</li>
+ * </ul>
+ */
+final class StateDelta {
+
+    private static final int WORD_BITS = 64;
+
+    /**
+     * Największy rozmiar planszy i liczba wpisów przyjmowane przy
+     * dekodowaniu, aby błędne dane nie powodowały zajęcia całej pamięci.
+     */
+    private static final int MAX_SIZE = 1 << 12;
+    private static final int MAX_ENTRIES = 1 << 16;
+
+    private static final NetState EMPTY = new NetState();
+
+    private StateDelta() {
+    }
+
+    /**
+     * Zwraca ograniczenie rozmiaru zakodowanej różnicy w bajtach.
+     */
+    static int maxSize(NetState base, NetState state) {
+        // Zmiana rodzaju pola zmienia co najwyżej cztery bity plansz, a
+        // każda zajmuje co najmniej 5 bitów, więc różnica plansz jest co
+        // najwyżej 5 razy większa od ich zapisu. Pozostałe części mieszczą
+        // się w tym ograniczeniu.
+        return 5 * (state.getSize() + (base == null ? 0 : base.getSize())) + 64;
+    }
+
+    /**
+     * Koduje stan jako różnicę względem stanu bazowego.
+     *
+     * @param base Stan znany odbiorcy z wcześniejszego kroku albo
+     * {@code null}, aby zakodować pełny stan.
+     * @param state Stan.
+     * @param out Zapis do bufora z co najmniej
+     * {@link #maxSize(NetState, NetState)} wolnymi bajtami.
+     */
+    static void encode(NetState base, NetState state, BitWriter out) {
+        if (base == null) {
+            base = EMPTY;
+        }
+        out.writeUnsigned(state.tick - base.tick);
+        encodeLong(out, base.seed, state.seed);
+        encodeLong(out, base.random, state.random);
+        out.writeBoolean(state.gameOver);
+        out.writeUnsigned(state.winner + 1);
+
+        encodeBoards(base, state, out);
+        encodePlayers(base, state, out);
+        encodeEntries(NetState.BOMBS, base, state, out);
+        encodeEntries(NetState.EXPLOSIONS, base, state, out);
+    }
+
+    /**
+     * Odtwarza stan zakodowany przez
+     * {@link #encode(NetState, NetState, BitWriter)}.
+     *
+     * @param base Ten sam stan bazowy co przy kodowaniu albo {@code null}.
+     * Nie może być tym samym obiektem co {@code state}.
+     * @param in Odczyt różnicy.
+     * @param state Stan do którego zapisać wynik.
+     * @throws IllegalArgumentException Gdy różnica jest błędna.
+     */
+    static void decode(NetState base, BitReader in, NetState state) {
+        if (base == null) {
+            base = EMPTY;
+        }
+        state.tick = base.tick + in.readUnsigned();
+        state.seed = decodeLong(in, base.seed);
+        state.random = decodeLong(in, base.random);
+        state.gameOver = in.readBoolean();
+        state.winner = in.readSize() - 1;
+
+        decodeBoards(base, in, state);
+        decodePlayers(base, in, state);
+        decodeEntries(NetState.BOMBS, base, in, state);
+        decodeEntries(NetState.EXPLOSIONS, base, in, state);
+    }
+
+    private static void encodeLong(BitWriter out, long base, long value) {
+        out.writeBoolean(value != base);
+        if (value != base) {
+            out.writeLong(value);
+        }
+    }
+
+    private static long decodeLong(BitReader in, long base) {
+        return in.readBoolean() ? in.readLong() : base;
+    }
+
+    private static void encodeBoards(NetState base, NetState state,
+            BitWriter out) {
+        final boolean resized = state.width != base.width
+                || state.height != base.height;
+        out.writeBoolean(resized);
+        if (resized) {
+            out.writeUnsigned(state.width);
+            out.writeUnsigned(state.height);
+        }
+
+        for (int b = 0; b < NetState.BOARDS; b++) {
+            final long[] from = base.boards[b];
+            final long[] to = state.boards[b];
+
+            int flips = 0;
+            for (int i = 0; i < state.words; i++) {
+                flips += Long.bitCount(resized ? to[i] : to[i] ^ from[i]);
+            }
+            out.writeUnsigned(flips);
+
+            int last = -1;
+            for (int i = 0; i < state.words; i++) {
+                long changed = resized ? to[i] : to[i] ^ from[i];
+                while (changed != 0) {
+                    final int pos = i * WORD_BITS + Long.numberOfTrailingZeros(changed);
+                    out.writeUnsigned(pos - last - 1);
+                    last = pos;
+                    changed &= changed - 1;
+                }
+            }
+        }
+    }
+
+    private static void decodeBoards(NetState base, BitReader in,
+            NetState state) {
+        final boolean resized = in.readBoolean();
+        if (resized) {
+            final int width = in.readSize();
+            final int height = in.readSize();
+            if (width > MAX_SIZE || height > MAX_SIZE) {
+                throw new IllegalArgumentException("Grid too large: "
+                        + width + "x" + height);
+            }
+            state.resize(width, height);
+        } else {
+            state.resize(base.width, base.height);
+        }
+
+        final int bits = state.words * WORD_BITS;
+        for (int b = 0; b < NetState.BOARDS; b++) {
+            final long[] board = state.boards[b];
+            if (resized) {
+                Arrays.fill(board, 0, state.words, 0);
+            } else {
+                System.arraycopy(base.boards[b], 0, board, 0, state.words);
+            }
+
+            final int flips = in.readSize();
+            long pos = -1;
+            for (int i = 0; i < flips; i++) {
+                pos += in.readUnsigned() + 1;
+                if (pos < 0 || pos >= bits) {
+                    throw new IllegalArgumentException("Tile out of range: " + pos);
+                }
+                board[(int) pos / WORD_BITS] ^= 1L << pos;
+            }
+        }
+    }
+
+    private static void encodePlayers(NetState base, NetState state,
+            BitWriter out) {
+        out.writeUnsigned(state.players);
+        for (int id = 0; id < state.players; id++) {
+            final boolean known = id < base.players;
+            int mask = 0;
+            for (int f = 0; f < NetState.PLAYER_FIELDS; f++) {
+                final long from = known ? base.getPlayerField(id, f) : 0;
+                if (state.getPlayerField(id, f) != from) {
+                    mask |= 1 << f;
+                }
+            }
+
+            out.writeBoolean(mask != 0);
+            if (mask == 0) {
+                continue;
+            }
+            out.write(mask, NetState.PLAYER_FIELDS);
+            for (int f = 0; f < NetState.PLAYER_FIELDS; f++) {
+                if ((mask & 1 << f) != 0) {
+                    final long from = known ? base.getPlayerField(id, f) : 0;
+                    out.writeSigned(state.getPlayerField(id, f) - from);
+                }
+            }
+        }
+    }
+
+    private static void decodePlayers(NetState base, BitReader in,
+            NetState state) {
+        final int count = in.readSize();
+        if (count > MAX_ENTRIES) {
+            throw new IllegalArgumentException("Too many players: " + count);
+        }
+        state.setPlayers(count);
+        for (int id = 0; id < count; id++) {
+            final boolean known = id < base.players;
+            final int mask = in.readBoolean()
+                    ? (int) in.read(NetState.PLAYER_FIELDS) : 0;
+            for (int f = 0; f < NetState.PLAYER_FIELDS; f++) {
+                long value = known ? base.getPlayerField(id, f) : 0;
+                if ((mask & 1 << f) != 0) {
+                    value += in.readSigned();
+                }
+                state.setPlayerField(id, f, value);
+            }
+        }
+    }
+
+    /**
+     * Koduje listę bomb albo eksplozji. Wpisy bazy, które występują w tej
+     * samej kolejności na początku aktualnej listy, są oznaczane jako
+     * pozostałe, a reszta aktualnej listy jest zapisywana w całości. Nowe
+     * bomby i eksplozje są dopisywane na końcu list, więc zwykle zapisywane
+     * są tylko one.
+     */
+    private static void encodeEntries(int kind, NetState base, NetState state,
+            BitWriter out) {
+        final int baseCount = base.getEntryCount(kind);
+        final int count = state.getEntryCount(kind);
+        final long now = state.tick * GameClock.TICK_DURATION;
+
+        int kept = 0;
+        int next = 0;
+        while (kept < count) {
+            int match = next;
+            while (match < baseCount && !state.sameEntry(kind, kept, base, match)) {
+                match += 1;
+            }
+            if (match == baseCount) {
+                break;
+            }
+            for (; next < match; next++) {
+                out.writeBoolean(false);
+            }
+            out.writeBoolean(true);
+            next = match + 1;
+            kept += 1;
+        }
+        for (; next < baseCount; next++) {
+            out.writeBoolean(false);
+        }
+
+        out.writeUnsigned(count - kept);
+        for (int i = kept; i < count; i++) {
+            final int fields = state.getFieldCount(kind, i);
+            for (int f = 0; f < fields; f++) {
+                final long value = state.getEntryField(kind, i, f);
+                if (f == NetState.WHEN_FIELD) {
+                    out.writeSigned(value - now);
+                } else {
+                    out.writeUnsigned(value);
+                }
+            }
+        }
+    }
+
+    private static void decodeEntries(int kind, NetState base, BitReader in,
+            NetState state) {
+        final int baseCount = base.getEntryCount(kind);
+        final long now = state.tick * GameClock.TICK_DURATION;
+
+        state.setEntryCount(kind, baseCount);
+        int count = 0;
+        for (int j = 0; j < baseCount; j++) {
+            if (in.readBoolean()) {
+                state.copyEntry(kind, count, base, j);
+                count += 1;
+            }
+        }
+
+        final int added = in.readSize();
+        if (added > MAX_ENTRIES) {
+            throw new IllegalArgumentException("Too many entries: " + added);
+        }
+        state.setEntryCount(kind, count + added);
+        for (int i = count; i < count + added; i++) {
+            // Dla eksplozji liczba pól zależy od pierwszego z nich, a
+            // pominięte pola muszą być zerowe.
+            state.clearEntry(kind, i);
+            state.setEntryField(kind, i, 0, in.readUnsigned());
+            final int fields = state.getFieldCount(kind, i);
+            for (int f = 1; f < fields; f++) {
+                final long value = f == NetState.WHEN_FIELD
+                        ? now + in.readSigned() : in.readUnsigned();
+                state.setEntryField(kind, i, f, value);
+            }
+        }
+    }
+}
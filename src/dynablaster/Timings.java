@@ -0,0 +1,233 @@
+package dynablaster;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Czasy trwania poszczególnych etapów kroku symulacji i rysowania klatki.
+ * Czasy zapisywane są w histogramach o przedziałach rosnących wykładniczo
+ * (błąd względny do 12,5%), z których po zakończeniu okna pomiarowego
+ * wyznaczana jest mediana, 99. percentyl i maksimum.
+ *
+ * Obiekt nie jest bezpieczny dla wielu wątków. Czasy gry zapisywane są przy
+ * zablokowanym monitorze {@link GameController}, więc przy nim należy też
+ * odczytywać wyniki.
+ */
+public class Timings {
+
+    public enum Phase {
+        TICK("tick"),
+        TICK_BOTS("tick.bots"),
+        TICK_PLAYERS("tick.players"),
+        TICK_WINNER("tick.winner"),
+        TICK_BOMBS("tick.bombs"),
+        FRAME("frame"),
+        DRAW_GRID("draw.grid"),
+        DRAW_BOMBS("draw.bombs"),
+        DRAW_PLAYERS("draw.players"),
+        SERVER_TICK("server.tick"),
+        SERVER_LATENESS("server.late");
+
+        public final String label;
+
+        Phase(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+
+    /**
+     * Liczba bitów wyznaczających przedział w obrębie jednej potęgi dwójki.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private volatile boolean enabled = false;
+
+    /**
+     * Histogramy aktualnego okna pomiarowego indeksowane etapem.
+     */
+    private final int[][] counts = new int[PHASES.length][BUCKETS];
+    private final long[] samples = new long[PHASES.length];
+    private final long[] max = new long[PHASES.length];
+
+    /**
+     * Wyniki ostatniego zakończonego okna pomiarowego.
+     */
+    private final long[] lastSamples = new long[PHASES.length];
+    private final long[] lastP50 = new long[PHASES.length];
+    private final long[] lastP99 = new long[PHASES.length];
+    private final long[] lastMax = new long[PHASES.length];
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Włącza lub wyłącza pomiar czasu. Gdy pomiar jest wyłączony gra nie
+     * odczytuje nawet zegara.
+     *
+     * @param enabled Czy mierzyć czas.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Zapisuje czas trwania etapu.
+     *
+     * @param phase Etap.
+     * @param nanos Czas w nanosekundach.
+     */
+    public void record(Phase phase, long nanos) {
+        final int i = phase.ordinal();
+        counts[i][bucketOf(Math.max(nanos, 0))] += 1;
+        samples[i] += 1;
+        if (nanos > max[i]) {
+            max[i] = nanos;
+        }
+    }
+
+    /**
+     * Dodaje pomiary innego obiektu do aktualnego okna pomiarowego.
+     *
+     * @param other Pomiary do dodania.
+     */
+    public void merge(Timings other) {
+        for (int i = 0; i < PHASES.length; i++) {
+            if (other.samples[i] == 0) {
+                continue;
+            }
+            for (int b = 0; b < BUCKETS; b++) {
+                counts[i][b] += other.counts[i][b];
+            }
+            samples[i] += other.samples[i];
+            max[i] = Math.max(max[i], other.max[i]);
+        }
+    }
+
+    /**
+     * Usuwa pomiary aktualnego okna pomiarowego.
+     */
+    public void clear() {
+        for (int i = 0; i < PHASES.length; i++) {
+            if (samples[i] != 0) {
+                Arrays.fill(counts[i], 0);
+            }
+            samples[i] = 0;
+            max[i] = 0;
+        }
+    }
+
+    /**
+     * Kończy okno pomiarowe: wyznacza jego wyniki i rozpoczyna nowe okno.
+     */
+    public void rotate() {
+        for (int i = 0; i < PHASES.length; i++) {
+            lastSamples[i] = samples[i];
+            lastP50[i] = percentile(i, 0.5);
+            lastP99[i] = percentile(i, 0.99);
+            lastMax[i] = max[i];
+        }
+        clear();
+    }
+
+    public long getSamples(Phase phase) {
+        return lastSamples[phase.ordinal()];
+    }
+
+    public long getP50(Phase phase) {
+        return lastP50[phase.ordinal()];
+    }
+
+    public long getP99(Phase phase) {
+        return lastP99[phase.ordinal()];
+    }
+
+    public long getMax(Phase phase) {
+        return lastMax[phase.ordinal()];
+    }
+
+    private long percentile(int phase, double fraction) {
+        if (samples[phase] == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(samples[phase] * fraction));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[phase][b];
+            if (seen >= rank) {
+                return Math.min(bucketMiddle(b), max[phase]);
+            }
+        }
+        return max[phase];
+    }
+
+    private static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        final int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long bucketMiddle(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long low = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return low + (1L << shift) / 2;
+    }
+
+    /**
+     * Zapisuje nagłówek formatu CSV.
+     *
+     * @param out Miejsce zapisu.
+     * @throws IOException W przypadku błędu zapisu.
+     */
+    public static void writeCsvHeader(Appendable out) throws IOException {
+        out.append("time_ms,phase,samples,p50_ns,p99_ns,max_ns\n");
+    }
+
+    /**
+     * Zapisuje wyniki ostatniego okna pomiarowego jako wiersze CSV, po jednym
+     * dla każdego etapu.
+     *
+     * @param out Miejsce zapisu.
+     * @param timeMillis Czas zakończenia okna pomiarowego.
+     * @throws IOException W przypadku błędu zapisu.
+     */
+    public void writeCsv(Appendable out, long timeMillis) throws IOException {
+        for (Phase phase : PHASES) {
+            out.append(String.format(Locale.ROOT, "%d,%s,%d,%d,%d,%d%n",
+                    timeMillis, phase.label, getSamples(phase),
+                    getP50(phase), getP99(phase), getMax(phase)));
+        }
+    }
+
+    /**
+     * Zapisuje wyniki ostatniego okna pomiarowego jako jeden wiersz JSON.
+     *
+     * @param out Miejsce zapisu.
+     * @param timeMillis Czas zakończenia okna pomiarowego.
+     * @throws IOException W przypadku błędu zapisu.
+     */
+    public void writeJson(Appendable out, long timeMillis) throws IOException {
+        out.append("{\"time_ms\":").append(Long.toString(timeMillis));
+        for (Phase phase : PHASES) {
+            out.append(String.format(Locale.ROOT,
+                    ",\"%s\":{\"samples\":%d,\"p50_ns\":%d,\"p99_ns\":%d,\"max_ns\":%d}",
+                    phase.label, getSamples(phase), getP50(phase),
+                    getP99(phase), getMax(phase)));
+        }
+        out.append("}\n");
+    }
+}
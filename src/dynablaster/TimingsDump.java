@@ -0,0 +1,108 @@
+package dynablaster;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Okresowo zapisuje do pliku czasy etapów gry, np. w trakcie rozgrywania
+ * gier bez interfejsu graficznego. Pliki z rozszerzeniem {@code .json}
+ * zapisywane są w formacie JSON (jeden obiekt w wierszu), pozostałe w
+ * formacie CSV.
+ *
+ * Czasy odczytywane są przy zablokowanym monitorze obiektu {@link Timings},
+ * więc zapisujący do niego muszą go również blokować.
+ */
+public class TimingsDump implements Runnable {
+
+    private final Timings timings;
+    private final Writer out;
+    private final boolean json;
+    private final long periodMillis;
+    private final long startMillis = System.currentTimeMillis();
+    private Thread thread;
+
+    /**
+     * @param timings Pomiary do zapisywania.
+     * @param path Ścieżka pliku.
+     * @param periodMillis Czas pomiędzy kolejnymi zapisami.
+     * @throws IOException Gdy nie można utworzyć pliku.
+     */
+    public TimingsDump(Timings timings, String path, long periodMillis)
+            throws IOException {
+        this.timings = timings;
+        this.periodMillis = periodMillis;
+        this.json = path.endsWith(".json");
+        this.out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(path), StandardCharsets.UTF_8));
+
+        if (!json) {
+            Timings.writeCsvHeader(out);
+        }
+    }
+
+    public synchronized void start() {
+        thread = new Thread(this, "Timings dump");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(periodMillis);
+                dump();
+            }
+        } catch (InterruptedException e) {
+            // Zakończenie zapisywania.
+        } catch (IOException e) {
+            System.err.println("Nie można zapisać pomiarów czasu: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Zamyka okno pomiarowe i zapisuje jego wyniki.
+     *
+     * @throws IOException W przypadku błędu zapisu.
+     */
+    public synchronized void dump() throws IOException {
+        final long time = System.currentTimeMillis() - startMillis;
+        synchronized (timings) {
+            timings.rotate();
+            if (json) {
+                timings.writeJson(out, time);
+            } else {
+                timings.writeCsv(out, time);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Zatrzymuje okresowy zapis, zapisuje ostatnie wyniki i zamyka plik.
+     *
+     * @throws IOException W przypadku błędu zapisu.
+     */
+    public void close() throws IOException {
+        final Thread stopped;
+        synchronized (this) {
+            stopped = thread;
+            thread = null;
+        }
+        if (stopped != null) {
+            stopped.interrupt();
+            try {
+                stopped.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        dump();
+        out.close();
+    }
+}
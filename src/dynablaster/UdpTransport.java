@@ -0,0 +1,89 @@
+package dynablaster;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Przesyła pakiety gry sieciowej przez UDP. Każdy uczestnik ma stały adres,
+ * a pakiety z nieznanych adresów są pomijane.
+ */
+public class UdpTransport implements NetTransport {
+
+    private final DatagramChannel channel;
+    private final InetSocketAddress[] peers;
+    private final Map<SocketAddress, Integer> peerByAddress = new HashMap<>();
+
+    /**
+     * @param localPort Port na którym odbierać pakiety.
+     * @param peers Adresy wszystkich uczestników, w tym lokalnego.
+     * @throws IOException Gdy nie można otworzyć gniazda.
+     */
+    public UdpTransport(int localPort, InetSocketAddress[] peers)
+            throws IOException {
+        this.peers = peers.clone();
+        for (int i = 0; i < peers.length; i++) {
+            peerByAddress.put(peers[i], i);
+        }
+
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.bind(new InetSocketAddress(localPort));
+    }
+
+    /**
+     * Tworzy połączenie z listy adresów w postaci {@code host:port}.
+     * Lokalny uczestnik odbiera pakiety na porcie podanym w jego adresie.
+     *
+     * @param local Numer lokalnego uczestnika.
+     * @param addresses Adresy wszystkich uczestników.
+     * @return Połączenie.
+     * @throws IOException Gdy nie można otworzyć gniazda.
+     * @throws IllegalArgumentException Gdy adres jest niepoprawny.
+     */
+    public static UdpTransport create(int local, String[] addresses)
+            throws IOException {
+        final InetSocketAddress[] peers = new InetSocketAddress[addresses.length];
+        for (int i = 0; i < addresses.length; i++) {
+            final String address = addresses[i].trim();
+            final int colon = address.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Invalid address: " + address);
+            }
+            peers[i] = new InetSocketAddress(address.substring(0, colon),
+                    Integer.parseInt(address.substring(colon + 1)));
+        }
+        return new UdpTransport(peers[local].getPort(), peers);
+    }
+
+    @Override
+    public void send(int peer, ByteBuffer packet) throws IOException {
+        channel.send(packet, peers[peer]);
+    }
+
+    @Override
+    public int receive(ByteBuffer packet) throws IOException {
+        while (true) {
+            final int start = packet.position();
+            final SocketAddress from = channel.receive(packet);
+            if (from == null) {
+                return -1;
+            }
+
+            final Integer peer = peerByAddress.get(from);
+            if (peer != null) {
+                return peer;
+            }
+            packet.position(start);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,47 @@
+package dynablaster;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Zapis liczb nieujemnych o zmiennej długości: po 7 bitów w bajcie, od
+ * najmłodszych, z najstarszym bitem ustawionym we wszystkich bajtach poza
+ * ostatnim. Małe liczby zajmują jeden bajt.
+ */
+final class Varint {
+
+    /**
+     * Największa liczba bajtów zajmowana przez jedną liczbę.
+     */
+    static final int MAX_SIZE = 10;
+
+    private Varint() {
+    }
+
+    static void put(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    /**
+     * Odczytuje liczbę zapisaną przez {@link #put(ByteBuffer, long)}.
+     *
+     * @param in Bufor.
+     * @return Odczytana liczba.
+     * @throws BufferUnderflowException Gdy liczba nie mieści się w buforze.
+     */
+    static long get(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+}